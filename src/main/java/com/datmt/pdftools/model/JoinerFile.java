@@ -1,11 +1,13 @@
 package com.datmt.pdftools.model;
 
+import com.datmt.pdftools.service.DocumentPool;
+import com.datmt.pdftools.service.PageImageCache;
+import com.datmt.pdftools.service.PdfRendererRegistry;
+import com.datmt.pdftools.service.RenderFarm;
 import javafx.scene.image.Image;
 import org.apache.pdfbox.pdmodel.PDDocument;
 
 import java.io.File;
-import java.util.ArrayList;
-import java.util.List;
 
 /**
  * Represents a file (PDF or image) loaded into the PDF Joiner.
@@ -21,8 +23,10 @@ public class JoinerFile {
     private final FileType fileType;
     private final int pageCount;
     private PDDocument pdfDocument;  // Only for PDF files
+    private DocumentPool.Lease lease;  // Set when the PDF is borrowed from the pool
+    private PdfRendererRegistry renderers;  // Only for PDF files
+    private RenderFarm.Replicas replicas;   // Only for PDF files
     private Image image;             // Only for image files
-    private final List<Image> thumbnailCache;
 
     /**
      * Create a JoinerFile for a PDF document.
@@ -32,7 +36,16 @@ public class JoinerFile {
         this.fileType = FileType.PDF;
         this.pdfDocument = pdfDocument;
         this.pageCount = pdfDocument.getNumberOfPages();
-        this.thumbnailCache = new ArrayList<>();
+        this.renderers = new PdfRendererRegistry(pdfDocument);
+        this.replicas = RenderFarm.getInstance().open(sourceFile, pdfDocument, renderers);
+    }
+
+    /**
+     * Create a JoinerFile for a PDF document borrowed from the document pool.
+     */
+    public JoinerFile(File sourceFile, DocumentPool.Lease lease) {
+        this(sourceFile, lease.getDocument());
+        this.lease = lease;
     }
 
     /**
@@ -43,7 +56,6 @@ public class JoinerFile {
         this.fileType = FileType.IMAGE;
         this.image = image;
         this.pageCount = 1;  // Images are always 1 page
-        this.thumbnailCache = new ArrayList<>();
     }
 
     public File getSourceFile() {
@@ -74,33 +86,53 @@ public class JoinerFile {
         return pdfDocument;
     }
 
-    public Image getImage() {
-        return image;
+    /**
+     * Per-thread renderers for the PDF document (null for images).
+     */
+    public PdfRendererRegistry getRenderers() {
+        return renderers;
     }
 
-    public void cacheThumbnail(int pageIndex, Image thumbnail) {
-        while (thumbnailCache.size() <= pageIndex) {
-            thumbnailCache.add(null);
-        }
-        thumbnailCache.set(pageIndex, thumbnail);
+    /**
+     * Per-thread document replicas for rendering in parallel (null for images).
+     */
+    public RenderFarm.Replicas getReplicas() {
+        return replicas;
     }
 
-    public Image getCachedThumbnail(int pageIndex) {
-        if (pageIndex >= 0 && pageIndex < thumbnailCache.size()) {
-            return thumbnailCache.get(pageIndex);
-        }
-        return null;
+    public Image getImage() {
+        return image;
     }
 
+    /**
+     * Drop cached page images and renderers for the PDF document.
+     */
     public void clearCache() {
-        thumbnailCache.clear();
+        if (pdfDocument != null) {
+            PageImageCache.getInstance().invalidate(pdfDocument);
+        }
+        if (renderers != null) {
+            renderers.clear();
+        }
     }
 
     /**
      * Close the PDF document if this is a PDF file.
+     * Pooled documents are returned to the pool instead of being closed.
      */
     public void close() throws Exception {
-        if (pdfDocument != null) {
+        if (replicas != null) {
+            replicas.close();
+        }
+        if (renderers != null) {
+            renderers.close();
+        }
+        if (lease != null) {
+            lease.close();
+            lease = null;
+            pdfDocument = null;
+        } else if (pdfDocument != null) {
+            PageImageCache.getInstance().invalidate(pdfDocument);
             pdfDocument.close();
             pdfDocument = null;
         }
@@ -1,27 +1,40 @@
 package com.datmt.pdftools.model;
 
-import javafx.scene.image.Image;
+import com.datmt.pdftools.service.DocumentPool;
+import com.datmt.pdftools.service.PageImageCache;
+import com.datmt.pdftools.service.PdfRendererRegistry;
+import com.datmt.pdftools.service.RenderFarm;
 import org.apache.pdfbox.pdmodel.PDDocument;
 
 import java.io.File;
-import java.util.ArrayList;
-import java.util.List;
+import java.io.IOException;
 
 /**
  * Model class representing a loaded PDF document.
- * Holds the PDF document, metadata, and cached page images.
+ * Holds the PDF document and metadata. Rendered pages are cached in {@link PageImageCache}.
  */
 public class PdfDocument {
     private File sourceFile;
     private PDDocument pdfDocument;
     private int pageCount;
-    private List<Image> pageImageCache;
+    private DocumentPool.Lease lease;  // Set when the document is borrowed from the pool
+    private final PdfRendererRegistry renderers;
+    private final RenderFarm.Replicas replicas;
 
     public PdfDocument(File sourceFile, PDDocument pdfDocument) {
         this.sourceFile = sourceFile;
         this.pdfDocument = pdfDocument;
         this.pageCount = pdfDocument.getNumberOfPages();
-        this.pageImageCache = new ArrayList<>();
+        this.renderers = new PdfRendererRegistry(pdfDocument);
+        this.replicas = RenderFarm.getInstance().open(sourceFile, pdfDocument, renderers);
+    }
+
+    /**
+     * Create a PdfDocument backed by a pooled document lease.
+     */
+    public PdfDocument(File sourceFile, DocumentPool.Lease lease) {
+        this(sourceFile, lease.getDocument());
+        this.lease = lease;
     }
 
     public File getSourceFile() {
@@ -32,30 +45,44 @@ public class PdfDocument {
         return pdfDocument;
     }
 
-    public int getPageCount() {
-        return pageCount;
+    /**
+     * Per-thread renderers for this document.
+     */
+    public PdfRendererRegistry getRenderers() {
+        return renderers;
     }
 
-    public List<Image> getPageImageCache() {
-        return pageImageCache;
+    /**
+     * Per-thread document replicas for rendering in parallel.
+     */
+    public RenderFarm.Replicas getReplicas() {
+        return replicas;
     }
 
-    public void cachePageImage(int pageIndex, Image image) {
-        // Ensure list is large enough
-        while (pageImageCache.size() <= pageIndex) {
-            pageImageCache.add(null);
-        }
-        pageImageCache.set(pageIndex, image);
+    public int getPageCount() {
+        return pageCount;
     }
 
-    public Image getCachedPageImage(int pageIndex) {
-        if (pageIndex >= 0 && pageIndex < pageImageCache.size()) {
-            return pageImageCache.get(pageIndex);
-        }
-        return null;
+    /**
+     * Drop cached page images and renderers for this document.
+     */
+    public void clearCache() {
+        PageImageCache.getInstance().invalidate(pdfDocument);
+        renderers.clear();
     }
 
-    public void clearCache() {
-        pageImageCache.clear();
+    /**
+     * Release the underlying document: return it to the pool if borrowed, otherwise close it.
+     */
+    public void close() throws IOException {
+        replicas.close();
+        renderers.close();
+        if (lease != null) {
+            lease.close();
+            lease = null;
+        } else if (pdfDocument != null) {
+            PageImageCache.getInstance().invalidate(pdfDocument);
+            pdfDocument.close();
+        }
     }
 }
@@ -0,0 +1,372 @@
+package com.datmt.pdftools.service;
+
+import com.datmt.pdftools.service.io.PdfReadFactory;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Objects;
+
+/**
+ * Process-wide pool of open PDF documents shared between tools and services.
+ * Entries are keyed by canonical path and password and stamped with the file's
+ * size and last-modified time, so a file that changes on disk is reloaded.
+ * Borrowers receive a {@link Lease}; idle entries are evicted least-recently-used
+ * first when the open-document or memory budget is exceeded.
+ * <p>
+ * Leased documents are shared and must be treated as read-only. Callers that
+ * modify a document use {@link #takeForModification(File, String)} instead.
+ * <p>
+ * Every borrower of a file gets the same PDDocument, and PDFBox documents must
+ * not be used by two threads at once, not even for reading, as objects are
+ * parsed and cached lazily. Borrowers read the document through
+ * {@link Lease#withDocument}, which holds the document's lock, or render
+ * through {@link RenderFarm}, which gives each thread its own replica and
+ * takes the same lock when it falls back to the shared document. Long reads
+ * that would hold the lock for a while, such as copying pages into another
+ * file, use {@link #takeForModification(File, String)} instead.
+ */
+public final class DocumentPool {
+    private static final Logger logger = LoggerFactory.getLogger(DocumentPool.class);
+
+    public static final int DEFAULT_MAX_OPEN_DOCUMENTS = 16;
+    public static final long DEFAULT_MEMORY_BUDGET = 1024L * 1024 * 1024; // 1 GB of source bytes
+
+    private static final DocumentPool INSTANCE = new DocumentPool();
+
+    // Access-ordered: iteration starts at the least recently used entry
+    private final LinkedHashMap<PoolKey, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private int maxOpenDocuments = DEFAULT_MAX_OPEN_DOCUMENTS;
+    private long memoryBudget = DEFAULT_MEMORY_BUDGET;
+    private long estimatedMemory;
+
+    private DocumentPool() {
+    }
+
+    public static DocumentPool getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Set the maximum number of open documents. Documents in use are never closed,
+     * so the pool may temporarily exceed this limit.
+     */
+    public synchronized void setMaxOpenDocuments(int maxOpenDocuments) {
+        this.maxOpenDocuments = Math.max(1, maxOpenDocuments);
+        evictIdle();
+    }
+
+    public synchronized int getMaxOpenDocuments() {
+        return maxOpenDocuments;
+    }
+
+    /**
+     * Set the memory budget in bytes. Each document is weighted by its file size,
+     * which is a rough proxy for the parsed object graph it keeps alive.
+     */
+    public synchronized void setMemoryBudget(long bytes) {
+        this.memoryBudget = Math.max(0, bytes);
+        evictIdle();
+    }
+
+    public synchronized long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * Borrow a shared document for the given file.
+     *
+     * @param file The PDF file
+     * @return Lease that must be closed when the caller is done
+     * @throws IOException If the document cannot be loaded
+     */
+    public Lease borrow(File file) throws IOException {
+        return borrow(file, null);
+    }
+
+    /**
+     * Borrow a shared document, opening it with a password if needed.
+     *
+     * @param file     The PDF file
+     * @param password Password (null or empty for none)
+     * @return Lease that must be closed when the caller is done
+     * @throws IOException If the document cannot be loaded
+     */
+    public Lease borrow(File file, String password) throws IOException {
+        PoolKey key = new PoolKey(file.getCanonicalPath(), password);
+        FileStamp stamp = FileStamp.of(file);
+
+        synchronized (this) {
+            Entry entry = lookup(key, stamp);
+            if (entry != null) {
+                entry.refCount++;
+                logger.trace("Pool hit for {} (refs: {})", file.getName(), entry.refCount);
+                return new Lease(entry);
+            }
+        }
+
+        // Load outside the lock so other files are not blocked by a large parse
+        logger.debug("Pool miss, loading {}", file.getName());
+        PDDocument document = PdfReadFactory.load(file, password);
+
+        synchronized (this) {
+            Entry existing = lookup(key, stamp);
+            if (existing != null) {
+                // Another thread loaded the same file meanwhile
+                closeQuietly(document, file.getName());
+                existing.refCount++;
+                return new Lease(existing);
+            }
+            Entry entry = new Entry(key, stamp, document, file.getName());
+            entry.refCount = 1;
+            entries.put(key, entry);
+            estimatedMemory += entry.weight();
+            evictIdle();
+            return new Lease(entry);
+        }
+    }
+
+    /**
+     * Get a document the caller owns and may modify. An idle pooled copy is
+     * handed over and removed from the pool; otherwise a fresh copy is loaded.
+     * The caller must close the returned document.
+     *
+     * @param file     The PDF file
+     * @param password Password (null or empty for none)
+     * @return A document owned by the caller
+     * @throws IOException If the document cannot be loaded
+     */
+    public PDDocument takeForModification(File file, String password) throws IOException {
+        PoolKey key = new PoolKey(file.getCanonicalPath(), password);
+        FileStamp stamp = FileStamp.of(file);
+
+        synchronized (this) {
+            Entry entry = lookup(key, stamp);
+            if (entry != null && entry.refCount == 0) {
+                remove(entry);
+                logger.trace("Handing pooled document {} over for modification", file.getName());
+                return entry.document;
+            }
+        }
+        return PdfReadFactory.load(file, password);
+    }
+
+    /**
+     * Drop all entries for a file, e.g. after it was overwritten.
+     * Documents in use are closed when their last lease is released.
+     */
+    public synchronized void invalidate(File file) throws IOException {
+        String path = file.getCanonicalPath();
+        for (Entry entry : new ArrayList<>(entries.values())) {
+            if (entry.key.path.equals(path)) {
+                discard(entry);
+            }
+        }
+    }
+
+    /**
+     * Close all idle documents.
+     */
+    public synchronized void clear() {
+        for (Entry entry : new ArrayList<>(entries.values())) {
+            if (entry.refCount == 0) {
+                remove(entry);
+                closeQuietly(entry.document, entry.name);
+            }
+        }
+    }
+
+    /**
+     * Number of documents currently held by the pool.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Find a current entry for the key, discarding it if the file has changed.
+     */
+    private Entry lookup(PoolKey key, FileStamp stamp) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (!entry.stamp.equals(stamp)) {
+            logger.debug("File changed on disk, invalidating pooled {}", entry.name);
+            discard(entry);
+            return null;
+        }
+        return entry;
+    }
+
+    private synchronized void release(Entry entry) {
+        entry.refCount--;
+        logger.trace("Released {} (refs: {})", entry.name, entry.refCount);
+        if (entry.refCount > 0) {
+            return;
+        }
+        if (entry.discarded) {
+            closeQuietly(entry.document, entry.name);
+        } else {
+            evictIdle();
+        }
+    }
+
+    /**
+     * Remove an entry from the pool; it is closed now if idle, or on last release.
+     */
+    private void discard(Entry entry) {
+        remove(entry);
+        entry.discarded = true;
+        if (entry.refCount == 0) {
+            closeQuietly(entry.document, entry.name);
+        }
+    }
+
+    private void remove(Entry entry) {
+        if (entries.remove(entry.key, entry)) {
+            estimatedMemory -= entry.weight();
+        }
+    }
+
+    /**
+     * Close least-recently-used idle documents until the pool is within budget.
+     */
+    private void evictIdle() {
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext() && (entries.size() > maxOpenDocuments || estimatedMemory > memoryBudget)) {
+            Entry entry = it.next();
+            if (entry.refCount > 0) {
+                continue;
+            }
+            it.remove();
+            estimatedMemory -= entry.weight();
+            logger.debug("Evicting idle document {} from pool", entry.name);
+            closeQuietly(entry.document, entry.name);
+        }
+    }
+
+    private static void closeQuietly(PDDocument document, String name) {
+        PageImageCache.getInstance().invalidate(document);
+        try {
+            document.close();
+        } catch (IOException e) {
+            logger.warn("Error closing pooled document {}: {}", name, e.getMessage());
+        }
+    }
+
+    /**
+     * Work done with a leased document while holding its lock.
+     */
+    @FunctionalInterface
+    public interface DocumentTask<T> {
+        T apply(PDDocument document) throws IOException;
+    }
+
+    /**
+     * A borrowed reference to a pooled document. Closing the lease releases it.
+     * The document may be shared with other threads; see the class comment.
+     */
+    public final class Lease implements AutoCloseable {
+        private final Entry entry;
+        private volatile boolean released;
+
+        private Lease(Entry entry) {
+            this.entry = entry;
+        }
+
+        /**
+         * The shared document, for handing to {@link RenderFarm} or keeping as
+         * an identity. Reads go through {@link #withDocument} or the render farm.
+         */
+        public PDDocument getDocument() {
+            if (released) {
+                throw new IllegalStateException("Lease already released");
+            }
+            return entry.document;
+        }
+
+        /**
+         * Run a task on the document while holding its lock, so no other
+         * borrower uses the document at the same time.
+         */
+        public <T> T withDocument(DocumentTask<T> task) throws IOException {
+            PDDocument document = getDocument();
+            synchronized (document) {
+                return task.apply(document);
+            }
+        }
+
+        @Override
+        public void close() {
+            if (!released) {
+                released = true;
+                release(entry);
+            }
+        }
+    }
+
+    private static final class Entry {
+        private final PoolKey key;
+        private final FileStamp stamp;
+        private final PDDocument document;
+        private final String name;
+        private int refCount;
+        private boolean discarded;
+
+        Entry(PoolKey key, FileStamp stamp, PDDocument document, String name) {
+            this.key = key;
+            this.stamp = stamp;
+            this.document = document;
+            this.name = name;
+        }
+
+        long weight() {
+            return stamp.size;
+        }
+    }
+
+    /**
+     * Pool key. Not a record so the password never shows up in toString().
+     */
+    private static final class PoolKey {
+        private final String path;
+        private final String password;
+
+        PoolKey(String path, String password) {
+            this.path = path;
+            this.password = password == null ? "" : password;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof PoolKey other)) return false;
+            return path.equals(other.path) && password.equals(other.password);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(path, password);
+        }
+
+        @Override
+        public String toString() {
+            return path;
+        }
+    }
+
+    private record FileStamp(long size, long lastModified) {
+        static FileStamp of(File file) throws IOException {
+            if (!file.exists()) {
+                throw new IOException("File does not exist: " + file.getAbsolutePath());
+            }
+            return new FileStamp(file.length(), file.lastModified());
+        }
+    }
+}
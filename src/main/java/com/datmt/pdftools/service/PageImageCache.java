@@ -0,0 +1,348 @@
+package com.datmt.pdftools.service;
+
+import com.datmt.pdftools.service.image.ColorMode;
+import com.datmt.pdftools.service.image.PackedImage;
+import javafx.scene.image.Image;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide, memory-bounded cache of rendered page images shared by all tools.
+ * <p>
+ * Tier 1 keeps decoded JavaFX images in LRU order within a byte budget
+ * (width x height x 4). Images evicted from tier 1 are PNG-encoded into
+ * direct (off-heap) buffers in tier 2, in the colour mode of their key, which
+ * has its own budget; a tier-2 hit decodes the image and promotes it back to tier 1.
+ */
+public final class PageImageCache {
+    private static final Logger logger = LoggerFactory.getLogger(PageImageCache.class);
+
+    public static final long DEFAULT_MEMORY_BUDGET = 256L * 1024 * 1024;      // decoded images
+    public static final long DEFAULT_COMPRESSED_BUDGET = 128L * 1024 * 1024;  // off-heap PNG bytes
+
+    // Fast deflate: tier 2 trades some size for cheap encoding on eviction
+    private static final float PNG_COMPRESSION_QUALITY = 0.75f;
+
+    private static final PageImageCache INSTANCE = new PageImageCache();
+
+    /**
+     * Cache key. The document is compared by identity, so the same pooled
+     * PDDocument shares entries between the extractor and the joiner.
+     *
+     * @param document  Document identity (usually the PDDocument instance)
+     * @param pageIndex 0-based page index
+     * @param dpi       Render resolution
+     * @param rotation  Extra rotation applied to the render, in degrees
+     * @param colorMode Colour mode of the render; tier 2 stores the image in it
+     * @param tileX     Tile column for tiled renders, -1 for a full page
+     * @param tileY     Tile row for tiled renders, -1 for a full page
+     */
+    public record Key(Object document, int pageIndex, float dpi, int rotation, ColorMode colorMode,
+                      int tileX, int tileY) {
+
+        /**
+         * Key for a full-page render.
+         */
+        public Key(Object document, int pageIndex, float dpi, int rotation, ColorMode colorMode) {
+            this(document, pageIndex, dpi, rotation, colorMode, -1, -1);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key other)) return false;
+            return document == other.document && pageIndex == other.pageIndex
+                    && Float.compare(dpi, other.dpi) == 0 && rotation == other.rotation
+                    && colorMode == other.colorMode && tileX == other.tileX && tileY == other.tileY;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = System.identityHashCode(document);
+            result = 31 * result + pageIndex;
+            result = 31 * result + Float.hashCode(dpi);
+            result = 31 * result + rotation;
+            result = 31 * result + (colorMode == null ? 0 : colorMode.hashCode());
+            result = 31 * result + tileX;
+            result = 31 * result + tileY;
+            return result;
+        }
+    }
+
+    /**
+     * Snapshot of cache counters.
+     *
+     * @param hits             Lookups served from tier 1
+     * @param compressedHits   Lookups served from tier 2
+     * @param misses           Lookups served from neither tier
+     * @param evictions        Images evicted from tier 1
+     * @param compressedEvictions Entries dropped from tier 2
+     * @param memoryBytes      Estimated bytes held by tier 1
+     * @param compressedBytes  Bytes held by tier 2
+     * @param memoryEntries    Number of tier-1 entries
+     * @param compressedEntries Number of tier-2 entries
+     */
+    public record Stats(long hits, long compressedHits, long misses, long evictions, long compressedEvictions,
+                        long memoryBytes, long compressedBytes, int memoryEntries, int compressedEntries) {
+
+        public double hitRate() {
+            long lookups = hits + compressedHits + misses;
+            return lookups == 0 ? 0 : (double) (hits + compressedHits) / lookups;
+        }
+    }
+
+    // Access-ordered: iteration starts at the least recently used entry
+    private final LinkedHashMap<Key, Image> memoryTier = new LinkedHashMap<>(64, 0.75f, true);
+    private final LinkedHashMap<Key, ByteBuffer> compressedTier = new LinkedHashMap<>(64, 0.75f, true);
+    private long memoryBudget = DEFAULT_MEMORY_BUDGET;
+    private long compressedBudget = DEFAULT_COMPRESSED_BUDGET;
+    private long memoryBytes;
+    private long compressedBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong compressedHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong compressedEvictions = new AtomicLong();
+
+    private PageImageCache() {
+    }
+
+    public static PageImageCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Set the tier-1 budget in bytes of decoded pixels.
+     */
+    public void setMemoryBudget(long bytes) {
+        List<Evicted> evicted;
+        synchronized (this) {
+            memoryBudget = Math.max(0, bytes);
+            evicted = evictMemoryTier();
+        }
+        compress(evicted);
+    }
+
+    public synchronized long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * Set the tier-2 budget in bytes of compressed data. Zero disables tier 2.
+     */
+    public synchronized void setCompressedBudget(long bytes) {
+        compressedBudget = Math.max(0, bytes);
+        evictCompressedTier();
+    }
+
+    public synchronized long getCompressedBudget() {
+        return compressedBudget;
+    }
+
+    /**
+     * Look up an image, promoting it from tier 2 if necessary.
+     *
+     * @return The cached image, or null on a miss
+     */
+    public Image get(Key key) {
+        ByteBuffer compressed;
+        synchronized (this) {
+            Image image = memoryTier.get(key);
+            if (image != null) {
+                hits.incrementAndGet();
+                return image;
+            }
+            compressed = compressedTier.remove(key);
+            if (compressed == null) {
+                misses.incrementAndGet();
+                return null;
+            }
+            compressedBytes -= compressed.capacity();
+        }
+
+        // Decode outside the lock
+        Image image = decode(compressed);
+        if (image == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        compressedHits.incrementAndGet();
+        put(key, image);
+        return image;
+    }
+
+    /**
+     * Add an image to tier 1, evicting least-recently-used images to tier 2.
+     */
+    public void put(Key key, Image image) {
+        long size = sizeOf(image);
+        List<Evicted> evicted;
+        synchronized (this) {
+            if (size > memoryBudget) {
+                return;
+            }
+            Image previous = memoryTier.put(key, image);
+            if (previous != null) {
+                memoryBytes -= sizeOf(previous);
+            }
+            memoryBytes += size;
+            ByteBuffer stale = compressedTier.remove(key);
+            if (stale != null) {
+                compressedBytes -= stale.capacity();
+            }
+            evicted = evictMemoryTier();
+        }
+        compress(evicted);
+    }
+
+    /**
+     * Drop all entries of a document, e.g. when it is closed.
+     */
+    public synchronized void invalidate(Object document) {
+        Iterator<Map.Entry<Key, Image>> memory = memoryTier.entrySet().iterator();
+        while (memory.hasNext()) {
+            var entry = memory.next();
+            if (entry.getKey().document() == document) {
+                memoryBytes -= sizeOf(entry.getValue());
+                memory.remove();
+            }
+        }
+        Iterator<Map.Entry<Key, ByteBuffer>> compressed = compressedTier.entrySet().iterator();
+        while (compressed.hasNext()) {
+            var entry = compressed.next();
+            if (entry.getKey().document() == document) {
+                compressedBytes -= entry.getValue().capacity();
+                compressed.remove();
+            }
+        }
+    }
+
+    /**
+     * Drop everything.
+     */
+    public synchronized void clear() {
+        memoryTier.clear();
+        compressedTier.clear();
+        memoryBytes = 0;
+        compressedBytes = 0;
+    }
+
+    public synchronized Stats getStats() {
+        return new Stats(hits.get(), compressedHits.get(), misses.get(), evictions.get(), compressedEvictions.get(),
+                memoryBytes, compressedBytes, memoryTier.size(), compressedTier.size());
+    }
+
+    private List<Evicted> evictMemoryTier() {
+        List<Evicted> evicted = new ArrayList<>();
+        Iterator<Map.Entry<Key, Image>> it = memoryTier.entrySet().iterator();
+        while (memoryBytes > memoryBudget && it.hasNext()) {
+            var entry = it.next();
+            it.remove();
+            memoryBytes -= sizeOf(entry.getValue());
+            evictions.incrementAndGet();
+            evicted.add(new Evicted(entry.getKey(), entry.getValue()));
+        }
+        return evicted;
+    }
+
+    private void evictCompressedTier() {
+        Iterator<ByteBuffer> it = compressedTier.values().iterator();
+        while (compressedBytes > compressedBudget && it.hasNext()) {
+            compressedBytes -= it.next().capacity();
+            it.remove();
+            compressedEvictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Move images evicted from tier 1 into tier 2. Encoding runs outside the lock.
+     */
+    private void compress(List<Evicted> evicted) {
+        if (evicted.isEmpty() || getCompressedBudget() == 0) {
+            return;
+        }
+        for (Evicted e : evicted) {
+            ByteBuffer buffer = encode(e.image(), e.key().colorMode());
+            if (buffer == null) {
+                continue;
+            }
+            synchronized (this) {
+                if (memoryTier.containsKey(e.key())) {
+                    continue;  // Re-rendered meanwhile
+                }
+                ByteBuffer previous = compressedTier.put(e.key(), buffer);
+                if (previous != null) {
+                    compressedBytes -= previous.capacity();
+                }
+                compressedBytes += buffer.capacity();
+                evictCompressedTier();
+            }
+        }
+    }
+
+    private static ByteBuffer encode(Image image, ColorMode mode) {
+        BufferedImage buffered;
+        try {
+            buffered = PackedImage.pack(image, mode == null ? ColorMode.RGB : mode).toBufferedImage();
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("png").next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream ios = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(ios);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if (param.canWriteCompressed()) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(PNG_COMPRESSION_QUALITY);
+            }
+            writer.write(null, new IIOImage(buffered, null, null), param);
+        } catch (IOException e) {
+            logger.warn("Failed to compress cached page image: {}", e.getMessage());
+            return null;
+        } finally {
+            writer.dispose();
+        }
+        byte[] bytes = out.toByteArray();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes).flip();
+        return buffer;
+    }
+
+    private static Image decode(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        try {
+            BufferedImage buffered = ImageIO.read(new ByteArrayInputStream(bytes));
+            return buffered == null ? null : PackedImage.of(buffered).toImage();
+        } catch (IOException e) {
+            logger.warn("Failed to decode cached page image: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private static long sizeOf(Image image) {
+        return (long) image.getWidth() * (long) image.getHeight() * 4;
+    }
+
+    private record Evicted(Key key, Image image) {
+    }
+}
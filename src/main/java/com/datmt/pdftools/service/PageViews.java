@@ -0,0 +1,158 @@
+package com.datmt.pdftools.service;
+
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageTree;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Copy-on-write views of source pages for building one new document.
+ * <p>
+ * A view is a new page dictionary that shares the source page's content
+ * streams and resources but never writes to the source: inherited attributes
+ * are copied onto the view, rotation and crop are set on the view only, and
+ * annotations are copied so they can point at the view instead of the source
+ * page. Adding a view to another document therefore leaves the source document
+ * unchanged, unlike adding the source page itself, which re-parents it.
+ * <p>
+ * Create the views, add them to the new document, then call {@link #link()}.
+ */
+public final class PageViews {
+
+    // Source page -> view, and source annotation -> copy, both compared by identity
+    private final Map<COSDictionary, COSDictionary> views = new IdentityHashMap<>();
+    private final Map<COSDictionary, COSDictionary> annotations = new IdentityHashMap<>();
+
+    /**
+     * Create a view of a page.
+     *
+     * @param source   Page of the source document (only read)
+     * @param rotation Extra clockwise rotation in degrees, added to the page's own /Rotate
+     * @param cropBox  Crop box for the view, or null to keep the page's
+     * @return A page that can be added to the new document
+     */
+    public PDPage view(PDPage source, int rotation, PDRectangle cropBox) {
+        COSDictionary sourceDict = source.getCOSObject();
+        COSDictionary dict = new COSDictionary(sourceDict);
+        dict.removeItem(COSName.PARENT);
+        // Article beads point back into the source document's threads
+        dict.removeItem(COSName.B);
+
+        // Attributes the source page may inherit from its page tree
+        for (COSName key : new COSName[]{COSName.RESOURCES, COSName.MEDIA_BOX, COSName.CROP_BOX}) {
+            COSBase inherited = PDPageTree.getInheritableAttribute(sourceDict, key);
+            if (inherited != null) {
+                dict.setItem(key, inherited);
+            }
+        }
+        if (!dict.containsKey(COSName.MEDIA_BOX)) {
+            dict.setItem(COSName.MEDIA_BOX, copyOf(source.getMediaBox()).getCOSArray());
+        }
+        if (cropBox != null) {
+            dict.setItem(COSName.CROP_BOX, copyOf(cropBox).getCOSArray());
+        }
+        int newRotation = Math.floorMod(source.getRotation() + rotation, 360);
+        if (newRotation != 0) {
+            dict.setInt(COSName.ROTATE, newRotation);
+        } else {
+            dict.removeItem(COSName.ROTATE);
+        }
+
+        COSArray annots = dict.getCOSArray(COSName.ANNOTS);
+        if (annots != null) {
+            COSArray copies = new COSArray();
+            for (int i = 0; i < annots.size(); i++) {
+                if (annots.getObject(i) instanceof COSDictionary annotation) {
+                    COSDictionary copy = new COSDictionary(annotation);
+                    annotations.put(annotation, copy);
+                    copies.add(copy);
+                }
+            }
+            dict.setItem(COSName.ANNOTS, copies);
+        }
+
+        views.put(sourceDict, dict);
+        return new PDPage(dict);
+    }
+
+    /**
+     * Point the copied annotations at the views: /P at their page, popups at
+     * their copied parent, and link destinations at the view of the target page.
+     * Links to pages that are not in the new document are dropped, so saving
+     * does not pull in the rest of the source document.
+     * <p>
+     * Call after the views are added: {@code PDDocument.addPage} walks the
+     * page's objects and does not expect the cycles this creates.
+     */
+    public void link() {
+        for (COSDictionary copy : annotations.values()) {
+            COSDictionary page = views.get(resolve(copy, COSName.P));
+            if (page != null) {
+                copy.setItem(COSName.P, page);
+            } else {
+                copy.removeItem(COSName.P);
+            }
+            for (COSName key : new COSName[]{COSName.POPUP, COSName.PARENT}) {
+                COSDictionary target = annotations.get(resolve(copy, key));
+                if (target != null) {
+                    copy.setItem(key, target);
+                }
+            }
+
+            if (copy.getDictionaryObject(COSName.DEST) instanceof COSArray dest && targetsPage(dest)) {
+                COSArray relinked = relink(dest);
+                if (relinked != null) {
+                    copy.setItem(COSName.DEST, relinked);
+                } else {
+                    copy.removeItem(COSName.DEST);
+                }
+            }
+            if (copy.getDictionaryObject(COSName.A) instanceof COSDictionary action
+                    && "GoTo".equals(action.getNameAsString(COSName.S))
+                    && action.getDictionaryObject(COSName.D) instanceof COSArray dest && targetsPage(dest)) {
+                COSArray relinked = relink(dest);
+                if (relinked != null) {
+                    COSDictionary actionCopy = new COSDictionary(action);
+                    actionCopy.setItem(COSName.D, relinked);
+                    copy.setItem(COSName.A, actionCopy);
+                } else {
+                    copy.removeItem(COSName.A);
+                }
+            }
+        }
+    }
+
+    private static COSDictionary resolve(COSDictionary dict, COSName key) {
+        return dict.getDictionaryObject(key) instanceof COSDictionary target ? target : null;
+    }
+
+    private static boolean targetsPage(COSArray destination) {
+        return destination.size() > 0 && destination.getObject(0) instanceof COSDictionary;
+    }
+
+    /**
+     * Copy of a page destination aimed at the view of its page, or null if that page has no view.
+     */
+    private COSArray relink(COSArray destination) {
+        COSDictionary view = views.get((COSDictionary) destination.getObject(0));
+        if (view == null) {
+            return null;
+        }
+        COSArray copy = new COSArray();
+        copy.add(view);
+        for (int i = 1; i < destination.size(); i++) {
+            copy.add(destination.get(i));
+        }
+        return copy;
+    }
+
+    private static PDRectangle copyOf(PDRectangle box) {
+        return new PDRectangle(box.getLowerLeftX(), box.getLowerLeftY(), box.getWidth(), box.getHeight());
+    }
+}
@@ -3,6 +3,7 @@ package com.datmt.pdftools.service;
 import com.datmt.pdftools.model.PdfBookmark;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.interactive.documentnavigation.destination.PDPageFitDestination;
 import org.apache.pdfbox.pdmodel.interactive.documentnavigation.outline.PDDocumentOutline;
 import org.apache.pdfbox.pdmodel.interactive.documentnavigation.outline.PDOutlineItem;
 import org.apache.pdfbox.pdmodel.interactive.documentnavigation.outline.PDOutlineNode;
@@ -59,6 +60,44 @@ public class PdfBookmarkService {
         return bookmarks;
     }
 
+    /**
+     * Replace the outline of a document with the given bookmark tree.
+     * An empty list removes the outline. Only titles, start pages and nesting
+     * are written; page ranges and selection are not part of the outline.
+     *
+     * @throws IllegalArgumentException If a bookmark points outside the document
+     */
+    public void writeBookmarks(PDDocument document, List<PdfBookmark> bookmarks) {
+        if (bookmarks.isEmpty()) {
+            document.getDocumentCatalog().setDocumentOutline(null);
+            return;
+        }
+        PDDocumentOutline outline = new PDDocumentOutline();
+        writeBookmarksRecursive(outline, document, bookmarks);
+        outline.openNode();
+        document.getDocumentCatalog().setDocumentOutline(outline);
+        logger.debug("Wrote outline with {} top-level bookmarks", bookmarks.size());
+    }
+
+    private void writeBookmarksRecursive(PDOutlineNode parent, PDDocument document, List<PdfBookmark> bookmarks) {
+        int pageCount = document.getNumberOfPages();
+        for (PdfBookmark bookmark : bookmarks) {
+            if (bookmark.getPageIndex() < 0 || bookmark.getPageIndex() >= pageCount) {
+                throw new IllegalArgumentException("Bookmark '" + bookmark.getTitle()
+                        + "' points to page " + (bookmark.getPageIndex() + 1) + " of " + pageCount);
+            }
+            PDPageFitDestination destination = new PDPageFitDestination();
+            destination.setPage(document.getPage(bookmark.getPageIndex()));
+            PDOutlineItem item = new PDOutlineItem();
+            item.setTitle(bookmark.getTitle());
+            item.setDestination(destination);
+            parent.addLast(item);
+            if (bookmark.hasChildren()) {
+                writeBookmarksRecursive(item, document, bookmark.getChildren());
+            }
+        }
+    }
+
     /**
      * Recursively extract bookmarks from the outline tree.
      */
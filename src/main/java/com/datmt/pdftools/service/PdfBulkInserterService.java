@@ -1,17 +1,16 @@
 package com.datmt.pdftools.service;
 
 import com.datmt.pdftools.model.JoinerSection;
-import javafx.embed.swing.SwingFXUtils;
+import com.datmt.pdftools.service.image.FxPageRenderer;
+import com.datmt.pdftools.service.io.PdfWriteFactory;
+import com.datmt.pdftools.service.io.SaveProfile;
 import javafx.scene.image.Image;
-import org.apache.pdfbox.Loader;
-import org.apache.pdfbox.io.RandomAccessReadBufferedFile;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.PDPageContentStream;
 import org.apache.pdfbox.pdmodel.common.PDRectangle;
 import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
 import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
-import org.apache.pdfbox.rendering.ImageType;
 import org.apache.pdfbox.rendering.PDFRenderer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -31,6 +30,8 @@ public class PdfBulkInserterService {
     private static final Logger logger = LoggerFactory.getLogger(PdfBulkInserterService.class);
     private static final int THUMBNAIL_DPI = 72;
 
+    private final PdfProbe probe = new PdfProbe();
+
     /**
      * Insertion mode determining where pages are inserted.
      */
@@ -54,6 +55,8 @@ public class PdfBulkInserterService {
         private JoinerSection.PageSize pageSize = JoinerSection.PageSize.A4;
         private JoinerSection.FitOption fitOption = JoinerSection.FitOption.FIT_TO_PAGE;
 
+        private SaveProfile saveProfile;
+
         public InsertionMode getMode() {
             return mode;
         }
@@ -109,6 +112,17 @@ public class PdfBulkInserterService {
         public void setFitOption(JoinerSection.FitOption fitOption) {
             this.fitOption = fitOption;
         }
+
+        public SaveProfile getSaveProfile() {
+            return saveProfile;
+        }
+
+        /**
+         * Profile for the written files, or null for the default.
+         */
+        public void setSaveProfile(SaveProfile saveProfile) {
+            this.saveProfile = saveProfile;
+        }
     }
 
     /**
@@ -181,11 +195,12 @@ public class PdfBulkInserterService {
     }
 
     /**
-     * Load a PDF file as source document.
+     * Borrow a PDF file from the document pool as source document.
+     * The caller must close the lease when done.
      */
-    public PDDocument loadSourcePdf(File file) throws IOException {
+    public DocumentPool.Lease loadSourcePdf(File file) throws IOException {
         logger.info("Loading source PDF: {}", file.getName());
-        return Loader.loadPDF(new RandomAccessReadBufferedFile(file));
+        return DocumentPool.getInstance().borrow(file);
     }
 
     /**
@@ -226,9 +241,11 @@ public class PdfBulkInserterService {
      * Get the page count of a PDF file without fully loading it.
      */
     public int getPageCount(File pdfFile) throws IOException {
-        try (PDDocument doc = Loader.loadPDF(new RandomAccessReadBufferedFile(pdfFile))) {
-            return doc.getNumberOfPages();
+        int pageCount = probe.probe(pdfFile).pageCount();
+        if (pageCount < 0) {
+            throw new IOException("Could not determine page count: " + pdfFile.getName());
         }
+        return pageCount;
     }
 
     /**
@@ -236,10 +253,8 @@ public class PdfBulkInserterService {
      */
     public Image renderThumbnail(File file, boolean isPdf, int pageIndex) throws IOException {
         if (isPdf) {
-            try (PDDocument doc = Loader.loadPDF(new RandomAccessReadBufferedFile(file))) {
-                PDFRenderer renderer = new PDFRenderer(doc);
-                BufferedImage bufferedImage = renderer.renderImageWithDPI(pageIndex, THUMBNAIL_DPI, ImageType.RGB);
-                return SwingFXUtils.toFXImage(bufferedImage, null);
+            try (DocumentPool.Lease lease = DocumentPool.getInstance().borrow(file)) {
+                return lease.withDocument(document -> renderThumbnailFromDocument(document, pageIndex));
             }
         } else {
             // Image file
@@ -251,16 +266,14 @@ public class PdfBulkInserterService {
      * Render a thumbnail from an already-loaded document.
      */
     public Image renderThumbnailFromDocument(PDDocument doc, int pageIndex) throws IOException {
-        PDFRenderer renderer = new PDFRenderer(doc);
-        BufferedImage bufferedImage = renderer.renderImageWithDPI(pageIndex, THUMBNAIL_DPI, ImageType.RGB);
-        return SwingFXUtils.toFXImage(bufferedImage, null);
+        return FxPageRenderer.render(new PDFRenderer(doc), doc, pageIndex, THUMBNAIL_DPI);
     }
 
     /**
      * Insert source pages into a target PDF.
      *
      * @param targetFile Target PDF file
-     * @param sourceDoc  Source document (PDF or converted image)
+     * @param sourceDoc  Source document (PDF or converted image); locked while its pages are copied
      * @param options    Insertion options
      * @return InsertResult with operation details
      */
@@ -268,8 +281,8 @@ public class PdfBulkInserterService {
         InsertResult result = new InsertResult(targetFile);
 
         try {
-            // Load target document
-            try (PDDocument targetDoc = Loader.loadPDF(new RandomAccessReadBufferedFile(targetFile))) {
+            // Use a target copy of our own: copying its pages and saving holds it for a while
+            try (PDDocument targetDoc = DocumentPool.getInstance().takeForModification(targetFile, null)) {
                 int originalPageCount = targetDoc.getNumberOfPages();
                 result.setOriginalPageCount(originalPageCount);
 
@@ -284,60 +297,63 @@ public class PdfBulkInserterService {
                     return result;
                 }
 
-                // Create new document with inserted pages
-                try (PDDocument newDoc = new PDDocument()) {
-                    int sourcePageCount = sourceDoc.getNumberOfPages();
-                    int insertionsPerformed = 0;
-                    int positionIndex = 0;
-                    int currentPosition = positions.get(positionIndex);
-
-                    // Copy pages, inserting source pages at specified positions
-                    for (int i = 0; i < originalPageCount; i++) {
-                        // Import the target page
-                        PDPage targetPage = targetDoc.getPage(i);
-                        newDoc.importPage(targetPage);
-
-                        // Check if we need to insert after this page (1-based position)
-                        if (positionIndex < positions.size() && (i + 1) == currentPosition) {
-                            // Insert all source pages
+                // Create new document with inserted pages, holding the lock of the
+                // source, which may be a pooled document that other tools read too
+                synchronized (sourceDoc) {
+                    try (PDDocument newDoc = new PDDocument()) {
+                        int sourcePageCount = sourceDoc.getNumberOfPages();
+                        int insertionsPerformed = 0;
+                        int positionIndex = 0;
+                        int currentPosition = positions.get(positionIndex);
+
+                        // Copy pages, inserting source pages at specified positions
+                        for (int i = 0; i < originalPageCount; i++) {
+                            // Import the target page
+                            PDPage targetPage = targetDoc.getPage(i);
+                            newDoc.importPage(targetPage);
+
+                            // Check if we need to insert after this page (1-based position)
+                            if (positionIndex < positions.size() && (i + 1) == currentPosition) {
+                                // Insert all source pages
+                                for (int j = 0; j < sourcePageCount; j++) {
+                                    PDPage sourcePage = sourceDoc.getPage(j);
+                                    newDoc.importPage(sourcePage);
+                                }
+                                insertionsPerformed++;
+
+                                // Move to next position
+                                positionIndex++;
+                                if (positionIndex < positions.size()) {
+                                    currentPosition = positions.get(positionIndex);
+                                }
+                            }
+                        }
+
+                        // Handle AT_END mode or remaining positions at end
+                        while (positionIndex < positions.size()) {
                             for (int j = 0; j < sourcePageCount; j++) {
                                 PDPage sourcePage = sourceDoc.getPage(j);
                                 newDoc.importPage(sourcePage);
                             }
                             insertionsPerformed++;
-
-                            // Move to next position
                             positionIndex++;
-                            if (positionIndex < positions.size()) {
-                                currentPosition = positions.get(positionIndex);
-                            }
-                        }
-                    }
-
-                    // Handle AT_END mode or remaining positions at end
-                    while (positionIndex < positions.size()) {
-                        for (int j = 0; j < sourcePageCount; j++) {
-                            PDPage sourcePage = sourceDoc.getPage(j);
-                            newDoc.importPage(sourcePage);
                         }
-                        insertionsPerformed++;
-                        positionIndex++;
-                    }
 
-                    // Generate output file path
-                    File outputFile = generateOutputFile(targetFile, options.getOutputSuffix());
-                    result.setOutputFile(outputFile);
+                        // Generate output file path
+                        File outputFile = generateOutputFile(targetFile, options.getOutputSuffix());
+                        result.setOutputFile(outputFile);
 
-                    // Save the new document
-                    newDoc.save(outputFile);
+                        // Save the new document
+                        PdfWriteFactory.save(newDoc, outputFile, options.getSaveProfile());
 
-                    result.setSuccess(true);
-                    result.setInsertionsPerformed(insertionsPerformed);
-                    result.setNewPageCount(newDoc.getNumberOfPages());
+                        result.setSuccess(true);
+                        result.setInsertionsPerformed(insertionsPerformed);
+                        result.setNewPageCount(newDoc.getNumberOfPages());
 
-                    logger.info("Inserted {} time(s) into {}: {} -> {} pages",
-                            insertionsPerformed, targetFile.getName(),
-                            originalPageCount, result.getNewPageCount());
+                        logger.info("Inserted {} time(s) into {}: {} -> {} pages",
+                                insertionsPerformed, targetFile.getName(),
+                                originalPageCount, result.getNewPageCount());
+                    }
                 }
             }
         } catch (IOException e) {
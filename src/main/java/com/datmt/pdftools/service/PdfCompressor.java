@@ -1,13 +1,25 @@
 package com.datmt.pdftools.service;
 
-import org.apache.pdfbox.Loader;
+import com.datmt.pdftools.service.image.ImagePlacements;
+import com.datmt.pdftools.service.image.PixelBudget;
+import com.datmt.pdftools.service.io.PdfWriteFactory;
+import com.datmt.pdftools.service.io.SaveProfile;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
 import org.apache.pdfbox.cos.COSName;
-import org.apache.pdfbox.io.RandomAccessReadBufferedFile;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSStream;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDDocumentInformation;
 import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.PDResources;
-import org.apache.pdfbox.pdmodel.graphics.PDXObject;
+import org.apache.pdfbox.pdmodel.graphics.color.PDColorSpace;
+import org.apache.pdfbox.pdmodel.graphics.color.PDIndexed;
+import org.apache.pdfbox.pdmodel.graphics.form.PDFormXObject;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+import org.apache.pdfbox.pdmodel.graphics.image.CCITTFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
 import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
 import org.apache.pdfbox.pdmodel.graphics.image.JPEGFactory;
 import org.slf4j.Logger;
@@ -17,10 +29,23 @@ import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 import java.util.Calendar;
 
 /**
@@ -29,6 +54,25 @@ import java.util.Calendar;
 public class PdfCompressor {
     private static final Logger logger = LoggerFactory.getLogger(PdfCompressor.class);
     private static final int THREAD_COUNT = Math.max(1, Runtime.getRuntime().availableProcessors());
+    /** Files compressed at once by a batch, so one file's save overlaps the next file's analysis */
+    private static final int FILES_IN_FLIGHT = 2;
+
+    /**
+     * Image work of every compression, shared across calls and files so idle
+     * workers steal from busy ones. Tasks never block on each other, they
+     * only chain, so the pool does not need more threads than cores.
+     */
+    private static final ForkJoinPool WORK_POOL = new ForkJoinPool(THREAD_COUNT, pool -> {
+        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setName("pdf-compress-" + thread.getPoolIndex());
+        thread.setDaemon(true);
+        return thread;
+    }, null, true);
+    // Soft masks and ICC profiles of an image are hashed; objects nested deeper compare by identity
+    private static final int MAX_KEY_DEPTH = 4;
+
+    /** Default bytes of decoded pixels held at once by a compression */
+    public static final long DEFAULT_DECODE_BUDGET = 512L * 1024 * 1024;
 
     /**
      * Compression level presets.
@@ -55,6 +99,28 @@ public class PdfCompressor {
         }
     }
 
+    /**
+     * Encodings an image can end up with.
+     */
+    public enum ImageCodec {
+        ORIGINAL,   // The image's own stream, kept as it is
+        JPEG,       // DCT at the target quality; not tried for bilevel images
+        FLATE,      // Lossless Flate with PNG predictors
+        CCITT_G4    // CCITT Group 4, bilevel images only
+    }
+
+    /**
+     * What became of one distinct image.
+     *
+     * @param pageIndex     0-based page where the image is first used
+     * @param name          Resource name of its first use
+     * @param references    Number of resource entries that refer to it
+     */
+    public record ImageReport(int pageIndex, String name, int width, int height, int outputWidth,
+                              int outputHeight, ImageCodec codec, long originalSize, long outputSize,
+                              int references) {
+    }
+
     /**
      * Compression options.
      */
@@ -63,6 +129,8 @@ public class PdfCompressor {
         private float imageQuality = 0.65f;
         private boolean removeMetadata = false;
         private boolean removeBookmarks = false;
+        private SaveProfile saveProfile = SaveProfile.OPTIMIZED;
+        private long decodeBudget = DEFAULT_DECODE_BUDGET;
 
         public CompressionLevel getLevel() {
             return level;
@@ -96,6 +164,32 @@ public class PdfCompressor {
         public void setRemoveBookmarks(boolean removeBookmarks) {
             this.removeBookmarks = removeBookmarks;
         }
+
+        public SaveProfile getSaveProfile() {
+            return saveProfile;
+        }
+
+        /**
+         * Profile for the compressed file; OPTIMIZED by default, null for the application default.
+         */
+        public void setSaveProfile(SaveProfile saveProfile) {
+            this.saveProfile = saveProfile;
+        }
+
+        public long getDecodeBudget() {
+            return decodeBudget;
+        }
+
+        /**
+         * Bytes of decoded image pixels that may be held at once across all
+         * threads. Images wait to be decoded while the budget is used up.
+         */
+        public void setDecodeBudget(long decodeBudget) {
+            if (decodeBudget <= 0) {
+                throw new IllegalArgumentException("Decode budget must be positive: " + decodeBudget);
+            }
+            this.decodeBudget = decodeBudget;
+        }
     }
 
     /**
@@ -106,14 +200,25 @@ public class PdfCompressor {
         private final File outputFile;
         private final long originalSize;
         private final long compressedSize;
+        private final int compressedImages;
+        private final int deduplicatedImages;
+        private final List<ImageReport> imageReports;
         private final boolean success;
         private final String errorMessage;
 
         public CompressResult(File inputFile, File outputFile, long originalSize, long compressedSize) {
+            this(inputFile, outputFile, originalSize, compressedSize, 0, 0, List.of());
+        }
+
+        public CompressResult(File inputFile, File outputFile, long originalSize, long compressedSize,
+                              int compressedImages, int deduplicatedImages, List<ImageReport> imageReports) {
             this.inputFile = inputFile;
             this.outputFile = outputFile;
             this.originalSize = originalSize;
             this.compressedSize = compressedSize;
+            this.compressedImages = compressedImages;
+            this.deduplicatedImages = deduplicatedImages;
+            this.imageReports = Collections.unmodifiableList(imageReports);
             this.success = true;
             this.errorMessage = null;
         }
@@ -123,6 +228,9 @@ public class PdfCompressor {
             this.outputFile = null;
             this.originalSize = inputFile.length();
             this.compressedSize = 0;
+            this.compressedImages = 0;
+            this.deduplicatedImages = 0;
+            this.imageReports = List.of();
             this.success = false;
             this.errorMessage = errorMessage;
         }
@@ -143,6 +251,28 @@ public class PdfCompressor {
             return compressedSize;
         }
 
+        /**
+         * Number of distinct images that were recompressed.
+         */
+        public int getCompressedImages() {
+            return compressedImages;
+        }
+
+        /**
+         * Number of image references that reuse an image compressed for another
+         * reference, instead of being compressed and written again.
+         */
+        public int getDeduplicatedImages() {
+            return deduplicatedImages;
+        }
+
+        /**
+         * Codec chosen for each distinct image, in the order the images were found.
+         */
+        public List<ImageReport> getImageReports() {
+            return imageReports;
+        }
+
         public double getCompressionRatio() {
             if (originalSize == 0) return 0;
             return 1.0 - ((double) compressedSize / originalSize);
@@ -165,8 +295,159 @@ public class PdfCompressor {
         void onProgress(int currentPage, int totalPages, String status);
     }
 
+    /**
+     * Progress of a batch, reported from the threads compressing its files.
+     */
+    public interface BatchCallback {
+        void onProgress(File file, int currentPage, int totalPages, String status);
+
+        /**
+         * A file has finished, successfully or not. Files finish in any order.
+         */
+        void onFileComplete(BatchItem item, int completedFiles, int totalFiles);
+    }
+
+    /**
+     * Outcome of one file of a batch.
+     *
+     * @param elapsedMillis Time from starting the file to its output being saved
+     */
+    public record BatchItem(CompressResult result, long elapsedMillis) {
+
+        /**
+         * Input bytes compressed per second.
+         */
+        public double getThroughput() {
+            return elapsedMillis > 0 ? result.getOriginalSize() * 1000.0 / elapsedMillis : 0;
+        }
+    }
+
+    /**
+     * Outcome of a batch, with items in the order the files were given.
+     *
+     * @param elapsedMillis Wall time of the whole batch
+     */
+    public record BatchResult(List<BatchItem> items, long elapsedMillis) {
+
+        public int getSuccessCount() {
+            return (int) items.stream().filter(item -> item.result().isSuccess()).count();
+        }
+
+        public long getTotalOriginalSize() {
+            return items.stream().mapToLong(item -> item.result().getOriginalSize()).sum();
+        }
+
+        /**
+         * Total output size of the files that were compressed.
+         */
+        public long getTotalCompressedSize() {
+            return items.stream().filter(item -> item.result().isSuccess())
+                    .mapToLong(item -> item.result().getCompressedSize()).sum();
+        }
+
+        /**
+         * Input bytes compressed per second of wall time, over all files.
+         */
+        public double getThroughput() {
+            return elapsedMillis > 0 ? getTotalOriginalSize() * 1000.0 / elapsedMillis : 0;
+        }
+
+        public double getFilesPerSecond() {
+            return elapsedMillis > 0 ? items.size() * 1000.0 / elapsedMillis : 0;
+        }
+    }
+
+    /**
+     * Compress several PDF files. Up to two files are worked on at once, so
+     * one file's save overlaps the next file's loading and analysis, and the
+     * image work of all of them shares one work-stealing pool and one decode
+     * budget (see {@link CompressionOptions#setDecodeBudget}).
+     *
+     * @param inputFiles The PDF files to compress
+     * @param outputFor  Where to save the compressed copy of each file
+     * @param options    Compression options, used for every file
+     * @param callback   Progress callback (optional)
+     * @return A result for every file, in the order given
+     */
+    public BatchResult compressAll(List<File> inputFiles, Function<File, File> outputFor,
+                                   CompressionOptions options, BatchCallback callback) {
+        long startTime = System.currentTimeMillis();
+        int totalFiles = inputFiles.size();
+        logger.info("Compressing {} files with level {}, {} at a time", totalFiles, options.getLevel(),
+                FILES_IN_FLIGHT);
+        PixelBudget budget = new PixelBudget(options.getDecodeBudget());
+        BatchItem[] items = new BatchItem[totalFiles];
+        AtomicInteger completedFiles = new AtomicInteger(0);
+
+        AtomicInteger threadCounter = new AtomicInteger();
+        ExecutorService fileExecutor = Executors.newFixedThreadPool(Math.max(1, Math.min(FILES_IN_FLIGHT, totalFiles)),
+                r -> {
+                    Thread thread = new Thread(r, "pdf-compress-file-" + threadCounter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        try {
+            List<Future<?>> futures = new ArrayList<>(totalFiles);
+            for (int i = 0; i < totalFiles; i++) {
+                int index = i;
+                File inputFile = inputFiles.get(i);
+                futures.add(fileExecutor.submit(() -> {
+                    long fileStart = System.currentTimeMillis();
+                    CompressResult result = compress(inputFile, outputFor.apply(inputFile), options,
+                            callback == null ? null : (current, total, status) ->
+                                    callback.onProgress(inputFile, current, total, status),
+                            budget);
+                    BatchItem item = new BatchItem(result, System.currentTimeMillis() - fileStart);
+                    items[index] = item;
+                    int done = completedFiles.incrementAndGet();
+                    logger.info("Compressed {} in {} ms ({}/s)", inputFile.getName(), item.elapsedMillis(),
+                            formatFileSize((long) item.getThroughput()));
+                    if (callback != null) {
+                        callback.onFileComplete(item, done, totalFiles);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Batch compression interrupted after {}/{} files", completedFiles.get(), totalFiles);
+        } catch (ExecutionException e) {
+            logger.error("Batch compression failed: {}", e.getCause().getMessage(), e.getCause());
+        } finally {
+            fileExecutor.shutdownNow();
+        }
+
+        List<BatchItem> results = new ArrayList<>(totalFiles);
+        for (int i = 0; i < totalFiles; i++) {
+            results.add(items[i] != null ? items[i]
+                    : new BatchItem(new CompressResult(inputFiles.get(i), "Not compressed"), 0));
+        }
+        BatchResult batch = new BatchResult(results, System.currentTimeMillis() - startTime);
+        logger.info("Batch complete: {}/{} files in {} ms, {}/s, {} files/s", batch.getSuccessCount(), totalFiles,
+                batch.elapsedMillis(), formatFileSize((long) batch.getThroughput()),
+                String.format("%.2f", batch.getFilesPerSecond()));
+        return batch;
+    }
+
     /**
      * Compress a PDF file.
+     * <p>
+     * Images are compressed in two passes: the images used by all pages and
+     * forms are gathered first, by object identity and then by content, and
+     * each distinct image is recompressed once; every reference to it is then
+     * pointed at the compressed copy. An image shared by many pages is decoded
+     * and encoded once and written once.
+     * <p>
+     * Images are downsampled to the level's maximum DPI at the largest size
+     * they are drawn at (see {@link ImagePlacements}). Images already at or
+     * below it, or not drawn by any page, are left as they are.
+     * <p>
+     * Decoded pixels are bounded by the options' decode budget: an image is
+     * only submitted once the memory for its pixels has been reserved (see
+     * {@link PixelBudget}), and large images are decoded a band of rows at a
+     * time where their filter can decode part of the image.
      *
      * @param inputFile  The PDF file to compress
      * @param outputFile Where to save the compressed PDF
@@ -176,48 +457,111 @@ public class PdfCompressor {
      */
     public CompressResult compress(File inputFile, File outputFile, CompressionOptions options,
                                    ProgressCallback callback) {
+        return compress(inputFile, outputFile, options, callback, new PixelBudget(options.getDecodeBudget()));
+    }
+
+    private CompressResult compress(File inputFile, File outputFile, CompressionOptions options,
+                                    ProgressCallback callback, PixelBudget budget) {
         logger.info("Compressing PDF: {} with level {} using {} threads",
-                inputFile.getName(), options.getLevel(), THREAD_COUNT);
+                inputFile.getName(), options.getLevel(), WORK_POOL.getParallelism());
         long originalSize = inputFile.length();
 
-        ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+        ExecutorService executor = WORK_POOL;
 
-        try (PDDocument document = Loader.loadPDF(new RandomAccessReadBufferedFile(inputFile))) {
+        try (PDDocument document = DocumentPool.getInstance().takeForModification(inputFile, null)) {
             int totalPages = document.getNumberOfPages();
-            AtomicInteger completedPages = new AtomicInteger(0);
 
-            // Create tasks for all pages
-            List<Future<?>> futures = new ArrayList<>();
+            // Pass 1: gather the distinct images and where they are used
+            if (callback != null) {
+                callback.onProgress(0, totalPages, "Collecting images");
+            }
+            ImagePlacements placements = ImagePlacements.analyze(document);
+            List<SharedImage> images = collectImages(document, placements);
+            int references = images.stream().mapToInt(image -> image.uses.size()).sum();
+            logger.debug("Found {} distinct images in {} image references", images.size(), references);
 
-            for (int i = 0; i < totalPages; i++) {
-                final int pageIndex = i;
-                Future<?> future = executor.submit(() -> {
-                    try {
-                        PDPage page = document.getPage(pageIndex);
-                        compressPageImages(document, page, options);
+            // Pass 2: compress each distinct image shown above the target resolution once
+            int maxDpi = options.getLevel().getMaxDpi();
+            List<SharedImage> oversized = new ArrayList<>();
+            for (SharedImage image : images) {
+                if (!image.image.isStencil() && calculateScale(image.placement, maxDpi) < 1.0f) {
+                    oversized.add(image);
+                }
+            }
+            logger.debug("{} of {} images are shown above {} DPI", oversized.size(), images.size(), maxDpi);
 
-                        int done = completedPages.incrementAndGet();
-                        if (callback != null && done % 50 == 0) {
-                            callback.onProgress(done, totalPages, "Optimizing pages");
-                        }
-                    } catch (Exception e) {
-                        logger.warn("Failed to compress page {}: {}", pageIndex, e.getMessage());
-                    }
-                });
-                futures.add(future);
+            AtomicInteger completedImages = new AtomicInteger(0);
+            AtomicBoolean abandoned = new AtomicBoolean(false);
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            try {
+                for (SharedImage image : oversized) {
+                    float scale = calculateScale(image.placement, maxDpi);
+                    int subsampling = subsampling(image.image, scale);
+                    // Reserved here rather than in the task, so waiting never ties up a worker
+                    PixelBudget.Reservation reservation = budget.acquire(
+                            decodedBytes(image.image, subsampling, scale));
+                    CompletableFuture<Void> future = CompletableFuture
+                            .supplyAsync(() -> {
+                                checkAbandoned(abandoned);
+                                return prepareImage(image.image, scale, subsampling);
+                            }, executor)
+                            .thenCompose(prepared -> {
+                                checkAbandoned(abandoned);
+                                return encodeCandidates(prepared, options, executor);
+                            })
+                            .thenAccept(candidates -> {
+                                image.choice = chooseSmallest(image.image, candidates);
+                                int done = completedImages.incrementAndGet();
+                                if (callback != null) {
+                                    callback.onProgress(done, oversized.size(), "Optimizing images");
+                                }
+                            })
+                            .exceptionally(e -> {
+                                logger.trace("Keeping image: {}", e.getMessage());
+                                return null;
+                            })
+                            .whenComplete((done, e) -> budget.release(reservation));
+                    futures.add(future);
+                }
+            } catch (InterruptedException | RuntimeException e) {
+                // Images not yet started are skipped; the document is closed once the rest finish
+                abandoned.set(true);
+                if (e instanceof InterruptedException) {
+                    Thread.currentThread().interrupt();
+                }
+                throw e;
+            } finally {
+                // Wait for all images to complete, also on the way out, as they read the document
+                CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
             }
 
-            // Wait for all pages to complete
-            for (Future<?> future : futures) {
-                try {
-                    future.get();
-                } catch (Exception e) {
-                    logger.warn("Page task failed: {}", e.getMessage());
+            // Point every reference at the chosen encoding
+            int compressedImages = 0;
+            int deduplicated = 0;
+            List<ImageReport> reports = new ArrayList<>(images.size());
+            for (SharedImage image : images) {
+                Encoded choice = image.choice;
+                long originalBytes = image.image.getCOSObject().getLength();
+                if (choice == null) {
+                    reports.add(new ImageReport(image.pageIndex, image.uses.get(0).name().getName(),
+                            image.image.getWidth(), image.image.getHeight(), image.image.getWidth(),
+                            image.image.getHeight(), ImageCodec.ORIGINAL, originalBytes, originalBytes,
+                            image.uses.size()));
+                    continue;
+                }
+                PDImageXObject compressed = choice.toImage(document, image.image);
+                for (ImageUse use : image.uses) {
+                    use.resources().put(use.name(), compressed);
                 }
+                compressedImages++;
+                deduplicated += image.uses.size() - 1;
+                reports.add(new ImageReport(image.pageIndex, image.uses.get(0).name().getName(),
+                        image.image.getWidth(), image.image.getHeight(), choice.width(), choice.height(),
+                        choice.codec(), originalBytes, choice.data().length, image.uses.size()));
             }
 
             if (callback != null) {
-                callback.onProgress(totalPages, totalPages, "Pages optimized");
+                callback.onProgress(oversized.size(), oversized.size(), "Images optimized");
             }
 
             // Remove metadata if requested
@@ -240,86 +584,260 @@ public class PdfCompressor {
             if (callback != null) {
                 callback.onProgress(totalPages, totalPages, "Saving compressed file");
             }
-            document.save(outputFile);
+            PdfWriteFactory.save(document, outputFile, options.getSaveProfile());
 
             long compressedSize = outputFile.length();
             double reduction = (1.0 - (double) compressedSize / originalSize) * 100;
-            logger.info("Compression complete: {} -> {} bytes ({}% reduction)",
-                    originalSize, compressedSize, String.format("%.1f", reduction));
+            logger.info("Compression complete: {} -> {} bytes ({}% reduction), {} images compressed, {} deduplicated",
+                    originalSize, compressedSize, String.format("%.1f", reduction), compressedImages, deduplicated);
 
-            return new CompressResult(inputFile, outputFile, originalSize, compressedSize);
+            return new CompressResult(inputFile, outputFile, originalSize, compressedSize,
+                    compressedImages, deduplicated, reports);
 
         } catch (Exception e) {
             logger.error("Failed to compress PDF {}: {}", inputFile.getName(), e.getMessage(), e);
             return new CompressResult(inputFile, e.getMessage());
-        } finally {
-            executor.shutdownNow();
         }
     }
 
     /**
-     * Compress images on a page. Thread-safe with synchronization on document.
+     * A distinct image and every resource entry that refers to it.
      */
-    private void compressPageImages(PDDocument document, PDPage page, CompressionOptions options)
-            throws IOException {
-        PDResources resources = page.getResources();
-        if (resources == null) {
-            return;
+    private static final class SharedImage {
+        private final PDImageXObject image;
+        private final int pageIndex;
+        private final List<ImageUse> uses = new ArrayList<>();
+        private ImagePlacements.Placement placement;
+        private volatile Encoded choice;
+
+        private SharedImage(PDImageXObject image, int pageIndex) {
+            this.image = image;
+            this.pageIndex = pageIndex;
         }
 
-        // Collect image names first (to avoid concurrent modification)
-        List<COSName> imageNames = new ArrayList<>();
-        for (COSName name : resources.getXObjectNames()) {
-            PDXObject xobject = resources.getXObject(name);
-            if (xobject instanceof PDImageXObject) {
-                imageNames.add(name);
+        private void place(ImagePlacements.Placement other) {
+            if (other != null) {
+                placement = placement == null ? other : placement.merge(other);
             }
         }
+    }
+
+    /**
+     * An image referred to by name from a resource dictionary.
+     */
+    private record ImageUse(PDResources resources, COSName name) {
+    }
+
+    /**
+     * Gather the distinct images used by the pages of a document and by the
+     * forms they draw. Images are the same when they are the same stream, or
+     * when their stored bytes and dictionaries match.
+     */
+    private List<SharedImage> collectImages(PDDocument document, ImagePlacements placements) {
+        List<SharedImage> images = new ArrayList<>();
+        Map<COSStream, SharedImage> byStream = new IdentityHashMap<>();
+        Map<String, SharedImage> byContent = new HashMap<>();
+        Set<COSDictionary> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        MessageDigest sha256 = sha256();
+        int pageIndex = 0;
+        for (PDPage page : document.getPages()) {
+            collectImages(page.getResources(), pageIndex++, placements, images, byStream, byContent, visited, sha256);
+        }
+        return images;
+    }
 
-        // Process each image
-        for (COSName name : imageNames) {
+    private void collectImages(PDResources resources, int pageIndex, ImagePlacements placements,
+                               List<SharedImage> images,
+                               Map<COSStream, SharedImage> byStream, Map<String, SharedImage> byContent,
+                               Set<COSDictionary> visited, MessageDigest sha256) {
+        // Resources shared by several pages are rewritten once for all of them
+        if (resources == null || !visited.add(resources.getCOSObject())) {
+            return;
+        }
+        COSDictionary xobjects = resources.getCOSObject().getCOSDictionary(COSName.XOBJECT);
+        if (xobjects == null) {
+            return;
+        }
+        for (COSName name : resources.getXObjectNames()) {
+            if (!(xobjects.getDictionaryObject(name) instanceof COSStream stream)) {
+                continue;
+            }
             try {
-                PDXObject xobject = resources.getXObject(name);
-                if (xobject instanceof PDImageXObject) {
-                    PDImageXObject image = (PDImageXObject) xobject;
-                    compressImage(document, resources, name, image, options);
+                if (COSName.FORM.equals(stream.getCOSName(COSName.SUBTYPE))
+                        && resources.getXObject(name) instanceof PDFormXObject form) {
+                    collectImages(form.getResources(), pageIndex, placements, images, byStream, byContent, visited,
+                            sha256);
+                    continue;
+                }
+                if (!COSName.IMAGE.equals(stream.getCOSName(COSName.SUBTYPE))) {
+                    continue;
+                }
+                SharedImage image = byStream.get(stream);
+                if (image == null) {
+                    String key = contentKey(stream, sha256);
+                    image = key != null ? byContent.get(key) : null;
+                    if (image == null && resources.getXObject(name) instanceof PDImageXObject xobject) {
+                        image = new SharedImage(xobject, pageIndex);
+                        images.add(image);
+                        if (key != null) {
+                            byContent.put(key, image);
+                        }
+                    }
+                    if (image == null) {
+                        continue;
+                    }
+                    byStream.put(stream, image);
+                    image.place(placements.get(stream));
                 }
-            } catch (Exception e) {
+                image.uses.add(new ImageUse(resources, name));
+            } catch (IOException e) {
                 logger.trace("Skipping image {}: {}", name.getName(), e.getMessage());
             }
         }
     }
 
     /**
-     * Compress a single image. Uses synchronization for thread-safe document modification.
+     * Hash of an image's stored bytes and dictionary, following soft masks and
+     * ICC profiles into their own bytes, or null if the image cannot be read.
      */
-    private void compressImage(PDDocument document, PDResources resources, COSName name,
-                               PDImageXObject originalImage, CompressionOptions options) {
+    private String contentKey(COSStream stream, MessageDigest sha256) {
+        StringBuilder key = new StringBuilder();
         try {
-            // Get the image (read operation - can be done outside sync)
-            BufferedImage bufferedImage = originalImage.getImage();
-            if (bufferedImage == null) {
-                return;
+            describe(stream, key, sha256, 0);
+        } catch (IOException e) {
+            logger.trace("Not hashing unreadable image: {}", e.getMessage());
+            return null;
+        }
+        return key.toString();
+    }
+
+    private void describe(COSBase value, StringBuilder key, MessageDigest sha256, int depth) throws IOException {
+        COSBase target = value instanceof COSObject reference ? reference.getObject() : value;
+        if (depth > MAX_KEY_DEPTH) {
+            key.append('@').append(System.identityHashCode(target));
+        } else if (target instanceof COSStream stream) {
+            sha256.reset();
+            try (InputStream in = stream.createRawInputStream()) {
+                byte[] buffer = new byte[64 * 1024];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    sha256.update(buffer, 0, read);
+                }
+            }
+            key.append('#').append(HexFormat.of().formatHex(sha256.digest()));
+            describeEntries(stream, key, sha256, depth);
+        } else if (target instanceof COSDictionary dict) {
+            describeEntries(dict, key, sha256, depth);
+        } else if (target instanceof COSArray array) {
+            key.append('[');
+            for (int i = 0; i < array.size(); i++) {
+                describe(array.get(i), key, sha256, depth + 1);
+                key.append(' ');
             }
+            key.append(']');
+        } else {
+            key.append(target);
+        }
+    }
 
-            int width = bufferedImage.getWidth();
-            int height = bufferedImage.getHeight();
+    private void describeEntries(COSDictionary dict, StringBuilder key, MessageDigest sha256, int depth)
+            throws IOException {
+        List<COSName> names = new ArrayList<>(dict.keySet());
+        names.sort(Comparator.comparing(COSName::getName));
+        key.append("<<");
+        for (COSName name : names) {
+            if (!COSName.LENGTH.equals(name)) {
+                key.append('/').append(name.getName()).append(' ');
+                describe(dict.getItem(name), key, sha256, depth + 1);
+                key.append(' ');
+            }
+        }
+        key.append(">>");
+    }
 
-            // Calculate target size based on DPI limit
-            int maxDpi = options.getLevel().getMaxDpi();
-            float scale = calculateScale(originalImage, maxDpi);
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Stop an image task whose compression has been given up.
+     */
+    private static void checkAbandoned(AtomicBoolean abandoned) {
+        if (abandoned.get()) {
+            throw new CancellationException("Compression abandoned");
+        }
+    }
+
+    /**
+     * A decoded image, downsampled and ready to encode.
+     */
+    private record PreparedImage(BufferedImage image, boolean bilevel) {
+    }
+
+    /**
+     * An encoding of an image: its stream dictionary and stored bytes.
+     */
+    private record Encoded(ImageCodec codec, COSDictionary dictionary, byte[] data, int width, int height) {
 
+        /**
+         * Create the image in the document, keeping the original's soft mask.
+         */
+        PDImageXObject toImage(PDDocument document, PDImageXObject original) throws IOException {
+            COSStream stream = document.getDocument().createCOSStream();
+            for (Map.Entry<COSName, COSBase> entry : dictionary.entrySet()) {
+                stream.setItem(entry.getKey(), entry.getValue());
+            }
+            try (OutputStream out = stream.createRawOutputStream()) {
+                out.write(data);
+            }
+            COSBase softMask = original.getCOSObject().getItem(COSName.SMASK);
+            if (softMask != null) {
+                stream.setItem(COSName.SMASK, softMask);
+            }
+            return new PDImageXObject(new PDStream(stream), null);
+        }
+    }
+
+    /**
+     * Decode an image and downsample it. Bilevel images stay bilevel so they
+     * can be encoded losslessly.
+     *
+     * @param subsampling Source pixels per decoded pixel, see {@link #subsampling}
+     */
+    private PreparedImage prepareImage(PDImageXObject originalImage, float scale, int subsampling) {
+        try {
+            int width = originalImage.getWidth();
+            int height = originalImage.getHeight();
+            int newWidth = scale < 1.0f ? Math.max(1, Math.round(width * scale)) : width;
+            int newHeight = scale < 1.0f ? Math.max(1, Math.round(height * scale)) : height;
+
+            BufferedImage bufferedImage = subsampling > 1
+                    ? originalImage.getImage(null, subsampling)
+                    : originalImage.getImage();
+            if (bufferedImage == null) {
+                throw new CompletionException(new IOException("Image could not be decoded"));
+            }
+            boolean bilevel = isBilevel(originalImage, bufferedImage);
             BufferedImage processedImage = bufferedImage;
 
-            // Downscale if needed (CPU work - done outside sync)
-            if (scale < 1.0f) {
-                int newWidth = Math.max(1, (int) (width * scale));
-                int newHeight = Math.max(1, (int) (height * scale));
+            // Downscale what subsampling left over
+            if (bufferedImage.getWidth() != newWidth || bufferedImage.getHeight() != newHeight) {
                 processedImage = resizeImage(bufferedImage, newWidth, newHeight);
-                logger.trace("Downscaled image from {}x{} to {}x{}", width, height, newWidth, newHeight);
+            }
+            if (scale < 1.0f) {
+                logger.trace("Downscaled image from {}x{} to {}x{} (subsampling {})",
+                        width, height, newWidth, newHeight, subsampling);
+            }
+
+            if (bilevel) {
+                return new PreparedImage(toBinary(processedImage), true);
             }
 
-            // Convert to RGB if needed (CPU work - done outside sync)
+            // Convert to RGB if needed
             if (processedImage.getColorModel().hasAlpha()) {
                 BufferedImage rgbImage = new BufferedImage(
                         processedImage.getWidth(),
@@ -332,31 +850,231 @@ public class PdfCompressor {
                 g.dispose();
                 processedImage = rgbImage;
             }
+            return new PreparedImage(processedImage, false);
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    /**
+     * Source pixels per decoded pixel along each axis when an image is decoded
+     * for downsampling: the largest whole step that still decodes at least the
+     * target size. PDFBox applies it inside the DCT and JPX decoders and while
+     * reading samples, so the decoded image stays near the target size.
+     * Bilevel images are not subsampled, as dropping rows loses thin strokes.
+     */
+    private int subsampling(PDImageXObject image, float scale) {
+        if (scale >= 1.0f || image.getBitsPerComponent() == 1) {
+            return 1;
+        }
+        return Math.max(1, (int) Math.floor(1 / scale));
+    }
+
+    /**
+     * Bytes of pixels held while an image is prepared: the decoded image, the
+     * whole filter output for filters that do not subsample while decoding,
+     * and the downsampled copy.
+     */
+    private long decodedBytes(PDImageXObject image, int subsampling, float scale) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        long decoded = PixelBudget.bytesFor((width + subsampling - 1) / subsampling,
+                (height + subsampling - 1) / subsampling, sampleBands(image));
+        long filterOutput = 0;
+        if (!decodesSubsampled(image)) {
+            filterOutput = ((long) width * image.getBitsPerComponent() * colorComponents(image) + 7) / 8 * height;
+        }
+        long scaled = PixelBudget.bytesFor(Math.round(width * scale), Math.round(height * scale), 4);
+        return decoded + filterOutput + scaled;
+    }
+
+    /**
+     * Whether the image's filter subsamples while decoding (DCT and JPX), rather
+     * than producing every sample for PDFBox to skip. Unfiltered samples are
+     * read in place and count as subsampled too.
+     */
+    private static boolean decodesSubsampled(PDImageXObject image) {
+        List<COSName> filters = image.getStream().getFilters();
+        if (filters.isEmpty()) {
+            return true;
+        }
+        COSName last = filters.get(filters.size() - 1);
+        return COSName.DCT_DECODE.equals(last) || COSName.DCT_DECODE_ABBREVIATION.equals(last)
+                || COSName.JPX_DECODE.equals(last);
+    }
+
+    /**
+     * Colour components per pixel in the image stream; 1 for indexed images.
+     */
+    private static int colorComponents(PDImageXObject image) {
+        try {
+            return image.getColorSpace().getNumberOfComponents();
+        } catch (IOException | RuntimeException e) {
+            return 3;
+        }
+    }
+
+    /**
+     * Samples per pixel of an image once decoded; indexed colours decode to
+     * RGB and a mask adds alpha.
+     */
+    private int sampleBands(PDImageXObject image) {
+        int bands;
+        try {
+            PDColorSpace colorSpace = image.getColorSpace();
+            bands = colorSpace instanceof PDIndexed ? 3 : colorSpace.getNumberOfComponents();
+        } catch (IOException | RuntimeException e) {
+            bands = 3;
+        }
+        COSDictionary dictionary = image.getCOSObject();
+        if (dictionary.containsKey(COSName.SMASK) || dictionary.containsKey(COSName.MASK)) {
+            bands++;
+        }
+        return bands;
+    }
+
+    /**
+     * Encode the candidates for an image in parallel: lossless Flate always,
+     * CCITT G4 for bilevel images, and JPEG for the rest. JPEG is not tried for
+     * bilevel images, where it is both larger and blurrier.
+     */
+    private CompletableFuture<List<Encoded>> encodeCandidates(PreparedImage prepared, CompressionOptions options,
+                                                             ExecutorService executor) {
+        List<ImageCodec> codecs = prepared.bilevel()
+                ? List.of(ImageCodec.CCITT_G4, ImageCodec.FLATE)
+                : List.of(ImageCodec.JPEG, ImageCodec.FLATE);
+        List<CompletableFuture<Encoded>> encodings = new ArrayList<>(codecs.size());
+        for (ImageCodec codec : codecs) {
+            encodings.add(CompletableFuture.supplyAsync(
+                    () -> encode(codec, prepared.image(), options.getImageQuality()), executor));
+        }
+        return CompletableFuture.allOf(encodings.toArray(new CompletableFuture<?>[0]))
+                .thenApply(done -> {
+                    List<Encoded> candidates = new ArrayList<>(encodings.size());
+                    for (CompletableFuture<Encoded> encoding : encodings) {
+                        Encoded candidate = encoding.join();
+                        if (candidate != null) {
+                            candidates.add(candidate);
+                        }
+                    }
+                    return candidates;
+                });
+    }
+
+    /**
+     * Encode an image with one codec, in a scratch document so encoders can run
+     * in parallel without sharing the document being compressed.
+     *
+     * @return The encoding, or null if the codec cannot encode the image
+     */
+    private Encoded encode(ImageCodec codec, BufferedImage image, float quality) {
+        try (PDDocument scratch = new PDDocument()) {
+            PDImageXObject encoded = switch (codec) {
+                case JPEG -> JPEGFactory.createFromImage(scratch, image, quality);
+                case FLATE -> LosslessFactory.createFromImage(scratch, image);
+                case CCITT_G4 -> CCITTFactory.createFromImage(scratch, image);
+                case ORIGINAL -> throw new IllegalArgumentException("The original is not encoded");
+            };
+            COSStream stream = encoded.getCOSObject();
+            COSDictionary dictionary = new COSDictionary();
+            for (Map.Entry<COSName, COSBase> entry : stream.entrySet()) {
+                // Objects of the scratch document, e.g. a soft mask, cannot be carried over
+                if (entry.getValue() instanceof COSStream || entry.getValue() instanceof COSObject) {
+                    logger.trace("Not using {} encoding that refers to /{}", codec, entry.getKey().getName());
+                    return null;
+                }
+                if (!COSName.LENGTH.equals(entry.getKey())) {
+                    dictionary.setItem(entry.getKey(), entry.getValue());
+                }
+            }
+            byte[] data;
+            try (InputStream in = stream.createRawInputStream()) {
+                data = in.readAllBytes();
+            }
+            return new Encoded(codec, dictionary, data, image.getWidth(), image.getHeight());
+        } catch (IOException | RuntimeException e) {
+            logger.trace("{} encoding failed: {}", codec, e.getMessage());
+            return null;
+        }
+    }
 
-            // Synchronized block for document modification
-            synchronized (document) {
-                // Create compressed JPEG image and replace original
-                PDImageXObject compressedImage = JPEGFactory.createFromImage(
-                        document, processedImage, options.getImageQuality());
-                resources.put(name, compressedImage);
+    /**
+     * The smallest candidate, or null when none is smaller than the original stream.
+     */
+    private Encoded chooseSmallest(PDImageXObject original, List<Encoded> candidates) {
+        Encoded smallest = null;
+        long smallestSize = original.getCOSObject().getLength();
+        for (Encoded candidate : candidates) {
+            if (candidate.data().length < smallestSize) {
+                smallest = candidate;
+                smallestSize = candidate.data().length;
             }
+        }
+        if (logger.isDebugEnabled()) {
+            StringBuilder sizes = new StringBuilder("ORIGINAL=").append(original.getCOSObject().getLength());
+            for (Encoded candidate : candidates) {
+                sizes.append(", ").append(candidate.codec()).append('=').append(candidate.data().length);
+            }
+            logger.debug("Chose {} for {}x{} image ({})", smallest != null ? smallest.codec() : ImageCodec.ORIGINAL,
+                    original.getWidth(), original.getHeight(), sizes);
+        }
+        return smallest;
+    }
 
-        } catch (Exception e) {
-            logger.trace("Skipping image {}: {}", name.getName(), e.getMessage());
-            // Keep original image if compression fails
+    /**
+     * Whether an image has only black and white pixels. Stencil masks are
+     * never compressed, so they are not considered.
+     */
+    private boolean isBilevel(PDImageXObject original, BufferedImage decoded) {
+        if (original.getBitsPerComponent() == 1 && decoded.getColorModel().getNumComponents() == 1) {
+            return true;
+        }
+        if (decoded.getColorModel().hasAlpha()) {
+            return false;
+        }
+        int width = decoded.getWidth();
+        int[] row = new int[width];
+        for (int y = 0; y < decoded.getHeight(); y++) {
+            decoded.getRGB(0, y, width, 1, row, 0, width);
+            for (int rgb : row) {
+                int color = rgb & 0xFFFFFF;
+                if (color != 0 && color != 0xFFFFFF) {
+                    return false;
+                }
+            }
         }
+        return true;
     }
 
     /**
-     * Calculate scale factor based on DPI limit.
+     * Threshold an image to 1 bit per pixel at half intensity.
      */
-    private float calculateScale(PDImageXObject image, int maxDpi) {
-        // Estimate current DPI (assuming 72 points = 1 inch on page)
-        // This is a rough estimate since we don't have page placement info
-        float estimatedDpi = Math.max(image.getWidth(), image.getHeight()) / 8.0f; // rough estimate
+    private BufferedImage toBinary(BufferedImage image) {
+        if (image.getType() == BufferedImage.TYPE_BYTE_BINARY && image.getColorModel().getPixelSize() == 1) {
+            return image;
+        }
+        int width = image.getWidth();
+        BufferedImage binary = new BufferedImage(width, image.getHeight(), BufferedImage.TYPE_BYTE_BINARY);
+        int[] row = new int[width];
+        for (int y = 0; y < image.getHeight(); y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            for (int x = 0; x < width; x++) {
+                int rgb = row[x];
+                int luminance = (((rgb >> 16) & 0xFF) * 299 + ((rgb >> 8) & 0xFF) * 587 + (rgb & 0xFF) * 114) / 1000;
+                row[x] = luminance >= 128 ? 0xFFFFFFFF : 0xFF000000;
+            }
+            binary.setRGB(0, y, width, 1, row, 0, width);
+        }
+        return binary;
+    }
 
-        if (estimatedDpi > maxDpi) {
-            return (float) maxDpi / estimatedDpi;
+    /**
+     * Calculate the scale that brings an image down to the DPI limit where it
+     * is shown largest; 1 for images at or below the limit, or never drawn.
+     */
+    private float calculateScale(ImagePlacements.Placement placement, int maxDpi) {
+        if (placement != null && placement.effectiveDpi() > maxDpi) {
+            return maxDpi / placement.effectiveDpi();
         }
         return 1.0f;
     }
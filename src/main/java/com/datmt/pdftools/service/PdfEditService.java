@@ -0,0 +1,277 @@
+package com.datmt.pdftools.service;
+
+import com.datmt.pdftools.model.PdfBookmark;
+import com.datmt.pdftools.service.io.PdfWriteFactory;
+import com.datmt.pdftools.service.io.SaveProfile;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDDocumentInformation;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDMetadata;
+import org.apache.pdfbox.pdmodel.encryption.AccessPermission;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Applies small edits to a PDF file: page rotation, document information and
+ * XMP metadata, bookmarks and annotations.
+ * <p>
+ * Edits are appended to the file as an incremental update, so the existing
+ * bytes are kept and rotating a few pages of a large scan writes a few hundred
+ * bytes instead of the whole file. When an update cannot be appended the file
+ * is saved in full instead (see {@link PdfWriteFactory#checkIncremental}).
+ */
+public class PdfEditService {
+    private static final Logger logger = LoggerFactory.getLogger(PdfEditService.class);
+
+    /**
+     * Edits to apply to a document.
+     */
+    public static class Edits {
+        private final Map<Integer, Integer> rotations = new TreeMap<>();
+        private final Map<String, String> info = new LinkedHashMap<>();
+        private final Map<Integer, List<PDAnnotation>> annotations = new TreeMap<>();
+        private byte[] xmpMetadata;
+        private List<PdfBookmark> bookmarks;
+        private SaveProfile saveProfile;
+
+        /**
+         * Rotate a page clockwise, on top of its current rotation.
+         *
+         * @param pageIndex 0-based page index
+         * @param degrees   Multiple of 90
+         */
+        public void rotatePage(int pageIndex, int degrees) {
+            if (degrees % 90 != 0) {
+                throw new IllegalArgumentException("Rotation must be a multiple of 90: " + degrees);
+            }
+            rotations.merge(pageIndex, degrees, Integer::sum);
+        }
+
+        /**
+         * Set a document information entry, e.g. "Title" or "Author"; null removes it.
+         */
+        public void setInfo(String key, String value) {
+            info.put(key, value);
+        }
+
+        /**
+         * Replace the XMP metadata stream with the given packet.
+         */
+        public void setXmpMetadata(byte[] xmpMetadata) {
+            this.xmpMetadata = xmpMetadata;
+        }
+
+        /**
+         * Replace the outline with the given bookmark tree; an empty list removes it.
+         */
+        public void setBookmarks(List<PdfBookmark> bookmarks) {
+            this.bookmarks = bookmarks;
+        }
+
+        /**
+         * Add an annotation to a page.
+         *
+         * @param pageIndex 0-based page index
+         */
+        public void addAnnotation(int pageIndex, PDAnnotation annotation) {
+            annotations.computeIfAbsent(pageIndex, k -> new ArrayList<>()).add(annotation);
+        }
+
+        public Map<Integer, Integer> getRotations() {
+            return Collections.unmodifiableMap(rotations);
+        }
+
+        public Map<String, String> getInfo() {
+            return Collections.unmodifiableMap(info);
+        }
+
+        public byte[] getXmpMetadata() {
+            return xmpMetadata;
+        }
+
+        public List<PdfBookmark> getBookmarks() {
+            return bookmarks;
+        }
+
+        public Map<Integer, List<PDAnnotation>> getAnnotations() {
+            return Collections.unmodifiableMap(annotations);
+        }
+
+        public SaveProfile getSaveProfile() {
+            return saveProfile;
+        }
+
+        /**
+         * Profile used if the file has to be saved in full, or null for the default.
+         */
+        public void setSaveProfile(SaveProfile saveProfile) {
+            this.saveProfile = saveProfile;
+        }
+
+        public boolean isEmpty() {
+            return rotations.isEmpty() && info.isEmpty() && annotations.isEmpty()
+                    && xmpMetadata == null && bookmarks == null;
+        }
+
+        private boolean modifiesContent() {
+            return !rotations.isEmpty() || !info.isEmpty() || xmpMetadata != null || bookmarks != null;
+        }
+    }
+
+    /**
+     * Outcome of applying edits.
+     */
+    public static class EditResult {
+        private final File outputFile;
+        private final boolean incremental;
+        private final long bytesWritten;
+        private final long elapsedMillis;
+
+        public EditResult(File outputFile, boolean incremental, long bytesWritten, long elapsedMillis) {
+            this.outputFile = outputFile;
+            this.incremental = incremental;
+            this.bytesWritten = bytesWritten;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        public File getOutputFile() {
+            return outputFile;
+        }
+
+        /**
+         * Whether the edits were appended as an update rather than saved in full.
+         */
+        public boolean isIncremental() {
+            return incremental;
+        }
+
+        /**
+         * Size of the appended update, or of the whole file when saved in full.
+         */
+        public long getBytesWritten() {
+            return bytesWritten;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+    }
+
+    /**
+     * Apply edits to a file in place.
+     *
+     * @param file  The PDF file
+     * @param edits Edits to apply
+     * @return What was written
+     * @throws IOException If the file cannot be read or written
+     */
+    public EditResult apply(File file, Edits edits) throws IOException {
+        return apply(file, null, edits, file);
+    }
+
+    /**
+     * Apply edits to a file and write the result to another file, or in place
+     * when the output file is the input file. An update is appended to a copy
+     * of the input file when possible.
+     *
+     * @param inputFile  The PDF file
+     * @param password   Password (null or empty for none)
+     * @param edits      Edits to apply
+     * @param outputFile Where to save the edited PDF; may be the input file
+     * @return What was written
+     * @throws IOException If the file cannot be read or written, or its permissions do not allow the edits
+     */
+    public EditResult apply(File inputFile, String password, Edits edits, File outputFile) throws IOException {
+        long startTime = System.currentTimeMillis();
+        long sizeBefore = inputFile.length();
+        logger.info("Editing {}: {} rotations, {} info entries, {} annotated pages{}{}", inputFile.getName(),
+                edits.getRotations().size(), edits.getInfo().size(), edits.getAnnotations().size(),
+                edits.getXmpMetadata() != null ? ", XMP metadata" : "",
+                edits.getBookmarks() != null ? ", bookmarks" : "");
+
+        boolean incremental;
+        try (PDDocument document = DocumentPool.getInstance().takeForModification(inputFile, password)) {
+            checkPermissions(document, edits);
+            applyEdits(document, edits);
+            incremental = PdfWriteFactory.saveIncremental(document, inputFile, outputFile, edits.getSaveProfile());
+        }
+        if (outputFile.getCanonicalFile().equals(inputFile.getCanonicalFile())) {
+            DocumentPool.getInstance().invalidate(inputFile);
+        }
+
+        long bytesWritten = incremental ? outputFile.length() - sizeBefore : outputFile.length();
+        long elapsed = System.currentTimeMillis() - startTime;
+        logger.info("{} {} bytes to {} in {} ms", incremental ? "Appended" : "Saved",
+                bytesWritten, outputFile.getName(), elapsed);
+        return new EditResult(outputFile, incremental, bytesWritten, elapsed);
+    }
+
+    private void checkPermissions(PDDocument document, Edits edits) throws IOException {
+        if (!document.isEncrypted()) {
+            return;
+        }
+        AccessPermission permission = document.getCurrentAccessPermission();
+        if (edits.modifiesContent() && !permission.canModify()) {
+            throw new IOException("Document permissions do not allow modifying it");
+        }
+        if (!edits.getAnnotations().isEmpty() && !permission.canModifyAnnotations()) {
+            throw new IOException("Document permissions do not allow adding annotations");
+        }
+    }
+
+    private void applyEdits(PDDocument document, Edits edits) throws IOException {
+        int pageCount = document.getNumberOfPages();
+        for (Map.Entry<Integer, Integer> entry : edits.getRotations().entrySet()) {
+            PDPage page = document.getPage(checkPage(entry.getKey(), pageCount));
+            int rotation = Math.floorMod(page.getRotation() + entry.getValue(), 360);
+            if (rotation != page.getRotation()) {
+                logger.debug("Page {} rotated from {} to {}", entry.getKey(), page.getRotation(), rotation);
+                page.setRotation(rotation);
+            }
+        }
+
+        for (Map.Entry<Integer, List<PDAnnotation>> entry : edits.getAnnotations().entrySet()) {
+            PDPage page = document.getPage(checkPage(entry.getKey(), pageCount));
+            List<PDAnnotation> annotations = new ArrayList<>(page.getAnnotations());
+            for (PDAnnotation annotation : entry.getValue()) {
+                annotation.setPage(page);
+                annotations.add(annotation);
+            }
+            page.setAnnotations(annotations);
+        }
+
+        if (edits.getBookmarks() != null) {
+            new PdfBookmarkService().writeBookmarks(document, edits.getBookmarks());
+        }
+
+        if (edits.getXmpMetadata() != null) {
+            PDMetadata metadata = new PDMetadata(document, new ByteArrayInputStream(edits.getXmpMetadata()));
+            document.getDocumentCatalog().setMetadata(metadata);
+        }
+
+        PDDocumentInformation info = document.getDocumentInformation();
+        for (Map.Entry<String, String> entry : edits.getInfo().entrySet()) {
+            info.setCustomMetadataValue(entry.getKey(), entry.getValue());
+        }
+        info.setModificationDate(Calendar.getInstance());
+    }
+
+    private static int checkPage(int pageIndex, int pageCount) {
+        if (pageIndex < 0 || pageIndex >= pageCount) {
+            throw new IllegalArgumentException("Page index out of range: " + pageIndex);
+        }
+        return pageIndex;
+    }
+}
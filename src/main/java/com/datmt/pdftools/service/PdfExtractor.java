@@ -2,18 +2,21 @@ package com.datmt.pdftools.service;
 
 import com.datmt.pdftools.model.PdfBookmark;
 import com.datmt.pdftools.model.PdfDocument;
+import com.datmt.pdftools.service.io.PdfWriteFactory;
+import com.datmt.pdftools.service.io.SaveProfile;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
-import java.util.HashMap;
 
 /**
  * Handles PDF page extraction and export operations.
@@ -21,6 +24,36 @@ import java.util.HashMap;
 public class PdfExtractor {
     private static final Logger logger = LoggerFactory.getLogger(PdfExtractor.class);
 
+    private SaveProfile saveProfile;
+    private boolean incrementalSave = false;
+
+    public SaveProfile getSaveProfile() {
+        return saveProfile;
+    }
+
+    /**
+     * Profile for written files, or null for the {@link PdfWriteFactory} default.
+     */
+    public void setSaveProfile(SaveProfile saveProfile) {
+        this.saveProfile = saveProfile;
+    }
+
+    public boolean isIncrementalSave() {
+        return incrementalSave;
+    }
+
+    /**
+     * Whether exporting every page in order, with rotations only and no save
+     * profile, appends the rotations to a copy of the source file instead of
+     * writing a new one (see {@link PdfEditService}). Off by default: the copy
+     * keeps everything in the source file, e.g. its outline, form fields and
+     * unused objects, where a normal export writes only the pages. Encrypted
+     * files are always exported as a new document.
+     */
+    public void setIncrementalSave(boolean incrementalSave) {
+        this.incrementalSave = incrementalSave;
+    }
+
     /**
      * Extract specified pages from a PDF document and save to a new file.
      *
@@ -43,10 +76,32 @@ public class PdfExtractor {
      * @throws IOException If extraction or file writing fails
      */
     public void extractPages(PdfDocument sourceDocument, Set<Integer> pageIndices, Map<Integer, Integer> rotations, File outputFile) throws IOException {
-        logger.debug("Extracting pages {} from document with {} rotations", pageIndices, rotations.size());
+        extractPages(sourceDocument, pageIndices, rotations, Map.of(), outputFile);
+    }
+
+    /**
+     * Extract specified pages with rotations and crop boxes and save to a new file.
+     * <p>
+     * The source document is only read: each output page is a {@link PageViews view}
+     * carrying its own rotation and crop. The export runs on the calling thread's
+     * replica of the document (see {@link RenderFarm}), so several exports of one
+     * loaded document can run at the same time. Exporting the whole document
+     * with rotations only appends the rotations to a copy of the source file
+     * when {@link #setIncrementalSave incremental saving} is enabled.
+     *
+     * @param sourceDocument The source PDF document
+     * @param pageIndices    Set of 0-based page indices to extract
+     * @param rotations      Map of page index to extra rotation in degrees (0, 90, 180, 270)
+     * @param cropBoxes      Map of page index to crop box for the output page
+     * @param outputFile     Where to save the extracted PDF
+     * @throws IOException If extraction or file writing fails
+     */
+    public void extractPages(PdfDocument sourceDocument, Set<Integer> pageIndices, Map<Integer, Integer> rotations,
+                             Map<Integer, PDRectangle> cropBoxes, File outputFile) throws IOException {
+        logger.debug("Extracting pages {} from document with {} rotations and {} crops",
+                pageIndices, rotations.size(), cropBoxes.size());
         logger.trace("Output file: {}", outputFile.getAbsolutePath());
 
-        PDDocument sourcePdf = sourceDocument.getPdfDocument();
         int pageCount = sourceDocument.getPageCount();
 
         // Validate page indices
@@ -59,34 +114,84 @@ public class PdfExtractor {
 
         logger.info("Creating new PDF with {} pages from {} selected pages", pageIndices.size(), pageCount);
 
-        try (PDDocument newDocument = new PDDocument()) {
-            // Sort indices to maintain order
-            List<Integer> sortedIndices = pageIndices.stream()
-                    .sorted()
-                    .toList();
+        // Sort indices to maintain order
+        List<Integer> sortedIndices = pageIndices.stream()
+                .sorted()
+                .toList();
 
-            for (Integer pageIndex : sortedIndices) {
-                logger.trace("Adding page {} to new document", pageIndex);
-                PDPage page = sourcePdf.getPage(pageIndex);
+        if (incrementalSave && saveProfile == null && cropBoxes.isEmpty()
+                && rotations.values().stream().anyMatch(degrees -> degrees % 360 != 0)
+                && !sourceDocument.getPdfDocument().isEncrypted()
+                && isWholeDocument(sortedIndices, pageCount)) {
+            rotateCopy(sourceDocument, rotations, outputFile);
+            return;
+        }
+
+        try {
+            sourceDocument.getReplicas().render((renderer, sourcePdf) -> {
+                writePages(sourcePdf, sortedIndices, rotations, cropBoxes, outputFile, saveProfile);
+                return null;
+            });
+            logger.info("Successfully extracted {} pages to: {}", pageIndices.size(), outputFile.getAbsolutePath());
+        } catch (IOException e) {
+            logger.error("Failed to extract pages to file: {}", outputFile.getAbsolutePath(), e);
+            throw e;
+        }
+    }
+
+    private static boolean isWholeDocument(List<Integer> sortedIndices, int pageCount) {
+        return sortedIndices.size() == pageCount
+                && (pageCount == 0 || sortedIndices.get(pageCount - 1) == pageCount - 1);
+    }
+
+    /**
+     * Save the source file with some pages rotated, as an incremental update
+     * of a copy of the file when possible.
+     */
+    private void rotateCopy(PdfDocument sourceDocument, Map<Integer, Integer> rotations, File outputFile)
+            throws IOException {
+        PdfEditService.Edits edits = new PdfEditService.Edits();
+        rotations.forEach((pageIndex, degrees) -> {
+            if (degrees != 0) {
+                edits.rotatePage(pageIndex, degrees);
+            }
+        });
+        try {
+            PdfEditService.EditResult result = new PdfEditService()
+                    .apply(sourceDocument.getSourceFile(), null, edits, outputFile);
+            logger.info("Successfully saved all {} pages to: {} ({})", sourceDocument.getPageCount(),
+                    outputFile.getAbsolutePath(), result.isIncremental() ? "incremental update" : "full save");
+        } catch (IOException e) {
+            logger.error("Failed to save rotated pages to file: {}", outputFile.getAbsolutePath(), e);
+            throw e;
+        }
+    }
 
-                // Apply rotation if specified
+    /**
+     * Save views of the given pages of a loaded document as a new PDF.
+     *
+     * @param sourcePdf   Document to read the pages from; not modified
+     * @param pageIndices 0-based page indices, in output order
+     * @param rotations   Map of page index to extra rotation in degrees
+     * @param cropBoxes   Map of page index to crop box for the output page
+     * @param outputFile  Where to save the new PDF
+     * @param profile     Save profile, or null for the default
+     */
+    static void writePages(PDDocument sourcePdf, List<Integer> pageIndices, Map<Integer, Integer> rotations,
+                           Map<Integer, PDRectangle> cropBoxes, File outputFile, SaveProfile profile) throws IOException {
+        try (PDDocument newDocument = new PDDocument()) {
+            PageViews views = new PageViews();
+            for (Integer pageIndex : pageIndices) {
+                logger.trace("Adding page {} to new document", pageIndex);
                 int rotation = rotations.getOrDefault(pageIndex, 0);
+                PDPage page = views.view(sourcePdf.getPage(pageIndex), rotation, cropBoxes.get(pageIndex));
                 if (rotation != 0) {
-                    // Get current rotation and add the new rotation
-                    int currentRotation = page.getRotation();
-                    int newRotation = (currentRotation + rotation) % 360;
-                    page.setRotation(newRotation);
-                    logger.debug("Page {} rotation: {} + {} = {}", pageIndex, currentRotation, rotation, newRotation);
+                    logger.debug("Page {} rotated by {} to {}", pageIndex, rotation, page.getRotation());
                 }
-
                 newDocument.addPage(page);
             }
-
-            newDocument.save(outputFile);
-            logger.info("Successfully extracted {} pages to: {}", pageIndices.size(), outputFile.getAbsolutePath());
-        } catch (IOException e) {
-            logger.error("Failed to extract pages to file: {}", outputFile.getAbsolutePath(), e);
-            throw e;
+            views.link();
+            PdfWriteFactory.save(newDocument, outputFile, profile);
         }
     }
 
@@ -126,6 +231,8 @@ public class PdfExtractor {
 
     /**
      * Extract pages for each bookmark into separate files.
+     * <p>
+     * The files are written in parallel by {@link PdfSplitService}.
      *
      * @param sourceDocument The source PDF document
      * @param bookmarks      List of bookmarks to extract
@@ -133,43 +240,85 @@ public class PdfExtractor {
      * @throws IOException If extraction or file writing fails
      */
     public void extractByBookmarks(PdfDocument sourceDocument, List<PdfBookmark> bookmarks, File outputDir) throws IOException {
-        logger.info("Extracting {} bookmarks to directory: {}", bookmarks.size(), outputDir.getAbsolutePath());
-
-        if (!outputDir.exists()) {
-            if (!outputDir.mkdirs()) {
-                throw new IOException("Failed to create output directory: " + outputDir.getAbsolutePath());
-            }
-        }
+        extractByBookmarks(sourceDocument, bookmarks, outputDir, null);
+    }
 
-        String baseName = sourceDocument.getSourceFile().getName();
-        // Remove .pdf extension
-        if (baseName.toLowerCase().endsWith(".pdf")) {
-            baseName = baseName.substring(0, baseName.length() - 4);
-        }
+    /**
+     * Extract pages for each bookmark into separate files, reporting each finished file.
+     *
+     * @param sourceDocument The source PDF document
+     * @param bookmarks      List of bookmarks to extract
+     * @param outputDir      Directory to save the extracted PDFs
+     * @param callback       Progress callback (optional), called from worker threads
+     * @throws IOException If the output directory cannot be created or any file fails
+     */
+    public void extractByBookmarks(PdfDocument sourceDocument, List<PdfBookmark> bookmarks, File outputDir,
+                                   PdfSplitService.ProgressCallback callback) throws IOException {
+        logger.info("Extracting {} bookmarks to directory: {}", bookmarks.size(), outputDir.getAbsolutePath());
 
-        int bookmarkIndex = 1;
-        for (PdfBookmark bookmark : bookmarks) {
-            String sanitizedTitle = bookmark.getSanitizedTitle();
-            if (sanitizedTitle.isEmpty()) {
-                sanitizedTitle = "Chapter_" + bookmarkIndex;
-            }
+        PdfSplitService splitter = new PdfSplitService();
+        split(splitter, sourceDocument, splitter.planByBookmarks(sourceDocument, bookmarks), outputDir, callback);
+        logger.info("Successfully extracted {} bookmarks", bookmarks.size());
+    }
 
-            // Create filename: baseName_index_title.pdf
-            String fileName = String.format("%s_%02d_%s.pdf", baseName, bookmarkIndex, sanitizedTitle);
-            File outputFile = new File(outputDir, fileName);
+    /**
+     * Split a document into files of {@code pagesPerFile} pages each.
+     *
+     * @param sourceDocument The source PDF document
+     * @param pagesPerFile   Pages per output file; the last one may have fewer
+     * @param outputDir      Directory to save the PDFs
+     * @param callback       Progress callback (optional), called from worker threads
+     * @throws IOException If the output directory cannot be created or any file fails
+     */
+    public void splitEvery(PdfDocument sourceDocument, int pagesPerFile, File outputDir,
+                           PdfSplitService.ProgressCallback callback) throws IOException {
+        logger.info("Splitting every {} pages to directory: {}", pagesPerFile, outputDir.getAbsolutePath());
+        PdfSplitService splitter = new PdfSplitService();
+        split(splitter, sourceDocument, splitter.planEvery(sourceDocument, pagesPerFile), outputDir, callback);
+    }
 
-            logger.debug("Extracting bookmark '{}' (pages {}-{}) to {}",
-                    bookmark.getTitle(),
-                    bookmark.getPageIndex() + 1,
-                    bookmark.getEndPageIndex() + 1,
-                    outputFile.getName());
+    /**
+     * Split a document into consecutive files of at most about {@code maxBytes} each.
+     * Sizes are estimated from the pages' content and resources; a single page
+     * larger than the limit gets a file of its own.
+     *
+     * @param sourceDocument The source PDF document
+     * @param maxBytes       Target maximum file size
+     * @param outputDir      Directory to save the PDFs
+     * @param callback       Progress callback (optional), called from worker threads
+     * @throws IOException If the pages cannot be read, the output directory cannot be created or any file fails
+     */
+    public void splitBySize(PdfDocument sourceDocument, long maxBytes, File outputDir,
+                            PdfSplitService.ProgressCallback callback) throws IOException {
+        logger.info("Splitting into files of at most {} bytes to directory: {}", maxBytes, outputDir.getAbsolutePath());
+        PdfSplitService splitter = new PdfSplitService();
+        split(splitter, sourceDocument, splitter.planByMaxSize(sourceDocument, maxBytes), outputDir, callback);
+    }
 
-            // Extract the page range for this bookmark
-            extractPageRange(sourceDocument, bookmark.getPageIndex(), bookmark.getEndPageIndex(), outputFile);
+    /**
+     * Split a document into one file per page.
+     *
+     * @param sourceDocument The source PDF document
+     * @param outputDir      Directory to save the PDFs
+     * @param callback       Progress callback (optional), called from worker threads
+     * @throws IOException If the output directory cannot be created or any file fails
+     */
+    public void burst(PdfDocument sourceDocument, File outputDir, PdfSplitService.ProgressCallback callback)
+            throws IOException {
+        logger.info("Bursting {} pages to directory: {}", sourceDocument.getPageCount(), outputDir.getAbsolutePath());
+        PdfSplitService splitter = new PdfSplitService();
+        split(splitter, sourceDocument, splitter.planBurst(sourceDocument), outputDir, callback);
+    }
 
-            bookmarkIndex++;
+    private void split(PdfSplitService splitter, PdfDocument sourceDocument, List<PdfSplitService.SplitPart> parts,
+                       File outputDir, PdfSplitService.ProgressCallback callback) throws IOException {
+        PdfSplitService.SplitOptions options = new PdfSplitService.SplitOptions();
+        options.setSaveProfile(saveProfile);
+        PdfSplitService.SplitResult result = splitter.split(sourceDocument, parts, outputDir, options, callback);
+        if (!result.isSuccess()) {
+            Map.Entry<String, String> first = result.getFailures().entrySet().iterator().next();
+            throw new IOException(String.format("Failed to write %d of %d files (%s: %s)",
+                    result.getFailures().size(), parts.size(), first.getKey(), first.getValue()));
         }
-
-        logger.info("Successfully extracted {} bookmarks", bookmarks.size());
     }
 }
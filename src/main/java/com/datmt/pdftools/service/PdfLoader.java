@@ -1,9 +1,7 @@
 package com.datmt.pdftools.service;
 
 import com.datmt.pdftools.model.PdfDocument;
-import org.apache.pdfbox.Loader;
-import org.apache.pdfbox.io.RandomAccessReadBufferedFile;
-import org.apache.pdfbox.pdmodel.PDDocument;
+import com.datmt.pdftools.service.io.PdfReadFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -36,10 +34,11 @@ public class PdfLoader {
         }
 
         try {
-            logger.trace("Using Loader.loadPDF() with RandomAccessReadBufferedFile");
-            PDDocument pdfDocument = Loader.loadPDF(new RandomAccessReadBufferedFile(file));
-            logger.info("Successfully loaded PDF: {} with {} pages", file.getName(), pdfDocument.getNumberOfPages());
-            return new PdfDocument(file, pdfDocument);
+            logger.trace("Using {} backend for {} bytes", PdfReadFactory.selectBackend(file.length()), file.length());
+            DocumentPool.Lease lease = DocumentPool.getInstance().borrow(file);
+            PdfDocument pdfDocument = new PdfDocument(file, lease);
+            logger.info("Successfully loaded PDF: {} with {} pages", file.getName(), pdfDocument.getPageCount());
+            return pdfDocument;
         } catch (IOException e) {
             logger.error("Failed to load PDF file: {}", file.getAbsolutePath(), e);
             throw e;
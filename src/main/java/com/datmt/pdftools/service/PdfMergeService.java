@@ -2,18 +2,19 @@ package com.datmt.pdftools.service;
 
 import com.datmt.pdftools.model.JoinerFile;
 import com.datmt.pdftools.model.JoinerSection;
-import javafx.embed.swing.SwingFXUtils;
+import com.datmt.pdftools.service.image.ColorMode;
+import com.datmt.pdftools.service.image.FxPageRenderer;
+import com.datmt.pdftools.service.image.PageGeometry;
+import com.datmt.pdftools.service.image.PageThumbnails;
+import com.datmt.pdftools.service.io.PdfWriteFactory;
+import com.datmt.pdftools.service.io.SaveProfile;
 import javafx.scene.image.Image;
-import org.apache.pdfbox.io.RandomAccessReadBufferedFile;
-import org.apache.pdfbox.Loader;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.PDPageContentStream;
 import org.apache.pdfbox.pdmodel.common.PDRectangle;
 import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
 import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
-import org.apache.pdfbox.rendering.ImageType;
-import org.apache.pdfbox.rendering.PDFRenderer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -30,16 +31,18 @@ import java.util.List;
  */
 public class PdfMergeService {
     private static final Logger logger = LoggerFactory.getLogger(PdfMergeService.class);
-    private static final int THUMBNAIL_DPI = 72;
     private static final int PREVIEW_DPI = 150;
+    private static final int DRAFT_DPI = 36;
+    public static final int THUMBNAIL_MAX_SIZE = 160; // Twice the grid thumbnail size, for HiDPI screens
+
+    private final PageImageCache imageCache = PageImageCache.getInstance();
 
     /**
      * Load a PDF file into a JoinerFile.
      */
     public JoinerFile loadPdfFile(File file) throws IOException {
         logger.info("Loading PDF file: {}", file.getName());
-        PDDocument document = Loader.loadPDF(new RandomAccessReadBufferedFile(file));
-        return new JoinerFile(file, document);
+        return new JoinerFile(file, DocumentPool.getInstance().borrow(file));
     }
 
     /**
@@ -55,16 +58,33 @@ public class PdfMergeService {
     }
 
     /**
-     * Render a thumbnail for a PDF page.
+     * Render a thumbnail for a PDF page that fits in {@link #THUMBNAIL_MAX_SIZE} pixels.
      */
     public Image renderPdfThumbnail(JoinerFile joinerFile, int pageIndex) throws IOException {
         if (!joinerFile.isPdf()) {
             throw new IllegalArgumentException("File is not a PDF");
         }
-        logger.trace("Rendering PDF thumbnail for page {}", pageIndex);
-        PDFRenderer renderer = new PDFRenderer(joinerFile.getPdfDocument());
-        BufferedImage bufferedImage = renderer.renderImageWithDPI(pageIndex, THUMBNAIL_DPI, ImageType.RGB);
-        return SwingFXUtils.toFXImage(bufferedImage, null);
+        float dpi = getThumbnailDpi(joinerFile, pageIndex);
+        PageImageCache.Key key = new PageImageCache.Key(joinerFile.getPdfDocument(), pageIndex, dpi, 0, ColorMode.AUTO);
+        Image cached = imageCache.get(key);
+        if (cached != null) {
+            return PageThumbnails.cached(cached).image();
+        }
+        PageThumbnails.Result result = joinerFile.getReplicas().render((renderer, document) ->
+                PageThumbnails.create(renderer, document, pageIndex, dpi));
+        imageCache.put(key, result.image());
+        return result.image();
+    }
+
+    /**
+     * Resolution at which {@link #renderPdfThumbnail} renders a page.
+     */
+    public float getThumbnailDpi(JoinerFile joinerFile, int pageIndex) throws IOException {
+        if (!joinerFile.isPdf()) {
+            throw new IllegalArgumentException("File is not a PDF");
+        }
+        return joinerFile.getReplicas().render((renderer, document) ->
+                PageGeometry.fitDpi(document.getPage(pageIndex), THUMBNAIL_MAX_SIZE, THUMBNAIL_MAX_SIZE));
     }
 
     /**
@@ -74,10 +94,56 @@ public class PdfMergeService {
         if (!joinerFile.isPdf()) {
             throw new IllegalArgumentException("File is not a PDF");
         }
-        logger.trace("Rendering PDF preview for page {}", pageIndex);
-        PDFRenderer renderer = new PDFRenderer(joinerFile.getPdfDocument());
-        BufferedImage bufferedImage = renderer.renderImageWithDPI(pageIndex, PREVIEW_DPI, ImageType.RGB);
-        return SwingFXUtils.toFXImage(bufferedImage, null);
+        return renderCached(joinerFile, pageIndex, PREVIEW_DPI);
+    }
+
+    /**
+     * Get the preview render of a PDF page if it is already cached.
+     */
+    public Image getCachedPdfPreview(JoinerFile joinerFile, int pageIndex) {
+        if (!joinerFile.isPdf()) {
+            return null;
+        }
+        return imageCache.get(new PageImageCache.Key(joinerFile.getPdfDocument(), pageIndex, PREVIEW_DPI, 0, ColorMode.RGB));
+    }
+
+    /**
+     * Get a quick first image of a PDF page: the cached thumbnail, or a fast low-resolution draft.
+     */
+    public Image renderPdfDraft(JoinerFile joinerFile, int pageIndex) throws IOException {
+        if (!joinerFile.isPdf()) {
+            throw new IllegalArgumentException("File is not a PDF");
+        }
+        Image thumbnail = imageCache.get(new PageImageCache.Key(joinerFile.getPdfDocument(), pageIndex,
+                getThumbnailDpi(joinerFile, pageIndex), 0, ColorMode.AUTO));
+        if (thumbnail != null) {
+            return thumbnail;
+        }
+        PageImageCache.Key key = new PageImageCache.Key(joinerFile.getPdfDocument(), pageIndex, DRAFT_DPI, 0, ColorMode.RGB);
+        Image draft = imageCache.get(key);
+        if (draft == null) {
+            logger.trace("Rendering PDF draft for page {}", pageIndex);
+            draft = joinerFile.getReplicas().render((renderer, document) ->
+                    FxPageRenderer.renderDraft(renderer, document, pageIndex, DRAFT_DPI));
+            imageCache.put(key, draft);
+        }
+        return draft;
+    }
+
+    /**
+     * Render a PDF page through the shared page image cache.
+     */
+    private Image renderCached(JoinerFile joinerFile, int pageIndex, int dpi) throws IOException {
+        PageImageCache.Key key = new PageImageCache.Key(joinerFile.getPdfDocument(), pageIndex, dpi, 0, ColorMode.RGB);
+        Image cached = imageCache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        logger.trace("Rendering PDF page {} at {}DPI", pageIndex, dpi);
+        Image image = joinerFile.getReplicas().render((renderer, document) ->
+                FxPageRenderer.render(renderer, document, pageIndex, dpi));
+        imageCache.put(key, image);
+        return image;
     }
 
     /**
@@ -104,6 +170,19 @@ public class PdfMergeService {
      * @param callback   Progress callback (optional)
      */
     public void mergeSections(List<JoinerSection> sections, File outputFile, ProgressCallback callback) throws IOException {
+        mergeSections(sections, outputFile, null, callback);
+    }
+
+    /**
+     * Merge multiple sections into a single PDF file with a given save profile.
+     *
+     * @param sections    List of sections to merge
+     * @param outputFile  Output PDF file
+     * @param saveProfile Save profile, or null for the default
+     * @param callback    Progress callback (optional)
+     */
+    public void mergeSections(List<JoinerSection> sections, File outputFile, SaveProfile saveProfile,
+                              ProgressCallback callback) throws IOException {
         logger.info("Merging {} sections to: {}", sections.size(), outputFile.getAbsolutePath());
 
         int totalPages = sections.stream().mapToInt(JoinerSection::getPageCount).sum();
@@ -147,7 +226,7 @@ public class PdfMergeService {
                 }
             }
 
-            outputDoc.save(outputFile);
+            PdfWriteFactory.save(outputDoc, outputFile, saveProfile);
             logger.info("Successfully merged {} pages into: {}", totalPages, outputFile.getAbsolutePath());
         }
     }
@@ -0,0 +1,143 @@
+package com.datmt.pdftools.service;
+
+import com.datmt.pdftools.service.io.PdfReadFactory;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.io.RandomAccessRead;
+import org.apache.pdfbox.pdfparser.COSParser;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDDocumentInformation;
+import org.apache.pdfbox.pdmodel.encryption.InvalidPasswordException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Reads basic facts about a PDF without loading the document.
+ * Only the header, the xref/trailer chain, the /Info dictionary and the
+ * /Root /Pages /Count entry are parsed. Damaged files fall back to a full load.
+ */
+public class PdfProbe {
+    private static final Logger logger = LoggerFactory.getLogger(PdfProbe.class);
+
+    /**
+     * Immutable result of probing a PDF file.
+     *
+     * @param file        The probed file
+     * @param version     PDF version from the header (e.g. 1.7)
+     * @param pageCount   Number of pages, or -1 if it could not be determined
+     * @param encrypted   Whether the trailer has an /Encrypt entry
+     * @param title       /Info Title (null if absent or the document is encrypted)
+     * @param author      /Info Author
+     * @param subject     /Info Subject
+     * @param keywords    /Info Keywords
+     * @param creator     /Info Creator
+     * @param producer    /Info Producer
+     * @param fullyLoaded true if the header/trailer probe failed and a full load was used
+     */
+    public record ProbeResult(File file, float version, int pageCount, boolean encrypted,
+                              String title, String author, String subject, String keywords,
+                              String creator, String producer, boolean fullyLoaded) {
+
+        /**
+         * Whether /Info strings could be read. Strings of encrypted documents
+         * need decryption, which the probe does not perform.
+         */
+        public boolean hasReadableInfo() {
+            return !encrypted || fullyLoaded;
+        }
+    }
+
+    /**
+     * Probe a PDF file.
+     *
+     * @param file The PDF file
+     * @return Probe result
+     * @throws IOException If the file cannot be read even with a full load
+     */
+    public ProbeResult probe(File file) throws IOException {
+        logger.trace("Probing PDF: {}", file.getName());
+        try (RandomAccessRead source = PdfReadFactory.openRead(file)) {
+            HeaderTrailerParser parser = new HeaderTrailerParser(source);
+            try {
+                return parser.probe(file);
+            } finally {
+                parser.close();
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.debug("Probe failed for {}, falling back to full load: {}", file.getName(), e.getMessage());
+            return probeWithFullLoad(file);
+        }
+    }
+
+    /**
+     * Fallback for damaged files: load the whole document leniently.
+     */
+    private ProbeResult probeWithFullLoad(File file) throws IOException {
+        try (PDDocument document = PdfReadFactory.load(file)) {
+            PDDocumentInformation info = document.getDocumentInformation();
+            return new ProbeResult(file, document.getVersion(), document.getNumberOfPages(),
+                    document.isEncrypted(),
+                    info.getTitle(), info.getAuthor(), info.getSubject(), info.getKeywords(),
+                    info.getCreator(), info.getProducer(), true);
+        } catch (InvalidPasswordException e) {
+            // Encrypted with a user password, nothing more can be read
+            return new ProbeResult(file, 0f, -1, true, null, null, null, null, null, null, true);
+        }
+    }
+
+    /**
+     * Strict parser that stops after the xref/trailer section.
+     * Lenient recovery (brute-force object search) is disabled so that damaged
+     * files fail fast and go through the full-load path instead.
+     */
+    private static final class HeaderTrailerParser extends COSParser {
+
+        HeaderTrailerParser(RandomAccessRead source) throws IOException {
+            super(source);
+            setLenient(false);
+        }
+
+        ProbeResult probe(File file) throws IOException {
+            if (!parsePDFHeader()) {
+                throw new IOException("Missing PDF header");
+            }
+            COSDictionary trailer = retrieveTrailer();
+            if (trailer == null) {
+                throw new IOException("Missing trailer");
+            }
+
+            COSDictionary root = trailer.getCOSDictionary(COSName.ROOT);
+            if (root == null) {
+                throw new IOException("Missing /Root in trailer");
+            }
+            COSDictionary pages = root.getCOSDictionary(COSName.PAGES);
+            int pageCount = pages == null ? -1 : pages.getInt(COSName.COUNT, -1);
+            if (pageCount < 0) {
+                throw new IOException("Missing /Pages /Count");
+            }
+
+            boolean encrypted = trailer.containsKey(COSName.ENCRYPT);
+            String title = null, author = null, subject = null, keywords = null, creator = null, producer = null;
+            COSDictionary infoDict = trailer.getCOSDictionary(COSName.INFO);
+            if (infoDict != null && !encrypted) {
+                PDDocumentInformation info = new PDDocumentInformation(infoDict);
+                title = info.getTitle();
+                author = info.getAuthor();
+                subject = info.getSubject();
+                keywords = info.getKeywords();
+                creator = info.getCreator();
+                producer = info.getProducer();
+            }
+
+            return new ProbeResult(file, document.getVersion(), pageCount, encrypted,
+                    title, author, subject, keywords, creator, producer, false);
+        }
+
+        void close() throws IOException {
+            document.close();
+        }
+    }
+}
@@ -0,0 +1,524 @@
+package com.datmt.pdftools.service;
+
+import com.datmt.pdftools.service.image.ColorMode;
+import com.datmt.pdftools.service.image.PageGeometry;
+import com.datmt.pdftools.service.image.RenderQuality;
+import com.datmt.pdftools.service.io.PdfReadFactory;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Exports PDF pages as PNG or JPEG files without any UI dependency.
+ * <p>
+ * Pages are rendered in parallel on per-thread document replicas (see
+ * {@link RenderFarm}) and handed to a separate encoder pool, so rendering
+ * and compression overlap. Each file is written as soon as its page is
+ * encoded. Rendered pixels waiting to be encoded are bounded by a memory
+ * budget, so long documents do not pile up bitmaps when encoding is the
+ * slower stage.
+ */
+public class PdfRasterExportService {
+    private static final Logger logger = LoggerFactory.getLogger(PdfRasterExportService.class);
+    private static final int CPU_COUNT = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+    public static final String DEFAULT_NAMING_PATTERN = "{name}-page-{page}";
+
+    /**
+     * Output image format.
+     */
+    public enum ImageFormat {
+        PNG("png", "png"),
+        JPEG("jpeg", "jpg");
+
+        private final String formatName;
+        private final String extension;
+
+        ImageFormat(String formatName, String extension) {
+            this.formatName = formatName;
+            this.extension = extension;
+        }
+
+        public String getFormatName() {
+            return formatName;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+    }
+
+    /**
+     * Export options.
+     */
+    public static class ExportOptions {
+        private Collection<Integer> pages;
+        private float dpi = 150f;
+        private int maxWidth;
+        private int maxHeight;
+        private ImageFormat format = ImageFormat.PNG;
+        private ColorMode colorMode = ColorMode.RGB;
+        private float jpegQuality = 0.85f;
+        private String namingPattern = DEFAULT_NAMING_PATTERN;
+        private int renderThreads = Math.min(CPU_COUNT, 4);
+        private int encodeThreads = Math.max(1, Math.min(CPU_COUNT / 2, 4));
+        private long maxInFlightBytes = 256L * 1024 * 1024;
+
+        /**
+         * 0-based indices of the pages to export, or null for all pages.
+         */
+        public Collection<Integer> getPages() {
+            return pages;
+        }
+
+        public void setPages(Collection<Integer> pages) {
+            this.pages = pages;
+        }
+
+        /**
+         * Export the 0-based page range {@code first..last}, inclusive.
+         */
+        public void setPageRange(int first, int last) {
+            List<Integer> range = new ArrayList<>();
+            for (int i = first; i <= last; i++) {
+                range.add(i);
+            }
+            this.pages = range;
+        }
+
+        public float getDpi() {
+            return dpi;
+        }
+
+        /**
+         * Render at a fixed resolution. Clears any target size.
+         */
+        public void setDpi(float dpi) {
+            this.dpi = Math.max(1f, dpi);
+            this.maxWidth = 0;
+            this.maxHeight = 0;
+        }
+
+        public int getMaxWidth() {
+            return maxWidth;
+        }
+
+        public int getMaxHeight() {
+            return maxHeight;
+        }
+
+        /**
+         * Render each page at the largest size that fits the box, instead of at a fixed DPI.
+         */
+        public void setTargetSize(int maxWidth, int maxHeight) {
+            this.maxWidth = Math.max(1, maxWidth);
+            this.maxHeight = Math.max(1, maxHeight);
+        }
+
+        public boolean hasTargetSize() {
+            return maxWidth > 0 && maxHeight > 0;
+        }
+
+        public ImageFormat getFormat() {
+            return format;
+        }
+
+        public void setFormat(ImageFormat format) {
+            this.format = format;
+        }
+
+        public ColorMode getColorMode() {
+            return colorMode;
+        }
+
+        /**
+         * Colour mode of the written images. AUTO writes monochrome pages as grey
+         * or 1-bit, which gives much smaller PNGs for text pages.
+         */
+        public void setColorMode(ColorMode colorMode) {
+            this.colorMode = colorMode;
+        }
+
+        public float getJpegQuality() {
+            return jpegQuality;
+        }
+
+        public void setJpegQuality(float jpegQuality) {
+            this.jpegQuality = Math.max(0.1f, Math.min(1.0f, jpegQuality));
+        }
+
+        public String getNamingPattern() {
+            return namingPattern;
+        }
+
+        /**
+         * File name pattern without extension. {@code {name}} is replaced by the
+         * source file name, {@code {page}} by the 1-based page number, zero-padded
+         * to the width of the page count.
+         */
+        public void setNamingPattern(String namingPattern) {
+            if (namingPattern == null || !namingPattern.contains("{page}")) {
+                throw new IllegalArgumentException("Naming pattern must contain {page}");
+            }
+            this.namingPattern = namingPattern;
+        }
+
+        public int getRenderThreads() {
+            return renderThreads;
+        }
+
+        public void setRenderThreads(int renderThreads) {
+            this.renderThreads = Math.max(1, renderThreads);
+        }
+
+        public int getEncodeThreads() {
+            return encodeThreads;
+        }
+
+        public void setEncodeThreads(int encodeThreads) {
+            this.encodeThreads = Math.max(1, encodeThreads);
+        }
+
+        public long getMaxInFlightBytes() {
+            return maxInFlightBytes;
+        }
+
+        /**
+         * Memory budget for rendered pages not yet written. A page larger than
+         * the whole budget is still exported, but alone.
+         */
+        public void setMaxInFlightBytes(long maxInFlightBytes) {
+            this.maxInFlightBytes = Math.max(1024 * 1024, maxInFlightBytes);
+        }
+    }
+
+    /**
+     * Result of an export.
+     */
+    public static class ExportResult {
+        private final List<File> outputFiles;
+        private final Map<Integer, String> failures;
+        private final long bytesWritten;
+        private final long elapsedMillis;
+
+        public ExportResult(List<File> outputFiles, Map<Integer, String> failures, long bytesWritten,
+                            long elapsedMillis) {
+            this.outputFiles = Collections.unmodifiableList(outputFiles);
+            this.failures = Collections.unmodifiableMap(failures);
+            this.bytesWritten = bytesWritten;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        /**
+         * Written files, in page order.
+         */
+        public List<File> getOutputFiles() {
+            return outputFiles;
+        }
+
+        /**
+         * Error message per 0-based page index, for pages that could not be exported.
+         */
+        public Map<Integer, String> getFailures() {
+            return failures;
+        }
+
+        public long getBytesWritten() {
+            return bytesWritten;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        public double getPagesPerSecond() {
+            if (elapsedMillis == 0) return 0;
+            return outputFiles.size() * 1000.0 / elapsedMillis;
+        }
+
+        public boolean isSuccess() {
+            return failures.isEmpty();
+        }
+    }
+
+    /**
+     * Progress callback interface.
+     */
+    @FunctionalInterface
+    public interface ProgressCallback {
+        void onProgress(int currentPage, int totalPages, String status);
+    }
+
+    /**
+     * Export pages of a PDF file as images.
+     *
+     * @param inputFile The PDF file
+     * @param outputDir Directory for the images; created if missing
+     * @param options   Export options
+     * @param callback  Progress callback (optional), called once per finished page from worker threads
+     * @return Export result; pages that failed are listed in it rather than aborting the export
+     * @throws IOException If the PDF cannot be opened or the output directory cannot be created
+     */
+    public ExportResult export(File inputFile, File outputDir, ExportOptions options,
+                               ProgressCallback callback) throws IOException {
+        long start = System.currentTimeMillis();
+        Files.createDirectories(outputDir.toPath());
+
+        try (PDDocument document = PdfReadFactory.load(inputFile)) {
+            List<Integer> pages = selectPages(options.getPages(), document.getNumberOfPages());
+            int totalPages = pages.size();
+            logger.info("Exporting {} pages of {} as {} using {} render and {} encode threads",
+                    totalPages, inputFile.getName(), options.getFormat(),
+                    options.getRenderThreads(), options.getEncodeThreads());
+
+            String baseName = baseName(inputFile.getName());
+            int digits = String.valueOf(document.getNumberOfPages()).length();
+
+            // Budget in KiB so large budgets fit in an int
+            int budget = (int) Math.min(Integer.MAX_VALUE, options.getMaxInFlightBytes() / 1024);
+            Semaphore inFlight = new Semaphore(budget);
+
+            Map<Integer, File> written = new TreeMap<>();
+            Map<Integer, String> failures = new TreeMap<>();
+            AtomicInteger completed = new AtomicInteger();
+            AtomicLong bytesWritten = new AtomicLong();
+
+            PdfRendererRegistry renderers = new PdfRendererRegistry(document);
+            ExecutorService renderPool = Executors.newFixedThreadPool(options.getRenderThreads(),
+                    namedThreads("raster-render"));
+            ExecutorService encodePool = Executors.newFixedThreadPool(options.getEncodeThreads(),
+                    namedThreads("raster-encode"));
+
+            try (RenderFarm.Replicas replicas = RenderFarm.getInstance().open(inputFile, document, renderers)) {
+                List<CompletableFuture<Void>> jobs = new ArrayList<>(totalPages);
+                for (int pageIndex : pages) {
+                    File target = new File(outputDir, fileName(options, baseName, pageIndex, digits));
+                    CompletableFuture<Void> job = CompletableFuture
+                            .supplyAsync(() -> renderPage(replicas, pageIndex, options, inFlight, budget),
+                                    renderPool)
+                            .thenAcceptAsync(rendered -> {
+                                try {
+                                    bytesWritten.addAndGet(writeImage(rendered.image(), target, options));
+                                } catch (IOException e) {
+                                    throw new CompletionException(e);
+                                } finally {
+                                    inFlight.release(rendered.permits());
+                                }
+                            }, encodePool)
+                            .whenComplete((ignored, error) -> {
+                                synchronized (written) {
+                                    if (error == null) {
+                                        written.put(pageIndex, target);
+                                    } else {
+                                        Throwable cause = error instanceof CompletionException && error.getCause() != null
+                                                ? error.getCause() : error;
+                                        logger.warn("Failed to export page {}: {}", pageIndex + 1, cause.getMessage());
+                                        failures.put(pageIndex, cause.getMessage());
+                                    }
+                                }
+                                int done = completed.incrementAndGet();
+                                if (callback != null) {
+                                    callback.onProgress(done, totalPages, error == null
+                                            ? "Exported page " + (pageIndex + 1)
+                                            : "Failed page " + (pageIndex + 1));
+                                }
+                            });
+                    jobs.add(job);
+                }
+
+                // Failures are recorded per page, so wait for everything regardless
+                for (CompletableFuture<Void> job : jobs) {
+                    try {
+                        job.join();
+                    } catch (CompletionException ignored) {
+                        // Recorded in failures
+                    }
+                }
+            } finally {
+                renderPool.shutdownNow();
+                encodePool.shutdownNow();
+                renderers.close();
+            }
+
+            long elapsed = System.currentTimeMillis() - start;
+            ExportResult result;
+            synchronized (written) {
+                result = new ExportResult(new ArrayList<>(written.values()), new TreeMap<>(failures),
+                        bytesWritten.get(), elapsed);
+            }
+            logger.info("Exported {} of {} pages of {} in {} ms ({} bytes)",
+                    result.getOutputFiles().size(), totalPages, inputFile.getName(), elapsed, result.getBytesWritten());
+            return result;
+        }
+    }
+
+    /**
+     * Resolve the page selection against the document, dropping out-of-range indices.
+     */
+    private List<Integer> selectPages(Collection<Integer> requested, int pageCount) {
+        List<Integer> pages = new ArrayList<>();
+        if (requested == null) {
+            for (int i = 0; i < pageCount; i++) {
+                pages.add(i);
+            }
+            return pages;
+        }
+        for (int pageIndex : new TreeSet<>(requested)) {
+            if (pageIndex >= 0 && pageIndex < pageCount) {
+                pages.add(pageIndex);
+            } else {
+                logger.warn("Skipping page {}: document has {} pages", pageIndex + 1, pageCount);
+            }
+        }
+        return pages;
+    }
+
+    private record RenderedPage(BufferedImage image, int permits) {
+    }
+
+    /**
+     * Render one page on the calling thread's replica, after reserving its pixels in the budget.
+     */
+    private RenderedPage renderPage(RenderFarm.Replicas replicas, int pageIndex, ExportOptions options,
+                                    Semaphore inFlight, int budget) {
+        try {
+            float dpi = replicas.render((renderer, document) -> resolveDpi(document.getPage(pageIndex), options));
+            int[] size = replicas.render((renderer, document) ->
+                    PageGeometry.pixelSize(document.getPage(pageIndex), dpi));
+            long bytes = (long) size[0] * size[1] * 4;
+            int permits = (int) Math.min(budget, bytes / 1024 + 1);
+
+            inFlight.acquire(permits);
+            try {
+                BufferedImage image = replicas.render((renderer, document) -> render(renderer, pageIndex, dpi));
+                return new RenderedPage(image, permits);
+            } catch (IOException | RuntimeException e) {
+                inFlight.release(permits);
+                throw e;
+            }
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CompletionException(e);
+        }
+    }
+
+    private static float resolveDpi(PDPage page, ExportOptions options) {
+        if (options.hasTargetSize()) {
+            return PageGeometry.fitDpi(page, options.getMaxWidth(), options.getMaxHeight());
+        }
+        return options.getDpi();
+    }
+
+    private static BufferedImage render(PDFRenderer renderer, int pageIndex, float dpi) throws IOException {
+        RenderingHints previousHints = renderer.getRenderingHints();
+        boolean previousSubsampling = renderer.isSubsamplingAllowed();
+        renderer.setRenderingHints(RenderQuality.FULL.getHints());
+        renderer.setSubsamplingAllowed(RenderQuality.FULL.isSubsamplingAllowed());
+        try {
+            return renderer.renderImageWithDPI(pageIndex, dpi, ImageType.RGB);
+        } finally {
+            renderer.setRenderingHints(previousHints);
+            renderer.setSubsamplingAllowed(previousSubsampling);
+        }
+    }
+
+    /**
+     * Encode to a temporary file next to the target and move it into place,
+     * so readers never see a partly written image.
+     *
+     * @return Size of the written file
+     */
+    private long writeImage(BufferedImage rendered, File target, ExportOptions options) throws IOException {
+        ImageFormat format = options.getFormat();
+        BufferedImage image = options.getColorMode().convert(rendered);
+        if (format == ImageFormat.JPEG && image.getType() == BufferedImage.TYPE_BYTE_BINARY) {
+            // JPEG has no 1-bit mode
+            image = ColorMode.GRAY.convert(rendered);
+        }
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(format.getFormatName());
+        if (!writers.hasNext()) {
+            throw new IOException("No image writer for " + format);
+        }
+        ImageWriter writer = writers.next();
+        Path temp = Files.createTempFile(target.getParentFile().toPath(), ".export-", ".tmp");
+        try {
+            try (ImageOutputStream out = ImageIO.createImageOutputStream(temp.toFile())) {
+                writer.setOutput(out);
+                ImageWriteParam param = writer.getDefaultWriteParam();
+                if (format == ImageFormat.JPEG) {
+                    param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                    param.setCompressionQuality(options.getJpegQuality());
+                }
+                writer.write(null, new IIOImage(image, null, null), param);
+            } finally {
+                writer.dispose();
+            }
+            try {
+                Files.move(temp, target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            return target.length();
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+    }
+
+    private static String fileName(ExportOptions options, String baseName, int pageIndex, int digits) {
+        String page = String.format("%0" + digits + "d", pageIndex + 1);
+        return options.getNamingPattern()
+                .replace("{name}", baseName)
+                .replace("{page}", page)
+                + "." + options.getFormat().getExtension();
+    }
+
+    private static String baseName(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        return dot > 0 ? fileName.substring(0, dot) : fileName;
+    }
+
+    private static ThreadFactory namedThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
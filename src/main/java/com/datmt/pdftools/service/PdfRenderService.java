@@ -1,15 +1,16 @@
 package com.datmt.pdftools.service;
 
 import com.datmt.pdftools.model.PdfDocument;
-import javafx.embed.swing.SwingFXUtils;
+import com.datmt.pdftools.service.image.ColorMode;
+import com.datmt.pdftools.service.image.FxPageRenderer;
+import com.datmt.pdftools.service.image.PackedImage;
+import com.datmt.pdftools.service.image.PageGeometry;
+import com.datmt.pdftools.service.image.PageThumbnails;
+import com.datmt.pdftools.service.image.RenderQuality;
 import javafx.scene.image.Image;
-import org.apache.pdfbox.pdmodel.PDPage;
-import org.apache.pdfbox.rendering.ImageType;
-import org.apache.pdfbox.rendering.PDFRenderer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.awt.image.BufferedImage;
 import java.io.IOException;
 
 /**
@@ -18,7 +19,10 @@ import java.io.IOException;
 public class PdfRenderService {
     private static final Logger logger = LoggerFactory.getLogger(PdfRenderService.class);
     private static final int DEFAULT_DPI = 150;
-    private static final int THUMBNAIL_DPI = 72;
+    private static final int DRAFT_DPI = 36;
+    public static final int THUMBNAIL_MAX_SIZE = 200; // Twice the thumbnail panel size, for HiDPI screens
+
+    private final PageImageCache imageCache = PageImageCache.getInstance();
 
     /**
      * Render a page to a JavaFX Image at standard resolution.
@@ -34,7 +38,7 @@ public class PdfRenderService {
     }
 
     /**
-     * Render a page to a JavaFX Image at thumbnail resolution.
+     * Render a page thumbnail that fits in {@link #THUMBNAIL_MAX_SIZE} pixels.
      *
      * @param pdfDocument The PDF document
      * @param pageIndex   0-based page index
@@ -42,8 +46,152 @@ public class PdfRenderService {
      * @throws IOException If rendering fails
      */
     public Image renderPageToThumbnail(PdfDocument pdfDocument, int pageIndex) throws IOException {
-        logger.trace("Rendering page {} to thumbnail at {}DPI", pageIndex, THUMBNAIL_DPI);
-        return renderPageToImage(pdfDocument, pageIndex, THUMBNAIL_DPI);
+        return renderThumbnail(pdfDocument, pageIndex, THUMBNAIL_MAX_SIZE, THUMBNAIL_MAX_SIZE).image();
+    }
+
+    /**
+     * Make a page thumbnail that fits in {@link #THUMBNAIL_MAX_SIZE} pixels, packed in a colour mode.
+     * With {@link ColorMode#AUTO} monochrome pages are kept as grey or 1-bit.
+     * The full-colour render is not added to the shared page cache: callers
+     * keep the packed copy, which is what makes mono thumbnails cheap.
+     *
+     * @param pdfDocument The PDF document
+     * @param pageIndex   0-based page index
+     * @param mode        Colour mode to store the thumbnail in
+     * @return The packed thumbnail
+     * @throws IOException If rendering fails
+     */
+    public PackedImage renderPackedThumbnail(PdfDocument pdfDocument, int pageIndex, ColorMode mode)
+            throws IOException {
+        Image image = renderThumbnail(pdfDocument, pageIndex, THUMBNAIL_MAX_SIZE, THUMBNAIL_MAX_SIZE, false).image();
+        return PackedImage.pack(image, mode);
+    }
+
+    /**
+     * Make a page thumbnail that fits in a box, preferring the page's embedded
+     * thumbnail or, for scanned pages, its single full-page image over rendering.
+     *
+     * @param pdfDocument The PDF document
+     * @param pageIndex   0-based page index
+     * @param maxWidthPx  Maximum image width in pixels
+     * @param maxHeightPx Maximum image height in pixels
+     * @return The thumbnail and the path that produced it
+     * @throws IOException If rendering fails
+     */
+    public PageThumbnails.Result renderThumbnail(PdfDocument pdfDocument, int pageIndex, int maxWidthPx,
+                                                 int maxHeightPx) throws IOException {
+        return renderThumbnail(pdfDocument, pageIndex, maxWidthPx, maxHeightPx, true);
+    }
+
+    /**
+     * @param cacheResult Whether a new thumbnail is added to the shared page cache
+     */
+    private PageThumbnails.Result renderThumbnail(PdfDocument pdfDocument, int pageIndex, int maxWidthPx,
+                                                  int maxHeightPx, boolean cacheResult) throws IOException {
+        if (pageIndex < 0 || pageIndex >= pdfDocument.getPageCount()) {
+            throw new IllegalArgumentException("Page index out of range: " + pageIndex);
+        }
+        float dpi = getFitDpi(pdfDocument, pageIndex, maxWidthPx, maxHeightPx);
+        PageImageCache.Key key = new PageImageCache.Key(pdfDocument.getPdfDocument(), pageIndex, dpi, 0, ColorMode.AUTO);
+        Image cached = imageCache.get(key);
+        if (cached != null) {
+            return PageThumbnails.cached(cached);
+        }
+        PageThumbnails.Result result = pdfDocument.getReplicas().render((renderer, document) ->
+                PageThumbnails.create(renderer, document, pageIndex, dpi));
+        logger.trace("Thumbnail of page {} from {}", pageIndex, result.source());
+        if (cacheResult) {
+            imageCache.put(key, result.image());
+        }
+        return result;
+    }
+
+    /**
+     * Resolution at which {@link #renderPageToThumbnail} renders a page.
+     *
+     * @param pdfDocument The PDF document
+     * @param pageIndex   0-based page index
+     * @return Thumbnail resolution in dots per inch
+     * @throws IOException If the page cannot be read
+     */
+    public float getThumbnailDpi(PdfDocument pdfDocument, int pageIndex) throws IOException {
+        return getFitDpi(pdfDocument, pageIndex, THUMBNAIL_MAX_SIZE, THUMBNAIL_MAX_SIZE);
+    }
+
+    /**
+     * Render a page scaled to fit in a box, so the image size (and render cost)
+     * depends on the box rather than on the physical page size.
+     *
+     * @param pdfDocument The PDF document
+     * @param pageIndex   0-based page index
+     * @param maxWidthPx  Maximum image width in pixels
+     * @param maxHeightPx Maximum image height in pixels
+     * @param quality     Rendering quality tier
+     * @return JavaFX Image of the rendered page
+     * @throws IOException If rendering fails
+     */
+    public Image renderToFit(PdfDocument pdfDocument, int pageIndex, int maxWidthPx, int maxHeightPx,
+                             RenderQuality quality) throws IOException {
+        if (pageIndex < 0 || pageIndex >= pdfDocument.getPageCount()) {
+            throw new IllegalArgumentException("Page index out of range: " + pageIndex);
+        }
+        if (maxWidthPx <= 0 || maxHeightPx <= 0) {
+            throw new IllegalArgumentException("Invalid target size: " + maxWidthPx + "x" + maxHeightPx);
+        }
+        float dpi = getFitDpi(pdfDocument, pageIndex, maxWidthPx, maxHeightPx);
+        PageImageCache.Key key = new PageImageCache.Key(pdfDocument.getPdfDocument(), pageIndex, dpi, 0, ColorMode.RGB);
+        Image cached = imageCache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        logger.trace("Rendering page {} to fit {}x{} ({}DPI, {})", pageIndex, maxWidthPx, maxHeightPx, dpi, quality);
+        Image image = pdfDocument.getReplicas().render((renderer, document) ->
+                FxPageRenderer.render(renderer, document, pageIndex, dpi, quality));
+        imageCache.put(key, image);
+        return image;
+    }
+
+    private float getFitDpi(PdfDocument pdfDocument, int pageIndex, int maxWidthPx, int maxHeightPx)
+            throws IOException {
+        return pdfDocument.getReplicas().render((renderer, document) ->
+                PageGeometry.fitDpi(document.getPage(pageIndex), maxWidthPx, maxHeightPx));
+    }
+
+    /**
+     * Get the standard-resolution render of a page if it is already cached.
+     *
+     * @param pdfDocument The PDF document
+     * @param pageIndex   0-based page index
+     * @return The cached image, or null
+     */
+    public Image getCachedPage(PdfDocument pdfDocument, int pageIndex) {
+        return imageCache.get(new PageImageCache.Key(pdfDocument.getPdfDocument(), pageIndex, DEFAULT_DPI, 0, ColorMode.RGB));
+    }
+
+    /**
+     * Get a quick first image of a page for progressive preview: the cached
+     * thumbnail if there is one, otherwise a fast low-resolution draft render.
+     *
+     * @param pdfDocument The PDF document
+     * @param pageIndex   0-based page index
+     * @return JavaFX Image to show until the full render is ready
+     * @throws IOException If rendering fails
+     */
+    public Image renderPageDraft(PdfDocument pdfDocument, int pageIndex) throws IOException {
+        Image thumbnail = imageCache.get(new PageImageCache.Key(pdfDocument.getPdfDocument(), pageIndex,
+                getThumbnailDpi(pdfDocument, pageIndex), 0, ColorMode.AUTO));
+        if (thumbnail != null) {
+            return thumbnail;
+        }
+        PageImageCache.Key key = new PageImageCache.Key(pdfDocument.getPdfDocument(), pageIndex, DRAFT_DPI, 0, ColorMode.RGB);
+        Image draft = imageCache.get(key);
+        if (draft == null) {
+            logger.trace("Rendering draft of page {} at {}DPI", pageIndex, DRAFT_DPI);
+            draft = pdfDocument.getReplicas().render((renderer, document) ->
+                    FxPageRenderer.renderDraft(renderer, document, pageIndex, DRAFT_DPI));
+            imageCache.put(key, draft);
+        }
+        return draft;
     }
 
     /**
@@ -61,12 +209,19 @@ public class PdfRenderService {
             throw new IllegalArgumentException("Page index out of range: " + pageIndex);
         }
 
+        PageImageCache.Key key = new PageImageCache.Key(pdfDocument.getPdfDocument(), pageIndex, dpi, 0, ColorMode.RGB);
+        Image cached = imageCache.get(key);
+        if (cached != null) {
+            logger.trace("Page {} at {}DPI served from cache", pageIndex, dpi);
+            return cached;
+        }
+
         logger.debug("Rendering page {} at {}DPI", pageIndex, dpi);
 
         try {
-            PDFRenderer renderer = new PDFRenderer(pdfDocument.getPdfDocument());
-            BufferedImage bufferedImage = renderer.renderImageWithDPI(pageIndex, dpi, ImageType.RGB);
-            Image fxImage = SwingFXUtils.toFXImage(bufferedImage, null);
+            Image fxImage = pdfDocument.getReplicas().render((renderer, document) ->
+                    FxPageRenderer.render(renderer, document, pageIndex, dpi));
+            imageCache.put(key, fxImage);
             logger.trace("Successfully rendered page {} to image", pageIndex);
             return fxImage;
         } catch (IOException e) {
@@ -75,6 +230,58 @@ public class PdfRenderService {
         }
     }
 
+    /**
+     * Render one square tile of a page for high-zoom display.
+     * Tiles at the right and bottom edges are cropped to the page.
+     *
+     * @param pdfDocument The PDF document
+     * @param pageIndex   0-based page index
+     * @param dpi         Zoom resolution in dots per inch
+     * @param tileX       Tile column
+     * @param tileY       Tile row
+     * @param tileSize    Tile edge length in pixels
+     * @return JavaFX Image of the tile
+     * @throws IOException If rendering fails
+     */
+    public Image renderTile(PdfDocument pdfDocument, int pageIndex, int dpi, int tileX, int tileY, int tileSize)
+            throws IOException {
+        PageImageCache.Key key = new PageImageCache.Key(pdfDocument.getPdfDocument(), pageIndex, dpi, 0,
+                ColorMode.RGB, tileX, tileY);
+        Image cached = imageCache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        logger.trace("Rendering tile {},{} of page {} at {}DPI", tileX, tileY, pageIndex, dpi);
+        Image tile = pdfDocument.getReplicas().render((renderer, document) -> {
+            int[] pageSize = PageGeometry.pixelSize(document.getPage(pageIndex), dpi);
+            int x = tileX * tileSize;
+            int y = tileY * tileSize;
+            int width = Math.min(tileSize, pageSize[0] - x);
+            int height = Math.min(tileSize, pageSize[1] - y);
+            if (width <= 0 || height <= 0) {
+                throw new IllegalArgumentException("Tile out of range: " + tileX + "," + tileY);
+            }
+            return FxPageRenderer.renderRegion(renderer, pageIndex, dpi, x, y, width, height);
+        });
+        imageCache.put(key, tile);
+        return tile;
+    }
+
+    /**
+     * Get the pixel size of a page rendered at the given DPI.
+     *
+     * @param pdfDocument The PDF document
+     * @param pageIndex   0-based page index
+     * @param dpi         Resolution in dots per inch
+     * @return Array with [width, height] in pixels
+     * @throws IOException If the page cannot be read
+     */
+    public int[] getPagePixelSize(PdfDocument pdfDocument, int pageIndex, int dpi) throws IOException {
+        return pdfDocument.getReplicas().render((renderer, document) ->
+                PageGeometry.pixelSize(document.getPage(pageIndex), dpi));
+    }
+
     /**
      * Get the dimensions of a page.
      *
@@ -85,9 +292,10 @@ public class PdfRenderService {
     public double[] getPageDimensions(PdfDocument pdfDocument, int pageIndex) {
         logger.trace("Getting dimensions for page {}", pageIndex);
         try {
-            PDPage page = pdfDocument.getPdfDocument().getPage(pageIndex);
-            var mediaBox = page.getMediaBox();
-            return new double[]{mediaBox.getWidth(), mediaBox.getHeight()};
+            return pdfDocument.getReplicas().render((renderer, document) -> {
+                var mediaBox = document.getPage(pageIndex).getMediaBox();
+                return new double[]{mediaBox.getWidth(), mediaBox.getHeight()};
+            });
         } catch (Exception e) {
             logger.error("Failed to get page dimensions for page {}: {}", pageIndex, e.getMessage());
             return new double[]{595, 842}; // Default A4 dimensions
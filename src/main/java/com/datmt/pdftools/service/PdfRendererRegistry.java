@@ -0,0 +1,74 @@
+package com.datmt.pdftools.service;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps one {@link PDFRenderer} per render thread for a single document.
+ * PDFRenderer is not thread-safe, so each renderer is confined to the thread
+ * that created it; render executors reuse it for every page they draw instead
+ * of building a new renderer (and page tree) per call. Renderers of threads
+ * that have ended are dropped whenever a new thread asks for one, so the
+ * registry holds at most one renderer per live thread plus the new one.
+ * <p>
+ * The registry is owned by the document model and closed together with its caches.
+ */
+public final class PdfRendererRegistry {
+    private static final Logger logger = LoggerFactory.getLogger(PdfRendererRegistry.class);
+
+    private final PDDocument document;
+    private final ConcurrentHashMap<Thread, PDFRenderer> renderers = new ConcurrentHashMap<>();
+    private volatile boolean closed;
+
+    public PdfRendererRegistry(PDDocument document) {
+        this.document = document;
+    }
+
+    /**
+     * Get the renderer for the calling thread, creating it on first use.
+     * After {@link #close()} a throwaway renderer is returned so late tasks still complete.
+     */
+    public PDFRenderer get() {
+        if (closed) {
+            return new PDFRenderer(document);
+        }
+        Thread current = Thread.currentThread();
+        PDFRenderer renderer = renderers.get(current);
+        if (renderer != null) {
+            return renderer;
+        }
+        // Executors replace their threads over time; let go of renderers no thread can use again
+        renderers.keySet().removeIf(thread -> !thread.isAlive());
+        return renderers.computeIfAbsent(current, thread -> {
+            logger.trace("Creating renderer for thread {}", thread.getName());
+            return new PDFRenderer(document);
+        });
+    }
+
+    /**
+     * Number of renderers currently held (one per thread that has rendered).
+     */
+    public int size() {
+        return renderers.size();
+    }
+
+    /**
+     * Drop all renderers; they are garbage once in-flight renders finish.
+     * Threads that render again afterwards create fresh renderers.
+     */
+    public void clear() {
+        renderers.clear();
+    }
+
+    /**
+     * Drop all renderers and stop handing out pooled ones, e.g. when the document is closed.
+     */
+    public void close() {
+        closed = true;
+        renderers.clear();
+    }
+}
@@ -1,7 +1,6 @@
 package com.datmt.pdftools.service;
 
-import org.apache.pdfbox.Loader;
-import org.apache.pdfbox.io.RandomAccessReadBufferedFile;
+import com.datmt.pdftools.service.io.PdfWriteFactory;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.encryption.AccessPermission;
 import org.apache.pdfbox.pdmodel.encryption.StandardProtectionPolicy;
@@ -18,6 +17,8 @@ public class PdfSecurityService {
     private static final Logger logger = LoggerFactory.getLogger(PdfSecurityService.class);
     private static final int KEY_LENGTH = 256;
 
+    private final PdfProbe probe = new PdfProbe();
+
     /**
      * Permission settings for protected PDFs.
      */
@@ -117,8 +118,8 @@ public class PdfSecurityService {
      * @return true if the file is encrypted
      */
     public boolean isProtected(File file) {
-        try (PDDocument doc = Loader.loadPDF(new RandomAccessReadBufferedFile(file))) {
-            return doc.isEncrypted();
+        try {
+            return probe.probe(file).encrypted();
         } catch (IOException e) {
             // If we can't open it without password, it's likely protected
             return true;
@@ -133,23 +134,25 @@ public class PdfSecurityService {
      * @return Security information
      */
     public SecurityInfo getSecurityInfo(File file, String password) throws IOException {
-        try (PDDocument doc = loadDocument(file, password)) {
-            if (!doc.isEncrypted()) {
-                return new SecurityInfo(false, false, false, null);
-            }
-
-            AccessPermission ap = doc.getCurrentAccessPermission();
-            Permissions perms = new Permissions();
-            perms.setCanPrint(ap.canPrint());
-            perms.setCanCopy(ap.canExtractContent());
-            perms.setCanModify(ap.canModify());
-            perms.setCanFillForms(ap.canFillInForm());
-
-            // We can't directly determine if user/owner passwords exist,
-            // but if we opened with empty password, there's no user password
-            boolean hasUserPassword = password != null && !password.isEmpty();
-
-            return new SecurityInfo(true, hasUserPassword, true, perms);
+        try (DocumentPool.Lease lease = DocumentPool.getInstance().borrow(file, password)) {
+            return lease.withDocument(doc -> {
+                if (!doc.isEncrypted()) {
+                    return new SecurityInfo(false, false, false, null);
+                }
+
+                AccessPermission ap = doc.getCurrentAccessPermission();
+                Permissions perms = new Permissions();
+                perms.setCanPrint(ap.canPrint());
+                perms.setCanCopy(ap.canExtractContent());
+                perms.setCanModify(ap.canModify());
+                perms.setCanFillForms(ap.canFillInForm());
+
+                // We can't directly determine if user/owner passwords exist,
+                // but if we opened with empty password, there's no user password
+                boolean hasUserPassword = password != null && !password.isEmpty();
+
+                return new SecurityInfo(true, hasUserPassword, true, perms);
+            });
         }
     }
 
@@ -167,7 +170,7 @@ public class PdfSecurityService {
                           String ownerPassword, Permissions permissions) throws IOException {
         logger.info("Protecting PDF: {} -> {}", inputFile.getName(), outputFile.getName());
 
-        try (PDDocument doc = Loader.loadPDF(new RandomAccessReadBufferedFile(inputFile))) {
+        try (PDDocument doc = DocumentPool.getInstance().takeForModification(inputFile, null)) {
             // Create access permissions
             AccessPermission ap = permissions.toAccessPermission();
 
@@ -183,7 +186,7 @@ public class PdfSecurityService {
             doc.protect(policy);
 
             // Save the protected document
-            doc.save(outputFile);
+            PdfWriteFactory.save(doc, outputFile);
 
             logger.info("Successfully protected PDF: {}", outputFile.getName());
         }
@@ -200,12 +203,12 @@ public class PdfSecurityService {
     public void removeProtection(File inputFile, File outputFile, String password) throws IOException {
         logger.info("Removing protection from PDF: {} -> {}", inputFile.getName(), outputFile.getName());
 
-        try (PDDocument doc = loadDocument(inputFile, password)) {
+        try (PDDocument doc = DocumentPool.getInstance().takeForModification(inputFile, password)) {
             // Mark all security to be removed
             doc.setAllSecurityToBeRemoved(true);
 
             // Save the unprotected document
-            doc.save(outputFile);
+            PdfWriteFactory.save(doc, outputFile);
 
             logger.info("Successfully removed protection from PDF: {}", outputFile.getName());
         }
@@ -219,21 +222,12 @@ public class PdfSecurityService {
      * @return true if the password is correct or the file is not encrypted
      */
     public boolean verifyPassword(File file, String password) {
-        try (PDDocument doc = loadDocument(file, password)) {
+        try {
+            // Opening succeeds only with a valid password; the pooled copy is kept for later use
+            DocumentPool.getInstance().borrow(file, password).close();
             return true;
         } catch (IOException e) {
             return false;
         }
     }
-
-    /**
-     * Load a document with an optional password.
-     */
-    private PDDocument loadDocument(File file, String password) throws IOException {
-        if (password == null || password.isEmpty()) {
-            return Loader.loadPDF(new RandomAccessReadBufferedFile(file));
-        } else {
-            return Loader.loadPDF(new RandomAccessReadBufferedFile(file), password);
-        }
-    }
 }
@@ -2,6 +2,8 @@ package com.datmt.pdftools.service;
 
 import com.datmt.pdftools.model.PdfBookmark;
 import com.datmt.pdftools.model.PdfDocument;
+import com.datmt.pdftools.service.image.ColorMode;
+import com.datmt.pdftools.service.image.PackedImage;
 import javafx.scene.image.Image;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -23,6 +25,7 @@ public class PdfService {
     private final PdfExtractor extractor;
     private final PdfRenderService renderService;
     private final PdfBookmarkService bookmarkService;
+    private final PdfEditService editService;
 
     private PdfDocument currentDocument;
     private List<PdfBookmark> currentBookmarks;
@@ -33,6 +36,7 @@ public class PdfService {
         this.extractor = new PdfExtractor();
         this.renderService = new PdfRenderService();
         this.bookmarkService = new PdfBookmarkService();
+        this.editService = new PdfEditService();
         this.currentDocument = null;
         this.currentBookmarks = new ArrayList<>();
     }
@@ -93,6 +97,33 @@ public class PdfService {
         return renderService.renderPageToImage(currentDocument, pageIndex);
     }
 
+    /**
+     * Get the standard-resolution render of a page if it is already cached.
+     *
+     * @param pageIndex 0-based page index
+     * @return The cached image, or null
+     */
+    public Image getCachedPage(int pageIndex) {
+        if (!isDocumentLoaded()) {
+            return null;
+        }
+        return renderService.getCachedPage(currentDocument, pageIndex);
+    }
+
+    /**
+     * Get a quick draft of a page to show while the full render runs.
+     *
+     * @param pageIndex 0-based page index
+     * @return JavaFX Image draft
+     * @throws IOException If rendering fails
+     */
+    public Image renderPageDraft(int pageIndex) throws IOException {
+        if (!isDocumentLoaded()) {
+            throw new IllegalStateException("No PDF document loaded");
+        }
+        return renderService.renderPageDraft(currentDocument, pageIndex);
+    }
+
     /**
      * Render a page thumbnail.
      *
@@ -109,6 +140,71 @@ public class PdfService {
         return renderService.renderPageToThumbnail(currentDocument, pageIndex);
     }
 
+    /**
+     * Render a page thumbnail packed in a colour mode, e.g. grey or 1-bit for
+     * monochrome pages with {@link ColorMode#AUTO}.
+     *
+     * @param pageIndex 0-based page index
+     * @param mode      Colour mode to store the thumbnail in
+     * @return Packed thumbnail of the page
+     * @throws IOException If rendering fails
+     */
+    public PackedImage renderPageThumbnail(int pageIndex, ColorMode mode) throws IOException {
+        if (!isDocumentLoaded()) {
+            logger.error("Cannot render thumbnail: no document loaded");
+            throw new IllegalStateException("No PDF document loaded");
+        }
+        logger.debug("Rendering {} thumbnail for page {}", mode, pageIndex);
+        return renderService.renderPackedThumbnail(currentDocument, pageIndex, mode);
+    }
+
+    /**
+     * Resolution at which {@link #renderPageThumbnail} renders a page.
+     *
+     * @param pageIndex 0-based page index
+     * @return Thumbnail resolution in dots per inch
+     * @throws IOException If the page cannot be read
+     */
+    public float getThumbnailDpi(int pageIndex) throws IOException {
+        if (!isDocumentLoaded()) {
+            throw new IllegalStateException("No PDF document loaded");
+        }
+        return renderService.getThumbnailDpi(currentDocument, pageIndex);
+    }
+
+    /**
+     * Render one tile of a page for the zoomed preview.
+     *
+     * @param pageIndex 0-based page index
+     * @param dpi       Zoom resolution
+     * @param tileX     Tile column
+     * @param tileY     Tile row
+     * @param tileSize  Tile edge length in pixels
+     * @return JavaFX Image of the tile
+     * @throws IOException If rendering fails
+     */
+    public Image renderPageTile(int pageIndex, int dpi, int tileX, int tileY, int tileSize) throws IOException {
+        if (!isDocumentLoaded()) {
+            throw new IllegalStateException("No PDF document loaded");
+        }
+        return renderService.renderTile(currentDocument, pageIndex, dpi, tileX, tileY, tileSize);
+    }
+
+    /**
+     * Get the pixel size of a page at the given DPI.
+     *
+     * @param pageIndex 0-based page index
+     * @param dpi       Resolution in dots per inch
+     * @return [width, height] in pixels
+     * @throws IOException If the page cannot be read
+     */
+    public int[] getPagePixelSize(int pageIndex, int dpi) throws IOException {
+        if (!isDocumentLoaded()) {
+            throw new IllegalStateException("No PDF document loaded");
+        }
+        return renderService.getPagePixelSize(currentDocument, pageIndex, dpi);
+    }
+
     /**
      * Get page dimensions.
      *
@@ -134,6 +230,15 @@ public class PdfService {
         extractPages(pageIndices, new java.util.HashMap<>(), outputFile);
     }
 
+    /**
+     * Whether exporting all pages with rotations appends the rotations to a
+     * copy of the source file rather than writing a new document
+     * (see {@link PdfExtractor#setIncrementalSave}).
+     */
+    public void setIncrementalExport(boolean incrementalExport) {
+        extractor.setIncrementalSave(incrementalExport);
+    }
+
     /**
      * Extract pages to a new PDF file with optional rotations.
      *
@@ -219,12 +324,45 @@ public class PdfService {
      * @throws IOException If extraction fails
      */
     public void extractByBookmarks(List<PdfBookmark> bookmarks, File outputDir) throws IOException {
+        extractByBookmarks(bookmarks, outputDir, null);
+    }
+
+    /**
+     * Extract pages for selected bookmarks into separate files, written in parallel.
+     *
+     * @param bookmarks List of selected bookmarks to extract
+     * @param outputDir Directory to save the extracted PDFs
+     * @param callback  Progress callback (optional), called once per written file from worker threads
+     * @throws IOException If extraction fails
+     */
+    public void extractByBookmarks(List<PdfBookmark> bookmarks, File outputDir,
+                                   PdfSplitService.ProgressCallback callback) throws IOException {
         if (!isDocumentLoaded()) {
             logger.error("Cannot extract by bookmarks: no document loaded");
             throw new IllegalStateException("No PDF document loaded");
         }
         logger.info("Extracting {} bookmarks to: {}", bookmarks.size(), outputDir.getAbsolutePath());
-        extractor.extractByBookmarks(currentDocument, bookmarks, outputDir);
+        extractor.extractByBookmarks(currentDocument, bookmarks, outputDir, callback);
+    }
+
+    /**
+     * Apply edits to the current document's file in place and reload it.
+     * Edits are appended to the file as an incremental update when possible.
+     *
+     * @param edits Edits to apply
+     * @return What was written
+     * @throws IOException If the file cannot be edited or reloaded
+     */
+    public PdfEditService.EditResult applyEdits(PdfEditService.Edits edits) throws IOException {
+        if (!isDocumentLoaded()) {
+            logger.error("Cannot apply edits: no document loaded");
+            throw new IllegalStateException("No PDF document loaded");
+        }
+        File file = currentDocument.getSourceFile();
+        logger.info("Applying edits to: {}", file.getAbsolutePath());
+        PdfEditService.EditResult result = editService.apply(file, edits);
+        loadPdf(file);
+        return result;
     }
 
     /**
@@ -234,7 +372,7 @@ public class PdfService {
         if (currentDocument != null) {
             logger.info("Closing document: {}", currentDocument.getSourceFile().getName());
             try {
-                currentDocument.getPdfDocument().close();
+                currentDocument.close();
                 currentDocument.clearCache();
                 currentDocument = null;
                 currentBookmarks = new ArrayList<>();
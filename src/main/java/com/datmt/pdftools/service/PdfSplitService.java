@@ -0,0 +1,493 @@
+package com.datmt.pdftools.service;
+
+import com.datmt.pdftools.model.PdfBookmark;
+import com.datmt.pdftools.model.PdfDocument;
+import com.datmt.pdftools.service.io.SaveProfile;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.PDPageTree;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Splits a loaded PDF into several files: by bookmarks, every N pages, by
+ * maximum file size, or one file per page.
+ * <p>
+ * All output parts are planned up front, then assembled and saved in
+ * parallel, each worker reading from its own replica of the document (see
+ * {@link RenderFarm}). Parts being written are bounded by a memory budget
+ * estimated from their share of the source file, and every file is written
+ * to a temporary name and moved into place, so a failed or interrupted split
+ * never leaves a half-written PDF under its final name.
+ */
+public class PdfSplitService {
+    private static final Logger logger = LoggerFactory.getLogger(PdfSplitService.class);
+    private static final int CPU_COUNT = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+    // Rough serialized cost of an object header and of a dictionary or array entry
+    private static final long OBJECT_OVERHEAD = 32;
+    private static final long ENTRY_OVERHEAD = 16;
+    // Links out of the page that are not written with it (see PageViews)
+    private static final Set<COSName> SKIPPED_KEYS = Set.of(COSName.PARENT, COSName.P, COSName.B,
+            COSName.DEST, COSName.A);
+
+    /**
+     * One output file: a 0-based inclusive page range. A range may hold no
+     * pages, e.g. that of a bookmark starting after its parent ends, which
+     * valid outlines out of page order produce; {@link #split} reports such a
+     * part as failed and writes the others.
+     *
+     * @param fileName  File name in the output directory
+     * @param firstPage First page, 0-based
+     * @param lastPage  Last page, 0-based, inclusive
+     */
+    public record SplitPart(String fileName, int firstPage, int lastPage) {
+        public boolean hasPages() {
+            return firstPage >= 0 && lastPage >= firstPage;
+        }
+
+        public int getPageCount() {
+            return hasPages() ? lastPage - firstPage + 1 : 0;
+        }
+    }
+
+    /**
+     * Split options.
+     */
+    public static class SplitOptions {
+        private int threads = Math.min(CPU_COUNT, 4);
+        private long maxInFlightBytes = 256L * 1024 * 1024;
+        private SaveProfile saveProfile;
+
+        public int getThreads() {
+            return threads;
+        }
+
+        public void setThreads(int threads) {
+            this.threads = Math.max(1, threads);
+        }
+
+        public long getMaxInFlightBytes() {
+            return maxInFlightBytes;
+        }
+
+        /**
+         * Memory budget for parts being written, estimated from their share of
+         * the source file size. A part larger than the whole budget is still
+         * written, but alone.
+         */
+        public void setMaxInFlightBytes(long maxInFlightBytes) {
+            this.maxInFlightBytes = Math.max(1024 * 1024, maxInFlightBytes);
+        }
+
+        public SaveProfile getSaveProfile() {
+            return saveProfile;
+        }
+
+        /**
+         * Profile for the written files, or null for the default.
+         */
+        public void setSaveProfile(SaveProfile saveProfile) {
+            this.saveProfile = saveProfile;
+        }
+    }
+
+    /**
+     * Result of a split.
+     */
+    public static class SplitResult {
+        private final List<File> outputFiles;
+        private final Map<String, String> failures;
+        private final long bytesWritten;
+        private final long elapsedMillis;
+
+        public SplitResult(List<File> outputFiles, Map<String, String> failures, long bytesWritten,
+                           long elapsedMillis) {
+            this.outputFiles = Collections.unmodifiableList(outputFiles);
+            this.failures = Collections.unmodifiableMap(failures);
+            this.bytesWritten = bytesWritten;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        /**
+         * Written files, in plan order.
+         */
+        public List<File> getOutputFiles() {
+            return outputFiles;
+        }
+
+        /**
+         * Error message per file name, for parts that could not be written.
+         */
+        public Map<String, String> getFailures() {
+            return failures;
+        }
+
+        public long getBytesWritten() {
+            return bytesWritten;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        public boolean isSuccess() {
+            return failures.isEmpty();
+        }
+    }
+
+    /**
+     * Progress callback interface.
+     */
+    @FunctionalInterface
+    public interface ProgressCallback {
+        void onProgress(int currentPart, int totalParts, String status);
+    }
+
+    /**
+     * Plan one part per bookmark, named {@code <source>_<index>_<title>.pdf}.
+     *
+     * @param sourceDocument The source PDF document
+     * @param bookmarks      Bookmarks with their page ranges resolved
+     */
+    public List<SplitPart> planByBookmarks(PdfDocument sourceDocument, List<PdfBookmark> bookmarks) {
+        String baseName = baseName(sourceDocument.getSourceFile().getName());
+        List<SplitPart> parts = new ArrayList<>(bookmarks.size());
+        int bookmarkIndex = 1;
+        for (PdfBookmark bookmark : bookmarks) {
+            String sanitizedTitle = bookmark.getSanitizedTitle();
+            if (sanitizedTitle.isEmpty()) {
+                sanitizedTitle = "Chapter_" + bookmarkIndex;
+            }
+            String fileName = String.format("%s_%02d_%s.pdf", baseName, bookmarkIndex, sanitizedTitle);
+            parts.add(new SplitPart(fileName, bookmark.getPageIndex(), bookmark.getEndPageIndex()));
+            bookmarkIndex++;
+        }
+        return parts;
+    }
+
+    /**
+     * Plan parts of at most {@code pagesPerPart} pages each, named {@code <source>_part_<n>.pdf}.
+     *
+     * @param sourceDocument The source PDF document
+     * @param pagesPerPart   Pages per output file; the last one may have fewer
+     */
+    public List<SplitPart> planEvery(PdfDocument sourceDocument, int pagesPerPart) {
+        if (pagesPerPart < 1) {
+            throw new IllegalArgumentException("Pages per part must be at least 1: " + pagesPerPart);
+        }
+        int pageCount = sourceDocument.getPageCount();
+        List<int[]> ranges = new ArrayList<>();
+        for (int first = 0; first < pageCount; first += pagesPerPart) {
+            ranges.add(new int[]{first, Math.min(pageCount, first + pagesPerPart) - 1});
+        }
+        return nameParts(sourceDocument, "part", ranges);
+    }
+
+    /**
+     * Plan one part per page, named {@code <source>_page_<n>.pdf}.
+     */
+    public List<SplitPart> planBurst(PdfDocument sourceDocument) {
+        String baseName = baseName(sourceDocument.getSourceFile().getName());
+        int pageCount = sourceDocument.getPageCount();
+        String format = "%s_page_%0" + String.valueOf(pageCount).length() + "d.pdf";
+        List<SplitPart> parts = new ArrayList<>(pageCount);
+        for (int i = 0; i < pageCount; i++) {
+            parts.add(new SplitPart(String.format(format, baseName, i + 1), i, i));
+        }
+        return parts;
+    }
+
+    /**
+     * Plan consecutive parts whose estimated size stays under {@code maxBytes},
+     * named {@code <source>_part_<n>.pdf}.
+     * <p>
+     * A page's size is estimated from the stored length of its content streams
+     * and of every object it references (fonts, images, forms, annotations),
+     * without decoding or saving anything. Objects shared between pages, such
+     * as fonts, are counted once per part. A page larger than the limit on its
+     * own gets a part to itself.
+     *
+     * @param sourceDocument The source PDF document
+     * @param maxBytes       Target maximum size of each output file
+     * @throws IOException If the pages cannot be read
+     */
+    public List<SplitPart> planByMaxSize(PdfDocument sourceDocument, long maxBytes) throws IOException {
+        if (maxBytes < 1) {
+            throw new IllegalArgumentException("Maximum part size must be positive: " + maxBytes);
+        }
+        List<int[]> ranges = sourceDocument.getReplicas().render((renderer, sourcePdf) -> {
+            List<int[]> planned = new ArrayList<>();
+            Set<COSBase> counted = Collections.newSetFromMap(new IdentityHashMap<>());
+            int first = 0;
+            long partSize = 0;
+            for (int i = 0; i < sourcePdf.getNumberOfPages(); i++) {
+                COSDictionary page = sourcePdf.getPage(i).getCOSObject();
+                long pageSize = estimateSize(page, counted);
+                if (i > first && partSize + pageSize > maxBytes) {
+                    planned.add(new int[]{first, i - 1});
+                    first = i;
+                    counted.clear();
+                    pageSize = estimateSize(page, counted);
+                    partSize = 0;
+                }
+                partSize += pageSize;
+            }
+            if (sourcePdf.getNumberOfPages() > 0) {
+                planned.add(new int[]{first, sourcePdf.getNumberOfPages() - 1});
+            }
+            return planned;
+        });
+        logger.debug("Planned {} parts of at most {} bytes", ranges.size(), maxBytes);
+        return nameParts(sourceDocument, "part", ranges);
+    }
+
+    /**
+     * Write the planned parts.
+     *
+     * @param sourceDocument The source PDF document; only read
+     * @param parts          Parts to write
+     * @param outputDir      Directory for the files; created if missing
+     * @param options        Split options
+     * @param callback       Progress callback (optional), called once per finished part from worker threads
+     * @return Split result; parts that failed are listed in it rather than aborting the split
+     * @throws IOException If the output directory cannot be created
+     */
+    public SplitResult split(PdfDocument sourceDocument, List<SplitPart> parts, File outputDir,
+                             SplitOptions options, ProgressCallback callback) throws IOException {
+        long start = System.currentTimeMillis();
+        Files.createDirectories(outputDir.toPath());
+
+        int pageCount = sourceDocument.getPageCount();
+        for (SplitPart part : parts) {
+            if (part.hasPages() && part.lastPage() >= pageCount) {
+                throw new IllegalArgumentException("Page range of " + part.fileName()
+                        + " is past the end of the document (" + pageCount + " pages)");
+            }
+        }
+        int totalParts = parts.size();
+        logger.info("Splitting {} into {} files using {} threads",
+                sourceDocument.getSourceFile().getName(), totalParts, options.getThreads());
+
+        // Budget in KiB so large budgets fit in an int
+        int budget = (int) Math.min(Integer.MAX_VALUE, options.getMaxInFlightBytes() / 1024);
+        Semaphore inFlight = new Semaphore(budget);
+        long sourceSize = Math.max(1, sourceDocument.getSourceFile().length());
+
+        Map<Integer, File> written = new TreeMap<>();
+        Map<Integer, String> failures = new TreeMap<>();
+        AtomicInteger completed = new AtomicInteger();
+        AtomicLong bytesWritten = new AtomicLong();
+
+        ExecutorService pool = Executors.newFixedThreadPool(options.getThreads(), namedThreads("pdf-split"));
+        try {
+            List<CompletableFuture<Void>> jobs = new ArrayList<>(totalParts);
+            for (int i = 0; i < totalParts; i++) {
+                int partIndex = i;
+                SplitPart part = parts.get(i);
+                if (!part.hasPages()) {
+                    String message = "Invalid page range: " + (part.firstPage() + 1) + "-" + (part.lastPage() + 1);
+                    logger.warn("Skipping {}: {}", part.fileName(), message);
+                    synchronized (written) {
+                        failures.put(partIndex, message);
+                    }
+                    int done = completed.incrementAndGet();
+                    if (callback != null) {
+                        callback.onProgress(done, totalParts, "Failed " + part.fileName());
+                    }
+                    continue;
+                }
+                File target = new File(outputDir, part.fileName());
+                long estimate = sourceSize * part.getPageCount() / Math.max(1, pageCount);
+                int permits = (int) Math.min(budget, estimate / 1024 + 1);
+
+                CompletableFuture<Void> job = CompletableFuture
+                        .runAsync(() -> {
+                            try {
+                                inFlight.acquire(permits);
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                                throw new CompletionException(e);
+                            }
+                            try {
+                                bytesWritten.addAndGet(writePart(sourceDocument, part, target, options.getSaveProfile()));
+                            } catch (IOException e) {
+                                throw new CompletionException(e);
+                            } finally {
+                                inFlight.release(permits);
+                            }
+                        }, pool)
+                        .whenComplete((ignored, error) -> {
+                            synchronized (written) {
+                                if (error == null) {
+                                    written.put(partIndex, target);
+                                } else {
+                                    Throwable cause = error instanceof CompletionException && error.getCause() != null
+                                            ? error.getCause() : error;
+                                    logger.warn("Failed to write {}: {}", part.fileName(), cause.getMessage());
+                                    failures.put(partIndex, cause.getMessage());
+                                }
+                            }
+                            int done = completed.incrementAndGet();
+                            if (callback != null) {
+                                callback.onProgress(done, totalParts, error == null
+                                        ? "Wrote " + part.fileName()
+                                        : "Failed " + part.fileName());
+                            }
+                        });
+                jobs.add(job);
+            }
+
+            // Failures are recorded per part, so wait for everything regardless
+            for (CompletableFuture<Void> job : jobs) {
+                try {
+                    job.join();
+                } catch (CompletionException ignored) {
+                    // Recorded in failures
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        long elapsed = System.currentTimeMillis() - start;
+        SplitResult result;
+        synchronized (written) {
+            Map<String, String> failed = new LinkedHashMap<>();
+            failures.forEach((index, message) -> failed.put(parts.get(index).fileName(), message));
+            result = new SplitResult(new ArrayList<>(written.values()), failed, bytesWritten.get(), elapsed);
+        }
+        logger.info("Wrote {} of {} files in {} ms ({} bytes)",
+                result.getOutputFiles().size(), totalParts, elapsed, result.getBytesWritten());
+        return result;
+    }
+
+    /**
+     * Assemble one part on the calling thread's replica into a temporary file
+     * and move it into place.
+     *
+     * @return Size of the written file
+     */
+    private long writePart(PdfDocument sourceDocument, SplitPart part, File target, SaveProfile profile)
+            throws IOException {
+        logger.debug("Writing pages {}-{} to {}", part.firstPage() + 1, part.lastPage() + 1, target.getName());
+        List<Integer> pages = new ArrayList<>(part.getPageCount());
+        for (int i = part.firstPage(); i <= part.lastPage(); i++) {
+            pages.add(i);
+        }
+
+        Path temp = Files.createTempFile(target.getParentFile().toPath(), ".split-", ".tmp");
+        try {
+            sourceDocument.getReplicas().render((renderer, sourcePdf) -> {
+                PdfExtractor.writePages(sourcePdf, pages, Map.of(), Map.of(), temp.toFile(), profile);
+                return null;
+            });
+            try {
+                Files.move(temp, target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            return target.length();
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+    }
+
+    private List<SplitPart> nameParts(PdfDocument sourceDocument, String label, List<int[]> ranges) {
+        String baseName = baseName(sourceDocument.getSourceFile().getName());
+        String format = "%s_" + label + "_%0" + Math.max(2, String.valueOf(ranges.size()).length()) + "d.pdf";
+        List<SplitPart> parts = new ArrayList<>(ranges.size());
+        for (int i = 0; i < ranges.size(); i++) {
+            int[] range = ranges.get(i);
+            parts.add(new SplitPart(String.format(format, baseName, i + 1), range[0], range[1]));
+        }
+        return parts;
+    }
+
+    /**
+     * Estimated serialized size of a page and the objects it references that
+     * are not in {@code counted} yet; adds them to it.
+     */
+    private static long estimateSize(COSDictionary page, Set<COSBase> counted) {
+        long size = 0;
+        Deque<COSBase> pending = new ArrayDeque<>();
+        pending.push(page);
+        COSBase resources = PDPageTree.getInheritableAttribute(page, COSName.RESOURCES);
+        if (resources != null) {
+            pending.push(resources);
+        }
+        while (!pending.isEmpty()) {
+            COSBase object = pending.pop();
+            if (object instanceof COSObject reference) {
+                object = reference.getObject();
+            }
+            if (object == null || !counted.add(object)) {
+                continue;
+            }
+            if (object instanceof COSDictionary dict) {
+                size += OBJECT_OVERHEAD + ENTRY_OVERHEAD * dict.size();
+                if (dict instanceof COSStream stream) {
+                    size += stream.getLength();
+                }
+                for (Map.Entry<COSName, COSBase> entry : dict.entrySet()) {
+                    if (!SKIPPED_KEYS.contains(entry.getKey())) {
+                        pending.push(entry.getValue());
+                    }
+                }
+            } else if (object instanceof COSArray array) {
+                size += OBJECT_OVERHEAD + ENTRY_OVERHEAD * array.size();
+                for (int i = 0; i < array.size(); i++) {
+                    pending.push(array.get(i));
+                }
+            }
+        }
+        return size;
+    }
+
+    private static String baseName(String fileName) {
+        // Remove .pdf extension
+        if (fileName.toLowerCase().endsWith(".pdf")) {
+            return fileName.substring(0, fileName.length() - 4);
+        }
+        return fileName;
+    }
+
+    private static ThreadFactory namedThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
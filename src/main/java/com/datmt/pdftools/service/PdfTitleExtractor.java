@@ -1,7 +1,5 @@
 package com.datmt.pdftools.service;
 
-import org.apache.pdfbox.Loader;
-import org.apache.pdfbox.io.RandomAccessReadBufferedFile;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDDocumentInformation;
 import org.apache.pdfbox.text.PDFTextStripper;
@@ -34,6 +32,8 @@ public class PdfTitleExtractor {
     private static final int MAX_FILENAME_LENGTH = 200;
     private static final int MAX_FIRST_PAGE_CHARS = 500;
 
+    private final PdfProbe probe = new PdfProbe();
+
     /**
      * Extract title from a PDF file.
      * Tries metadata first, then first-page text.
@@ -44,24 +44,41 @@ public class PdfTitleExtractor {
     public String extractTitle(File pdfFile) {
         logger.debug("Extracting title from: {}", pdfFile.getName());
 
-        try (PDDocument document = Loader.loadPDF(new RandomAccessReadBufferedFile(pdfFile))) {
-            // Try metadata first
-            String title = extractFromMetadata(document);
+        // Try metadata first, read from the trailer without loading the document
+        PdfProbe.ProbeResult probeResult = null;
+        try {
+            probeResult = probe.probe(pdfFile);
+            String title = cleanTitle(probeResult.title());
             if (title != null && !title.isBlank()) {
                 logger.debug("Found title in metadata: {}", title);
                 return title.trim();
             }
+        } catch (IOException e) {
+            logger.debug("Could not probe {}: {}", pdfFile.getName(), e.getMessage());
+        }
+
+        boolean metadataRead = probeResult != null && probeResult.hasReadableInfo();
+        try (DocumentPool.Lease lease = DocumentPool.getInstance().borrow(pdfFile)) {
+            return lease.withDocument(document -> {
+                // Encrypted metadata can only be read once the document is decrypted
+                if (!metadataRead) {
+                    String title = extractFromMetadata(document);
+                    if (title != null && !title.isBlank()) {
+                        logger.debug("Found title in metadata: {}", title);
+                        return title.trim();
+                    }
+                }
 
-            // Fall back to first page text
-            title = extractFromFirstPage(document);
-            if (title != null && !title.isBlank()) {
-                logger.debug("Extracted title from first page: {}", title);
-                return title.trim();
-            }
-
-            logger.debug("No title found for: {}", pdfFile.getName());
-            return null;
+                // Fall back to first page text
+                String title = extractFromFirstPage(document);
+                if (title != null && !title.isBlank()) {
+                    logger.debug("Extracted title from first page: {}", title);
+                    return title.trim();
+                }
 
+                logger.debug("No title found for: {}", pdfFile.getName());
+                return null;
+            });
         } catch (IOException e) {
             logger.warn("Failed to extract title from {}: {}", pdfFile.getName(), e.getMessage());
             return null;
@@ -0,0 +1,436 @@
+package com.datmt.pdftools.service;
+
+import com.datmt.pdftools.service.io.MappedFileRandomAccessRead;
+import com.datmt.pdftools.service.io.PdfReadFactory;
+import com.datmt.pdftools.service.io.ReadBackend;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.io.RandomAccessRead;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide render farm that lets several threads render one document in parallel.
+ * <p>
+ * PDDocument is not thread-safe, so each render thread gets its own read-only
+ * replica of the document, loaded from a memory mapping of the file that all
+ * replicas of that document share. Replicas are opened on a thread's first
+ * render and closed once idle. Their total weight is capped; when the cap is
+ * reached idle replicas are evicted, and if none can be evicted the render
+ * runs on the primary document, one thread at a time.
+ * <p>
+ * A replica is weighed by the heap it parses, estimated from the size of the
+ * document's cross-reference table, not by the file size: the file bytes are
+ * in the shared mapping, outside the heap, and counted by no replica. The
+ * weight is also capped so that a few replicas of even the largest document
+ * fit under the cap.
+ */
+public final class RenderFarm {
+    private static final Logger logger = LoggerFactory.getLogger(RenderFarm.class);
+
+    public static final long DEFAULT_MEMORY_CAP = 512L * 1024 * 1024;
+    public static final long DEFAULT_IDLE_TIMEOUT_MS = 30_000;
+    /** Heap of a replica apart from its objects: parser, renderer and font caches */
+    private static final long REPLICA_BASE_WEIGHT = 4L * 1024 * 1024;
+    /** Heap per cross-reference entry: the entry itself and the object once rendering resolves it */
+    private static final long REPLICA_BYTES_PER_OBJECT = 2 * 1024;
+    /** Replicas of one document that always fit under the cap */
+    private static final int MIN_REPLICAS = Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors()));
+
+    private static final RenderFarm INSTANCE = new RenderFarm();
+
+    /**
+     * Work done with a renderer and the document it belongs to. The document
+     * must only be read; tasks other than rendering, e.g. page extraction, are fine.
+     */
+    @FunctionalInterface
+    public interface RenderTask<T> {
+        T render(PDFRenderer renderer, PDDocument document) throws IOException;
+    }
+
+    /**
+     * Snapshot of farm counters.
+     *
+     * @param replicas        Replicas currently open
+     * @param memoryBytes     Estimated weight of the open replicas
+     * @param opened          Replicas opened
+     * @param closedIdle      Replicas closed after being idle
+     * @param evicted         Idle replicas closed early to stay under the memory cap
+     * @param replicaRenders  Renders that ran on a replica
+     * @param primaryRenders  Renders that ran on the primary document
+     */
+    public record Stats(int replicas, long memoryBytes, long opened, long closedIdle, long evicted,
+                        long replicaRenders, long primaryRenders) {
+    }
+
+    // Guarded by this
+    private final List<Replica> open = new ArrayList<>();
+    private long memoryCap = DEFAULT_MEMORY_CAP;
+    private long idleTimeoutMs = DEFAULT_IDLE_TIMEOUT_MS;
+    private long memoryBytes;
+    private ScheduledFuture<?> sweep;
+
+    private final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "render-farm-sweeper");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final AtomicLong opened = new AtomicLong();
+    private final AtomicLong closedIdle = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+    private final AtomicLong replicaRenders = new AtomicLong();
+    private final AtomicLong primaryRenders = new AtomicLong();
+
+    private RenderFarm() {
+    }
+
+    public static RenderFarm getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Set the cap on the estimated memory of all replicas. Zero disables replicas.
+     */
+    public void setMemoryCap(long bytes) {
+        List<Replica> closed;
+        synchronized (this) {
+            memoryCap = Math.max(0, bytes);
+            closed = evictIdle(0);
+        }
+        closeAll(closed);
+    }
+
+    public synchronized long getMemoryCap() {
+        return memoryCap;
+    }
+
+    /**
+     * Set how long a replica may stay unused before it is closed.
+     */
+    public synchronized void setIdleTimeout(long millis) {
+        idleTimeoutMs = Math.max(1, millis);
+        if (sweep != null) {
+            sweep.cancel(false);
+            sweep = null;
+            scheduleSweep();
+        }
+    }
+
+    /**
+     * Register a document for parallel rendering.
+     *
+     * @param source    File the document was loaded from; replicas are opened from it
+     * @param primary   The loaded document, used when no replica is available
+     * @param renderers Per-thread renderers of the primary document
+     */
+    public Replicas open(File source, PDDocument primary, PdfRendererRegistry renderers) {
+        return new Replicas(source, primary, renderers);
+    }
+
+    public synchronized Stats getStats() {
+        return new Stats(open.size(), memoryBytes, opened.get(), closedIdle.get(), evicted.get(),
+                replicaRenders.get(), primaryRenders.get());
+    }
+
+    /**
+     * Reserve room for a new replica, evicting idle ones if needed.
+     */
+    private synchronized boolean reserve(long weight, List<Replica> toClose) {
+        if (memoryBytes + weight > memoryCap) {
+            toClose.addAll(evictIdle(weight));
+        }
+        if (memoryBytes + weight > memoryCap) {
+            return false;
+        }
+        memoryBytes += weight;
+        return true;
+    }
+
+    /**
+     * Close least recently used idle replicas until {@code needed} more bytes fit under the cap.
+     */
+    private List<Replica> evictIdle(long needed) {
+        List<Replica> victims = new ArrayList<>();
+        List<Replica> idle = new ArrayList<>();
+        for (Replica replica : open) {
+            if (!replica.busy) {
+                idle.add(replica);
+            }
+        }
+        idle.sort(Comparator.comparingLong(r -> r.lastUsed));
+        for (Replica replica : idle) {
+            if (memoryBytes + needed <= memoryCap) {
+                break;
+            }
+            detach(replica);
+            evicted.incrementAndGet();
+            victims.add(replica);
+        }
+        return victims;
+    }
+
+    private void detach(Replica replica) {
+        replica.closed = true;
+        open.remove(replica);
+        replica.owner.byThread.remove(replica.thread, replica);
+        memoryBytes -= replica.owner.weight;
+    }
+
+    /**
+     * Estimated heap of one replica of a document, at most a share of the cap
+     * that leaves room for {@link #MIN_REPLICAS} of them.
+     */
+    private synchronized long weightOf(PDDocument document) {
+        long objects = document.getDocument().getXrefTable().size();
+        long estimate = REPLICA_BASE_WEIGHT + objects * REPLICA_BYTES_PER_OBJECT;
+        if (memoryCap <= 0) {
+            return estimate;
+        }
+        return Math.max(1, Math.min(estimate, memoryCap / MIN_REPLICAS));
+    }
+
+    private void scheduleSweep() {
+        if (sweep == null && !open.isEmpty()) {
+            long period = Math.max(1, idleTimeoutMs / 2);
+            sweep = sweeper.scheduleWithFixedDelay(this::sweepIdle, period, period, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void sweepIdle() {
+        List<Replica> closed = new ArrayList<>();
+        synchronized (this) {
+            long cutoff = System.currentTimeMillis() - idleTimeoutMs;
+            for (Replica replica : new ArrayList<>(open)) {
+                if (!replica.busy && replica.lastUsed < cutoff) {
+                    detach(replica);
+                    closedIdle.incrementAndGet();
+                    closed.add(replica);
+                }
+            }
+            if (open.isEmpty() && sweep != null) {
+                sweep.cancel(false);
+                sweep = null;
+            }
+        }
+        if (!closed.isEmpty()) {
+            logger.debug("Closing {} idle render replicas", closed.size());
+        }
+        closeAll(closed);
+    }
+
+    private static void closeAll(List<Replica> replicas) {
+        for (Replica replica : replicas) {
+            closeQuietly(replica.document, replica.owner.source);
+        }
+    }
+
+    private static void closeQuietly(PDDocument document, File source) {
+        try {
+            document.close();
+        } catch (IOException e) {
+            logger.warn("Failed to close render replica of {}: {}", source.getName(), e.getMessage());
+        }
+    }
+
+    /**
+     * Replicas of one document. Owned by the document model and closed with it.
+     */
+    public final class Replicas implements AutoCloseable {
+        private final File source;
+        private final PDDocument primary;
+        private final PdfRendererRegistry renderers;
+        private final long weight;
+        private final long stampLength;
+        private final long stampModified;
+        private final Map<Thread, Replica> byThread = new ConcurrentHashMap<>();
+        private MappedFileRandomAccessRead mapping; // Guarded by this Replicas
+        private volatile boolean usable;
+        private volatile boolean closed;
+
+        private Replicas(File source, PDDocument primary, PdfRendererRegistry renderers) {
+            this.source = source;
+            this.primary = primary;
+            this.renderers = renderers;
+            this.stampLength = source != null ? source.length() : 0;
+            this.stampModified = source != null ? source.lastModified() : 0;
+            this.weight = weightOf(primary);
+            // Replicas are reloaded without a password, so encrypted documents render on the primary
+            this.usable = source != null && source.isFile() && !primary.isEncrypted();
+        }
+
+        /**
+         * Run a render task on the calling thread's replica, opening it if needed.
+         * Falls back to the primary document (serialised) when no replica is available.
+         */
+        public <T> T render(RenderTask<T> task) throws IOException {
+            Replica replica = acquire();
+            if (replica == null) {
+                primaryRenders.incrementAndGet();
+                synchronized (primary) {
+                    return task.render(renderers.get(), primary);
+                }
+            }
+            try {
+                replicaRenders.incrementAndGet();
+                return task.render(replica.renderer, replica.document);
+            } finally {
+                boolean closeNow;
+                synchronized (RenderFarm.this) {
+                    replica.lastUsed = System.currentTimeMillis();
+                    replica.busy = false;
+                    closeNow = replica.closeWhenDone;
+                }
+                if (closeNow) {
+                    closeQuietly(replica.document, source);
+                }
+            }
+        }
+
+        /**
+         * Number of replicas currently open for this document.
+         */
+        public int size() {
+            return byThread.size();
+        }
+
+        /**
+         * Close all replicas; later renders use the primary document.
+         */
+        @Override
+        public void close() {
+            closed = true;
+            List<Replica> toClose = new ArrayList<>();
+            synchronized (RenderFarm.this) {
+                for (Replica replica : new ArrayList<>(byThread.values())) {
+                    if (!replica.closed) {
+                        detach(replica);
+                        // A busy replica is closed by its thread when the render finishes
+                        if (!replica.busy) {
+                            toClose.add(replica);
+                        } else {
+                            replica.closeWhenDone = true;
+                        }
+                    }
+                }
+            }
+            closeAll(toClose);
+            synchronized (this) {
+                if (mapping != null) {
+                    mapping.close();
+                    mapping = null;
+                }
+            }
+        }
+
+        private Replica acquire() {
+            if (!usable || closed) {
+                return null;
+            }
+            Thread thread = Thread.currentThread();
+            List<Replica> toClose = new ArrayList<>();
+            boolean reserved;
+            synchronized (RenderFarm.this) {
+                Replica existing = byThread.get(thread);
+                if (existing != null && !existing.closed) {
+                    existing.busy = true;
+                    return existing;
+                }
+                reserved = reserve(weight, toClose);
+            }
+            closeAll(toClose);
+            if (!reserved) {
+                return null; // No room: render on the primary document
+            }
+
+            PDDocument document = openReplica();
+            synchronized (RenderFarm.this) {
+                if (document == null || closed) {
+                    memoryBytes -= weight;
+                } else {
+                    Replica replica = new Replica(this, thread, document);
+                    replica.busy = true;
+                    byThread.put(thread, replica);
+                    open.add(replica);
+                    opened.incrementAndGet();
+                    scheduleSweep();
+                    logger.trace("Opened render replica {} of {} for {}", byThread.size(), source.getName(),
+                            thread.getName());
+                    return replica;
+                }
+            }
+            if (document != null) {
+                closeQuietly(document, source);
+            }
+            return null;
+        }
+
+        private PDDocument openReplica() {
+            if (source.length() != stampLength || source.lastModified() != stampModified) {
+                logger.debug("{} changed on disk, rendering on the loaded document", source.getName());
+                usable = false;
+                return null;
+            }
+            RandomAccessRead read = null;
+            try {
+                read = openRead();
+                return Loader.loadPDF(read);
+            } catch (IOException e) {
+                logger.warn("Could not open render replica of {}: {}", source.getName(), e.getMessage());
+                usable = false;
+                if (read != null && !read.isClosed()) {
+                    try {
+                        read.close();
+                    } catch (IOException ignored) {
+                        // Nothing else to release
+                    }
+                }
+                return null;
+            }
+        }
+
+        private synchronized RandomAccessRead openRead() throws IOException {
+            if (mapping == null) {
+                RandomAccessRead read = PdfReadFactory.openRead(source, ReadBackend.MEMORY_MAPPED);
+                if (!(read instanceof MappedFileRandomAccessRead mapped)) {
+                    return read; // Mapping failed; each replica reads the file itself
+                }
+                mapping = mapped;
+            }
+            return mapping.duplicate();
+        }
+    }
+
+    private static final class Replica {
+        private final Replicas owner;
+        private final Thread thread;
+        private final PDDocument document;
+        private final PDFRenderer renderer;
+        // Guarded by the farm
+        private boolean busy;
+        private boolean closed;
+        private boolean closeWhenDone;
+        private long lastUsed = System.currentTimeMillis();
+
+        Replica(Replicas owner, Thread thread, PDDocument document) {
+            this.owner = owner;
+            this.thread = thread;
+            this.document = document;
+            this.renderer = new PDFRenderer(document);
+        }
+    }
+}
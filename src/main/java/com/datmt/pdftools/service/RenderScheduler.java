@@ -0,0 +1,336 @@
+package com.datmt.pdftools.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Priority scheduler for render requests from the UI.
+ * <p>
+ * Requests run in priority order (visible, then prefetch, then speculative);
+ * within a priority the newest generation goes first, and requests of one
+ * generation run in submission order. Each request carries a key; submitting a key
+ * that is already queued returns the queued request, raised to the better
+ * priority and moved to the newer generation. Requests are tied to a
+ * {@link Generation}; cancelling a generation when the viewport moves drops
+ * everything still queued for it. The queue is bounded: when it is full the
+ * least important request is dropped.
+ * <p>
+ * Running requests are never interrupted, since PDFBox rendering does not
+ * handle interruption.
+ */
+public class RenderScheduler {
+    private static final Logger logger = LoggerFactory.getLogger(RenderScheduler.class);
+
+    public static final int DEFAULT_MAX_QUEUE_DEPTH = 512;
+
+    /**
+     * Request priority, most urgent first.
+     */
+    public enum Priority {
+        VISIBLE,
+        PREFETCH,
+        SPECULATIVE
+    }
+
+    /**
+     * Cancellation token shared by the requests of one viewport state.
+     */
+    public static final class Generation {
+        private final long id;
+        private final AtomicBoolean cancelled = new AtomicBoolean();
+
+        private Generation(long id) {
+            this.id = id;
+        }
+
+        public boolean isCancelled() {
+            return cancelled.get();
+        }
+    }
+
+    /**
+     * Snapshot of scheduler metrics.
+     *
+     * @param queueDepth     Requests currently queued
+     * @param maxQueueDepth  Highest queue depth seen
+     * @param submitted      Requests submitted
+     * @param deduplicated   Submissions merged into an already queued request
+     * @param cancelled      Queued requests dropped by generation or key cancellation
+     * @param dropped        Queued requests dropped because the queue was full
+     * @param completed      Requests that ran successfully
+     * @param failed         Requests that threw
+     * @param meanWaitMs     Mean time from submission to start
+     * @param maxWaitMs      Longest time from submission to start
+     * @param meanRunMs      Mean run time
+     */
+    public record Metrics(int queueDepth, int maxQueueDepth, long submitted, long deduplicated, long cancelled,
+                          long dropped, long completed, long failed,
+                          double meanWaitMs, double maxWaitMs, double meanRunMs) {
+    }
+
+    private final String name;
+    private final int maxQueueDepth;
+    private final Thread[] workers;
+
+    // Guarded by this
+    private final TreeSet<Request<?>> queue = new TreeSet<>(Comparator
+            .comparing((Request<?> r) -> r.priority)
+            .thenComparing(r -> -r.generation.id)
+            .thenComparingLong(r -> r.sequence));
+    private final Map<Object, Request<?>> queuedByKey = new HashMap<>();
+    private long nextSequence;
+    private boolean shutdown;
+    private int maxQueueDepthSeen;
+
+    private final AtomicLong nextGeneration = new AtomicLong();
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong deduplicated = new AtomicLong();
+    private final AtomicLong cancelled = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong totalRunNanos = new AtomicLong();
+
+    public RenderScheduler(String name, int threads) {
+        this(name, threads, DEFAULT_MAX_QUEUE_DEPTH);
+    }
+
+    /**
+     * @param name          Thread name prefix
+     * @param threads       Number of render threads
+     * @param maxQueueDepth Maximum number of queued (not running) requests
+     */
+    public RenderScheduler(String name, int threads, int maxQueueDepth) {
+        this.name = name;
+        this.maxQueueDepth = Math.max(1, maxQueueDepth);
+        this.workers = new Thread[Math.max(1, threads)];
+        for (int i = 0; i < workers.length; i++) {
+            Thread worker = new Thread(this::runWorker, name + "-" + (i + 1));
+            worker.setDaemon(true);
+            workers[i] = worker;
+            worker.start();
+        }
+    }
+
+    /**
+     * Start a new generation. Requests submitted with it can be cancelled together.
+     */
+    public Generation newGeneration() {
+        return new Generation(nextGeneration.incrementAndGet());
+    }
+
+    /**
+     * Queue a render request.
+     *
+     * @param key        Identity of the work; a queued request with an equal key is reused
+     * @param priority   Request priority
+     * @param generation Generation the request belongs to
+     * @param task       The work to run on a render thread
+     * @return Future completed with the task's result, or cancelled if the request is dropped
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized <T> CompletableFuture<T> submit(Object key, Priority priority, Generation generation,
+                                                       Callable<T> task) {
+        submitted.incrementAndGet();
+        if (shutdown || generation.isCancelled()) {
+            cancelled.incrementAndGet();
+            return CompletableFuture.failedFuture(new CancellationException("Render request cancelled"));
+        }
+
+        Request<?> existing = queuedByKey.get(key);
+        if (existing != null) {
+            deduplicated.incrementAndGet();
+            update(existing, priority, generation);
+            return (CompletableFuture<T>) existing.future;
+        }
+
+        Request<T> request = new Request<>(key, priority, generation, nextSequence++, task);
+        queue.add(request);
+        queuedByKey.put(key, request);
+
+        if (queue.size() > maxQueueDepth) {
+            Request<?> victim = queue.pollLast();
+            queuedByKey.remove(victim.key);
+            dropped.incrementAndGet();
+            victim.future.cancel(false);
+            logger.trace("{} queue full, dropped {}", name, victim.key);
+        }
+        maxQueueDepthSeen = Math.max(maxQueueDepthSeen, queue.size());
+        notify();
+        return request.future;
+    }
+
+    /**
+     * Raise a queued request to the priority and move it to the generation,
+     * as a duplicate submission would, without supplying a task.
+     *
+     * @return false if the key is not queued (e.g. already running)
+     */
+    public synchronized boolean promote(Object key, Priority priority, Generation generation) {
+        Request<?> existing = queuedByKey.get(key);
+        if (existing == null || generation.isCancelled()) {
+            return false;
+        }
+        update(existing, priority, generation);
+        return true;
+    }
+
+    /**
+     * Cancel every queued request that still belongs to the generation.
+     */
+    public void cancel(Generation generation) {
+        generation.cancelled.set(true);
+        int count = 0;
+        synchronized (this) {
+            Iterator<Request<?>> it = queue.iterator();
+            while (it.hasNext()) {
+                Request<?> request = it.next();
+                if (request.generation == generation) {
+                    it.remove();
+                    queuedByKey.remove(request.key);
+                    request.future.cancel(false);
+                    count++;
+                }
+            }
+        }
+        cancelled.addAndGet(count);
+        if (count > 0) {
+            logger.trace("{} cancelled {} stale requests", name, count);
+        }
+    }
+
+    /**
+     * Cancel a queued request by key. Returns false if it is not queued (e.g. already running).
+     */
+    public synchronized boolean cancel(Object key) {
+        Request<?> request = queuedByKey.remove(key);
+        if (request == null) {
+            return false;
+        }
+        queue.remove(request);
+        request.future.cancel(false);
+        cancelled.incrementAndGet();
+        return true;
+    }
+
+    public synchronized int getQueueDepth() {
+        return queue.size();
+    }
+
+    public Metrics getMetrics() {
+        int depth;
+        int maxDepth;
+        synchronized (this) {
+            depth = queue.size();
+            maxDepth = maxQueueDepthSeen;
+        }
+        long started = completed.get() + failed.get();
+        double meanWait = started == 0 ? 0 : totalWaitNanos.get() / 1e6 / started;
+        double meanRun = started == 0 ? 0 : totalRunNanos.get() / 1e6 / started;
+        return new Metrics(depth, maxDepth, submitted.get(), deduplicated.get(), cancelled.get(), dropped.get(),
+                completed.get(), failed.get(), meanWait, maxWaitNanos.get() / 1e6, meanRun);
+    }
+
+    /**
+     * Cancel all queued requests and stop the render threads once their current request finishes.
+     */
+    public void shutdown() {
+        synchronized (this) {
+            shutdown = true;
+            for (Request<?> request : queue) {
+                request.future.cancel(false);
+            }
+            cancelled.addAndGet(queue.size());
+            queue.clear();
+            queuedByKey.clear();
+            notifyAll();
+        }
+        logger.debug("{} shut down: {}", name, getMetrics());
+    }
+
+    /**
+     * Re-sort a queued request under the better priority and the newer generation.
+     */
+    private void update(Request<?> request, Priority priority, Generation generation) {
+        queue.remove(request);
+        if (priority.compareTo(request.priority) < 0) {
+            request.priority = priority;
+        }
+        if (generation.id > request.generation.id) {
+            request.generation = generation;
+        }
+        queue.add(request);
+    }
+
+    private void runWorker() {
+        while (true) {
+            Request<?> request;
+            synchronized (this) {
+                while (queue.isEmpty() && !shutdown) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (shutdown) {
+                    return;
+                }
+                request = queue.pollFirst();
+                queuedByKey.remove(request.key);
+            }
+            request.run();
+        }
+    }
+
+    private final class Request<T> {
+        private final Object key;
+        private final long sequence;
+        private final Callable<T> task;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private final long submittedAt = System.nanoTime();
+        private Priority priority;
+        private Generation generation;
+
+        Request(Object key, Priority priority, Generation generation, long sequence, Callable<T> task) {
+            this.key = key;
+            this.priority = priority;
+            this.generation = generation;
+            this.sequence = sequence;
+            this.task = task;
+        }
+
+        void run() {
+            if (future.isDone()) {
+                return;
+            }
+            long start = System.nanoTime();
+            long wait = start - submittedAt;
+            totalWaitNanos.addAndGet(wait);
+            maxWaitNanos.accumulateAndGet(wait, Math::max);
+            try {
+                T result = task.call();
+                completed.incrementAndGet();
+                future.complete(result);
+            } catch (Throwable t) {
+                failed.incrementAndGet();
+                future.completeExceptionally(t);
+            } finally {
+                totalRunNanos.addAndGet(System.nanoTime() - start);
+            }
+        }
+    }
+}
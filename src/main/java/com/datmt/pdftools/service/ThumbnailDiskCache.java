@@ -0,0 +1,439 @@
+package com.datmt.pdftools.service;
+
+import com.datmt.pdftools.service.image.ColorMode;
+import com.datmt.pdftools.service.image.PackedImage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * Persistent thumbnail store shared across sessions and tools.
+ * <p>
+ * Thumbnails are keyed by a content fingerprint of the PDF (size plus the
+ * first and last megabyte, which include the trailer /ID), the page, the
+ * resolution and the colour mode, so a renamed or copied file still hits.
+ * Grey and 1-bit thumbnails are stored as grey and 1-bit PNGs. Each document
+ * gets one container file with an offset index followed by PNG blobs. New thumbnails are buffered in
+ * memory and written in batches: the container is rewritten to a temp file
+ * and atomically renamed into place. The directory is kept under a size cap
+ * by deleting the least recently used containers.
+ */
+public final class ThumbnailDiskCache {
+    private static final Logger logger = LoggerFactory.getLogger(ThumbnailDiskCache.class);
+
+    public static final long DEFAULT_SIZE_CAP = 256L * 1024 * 1024;
+    private static final String CONTAINER_SUFFIX = ".thumbs";
+    private static final int MAGIC = 0x50445443; // "PDTC"
+    private static final short FORMAT_VERSION = 2;
+    private static final int FINGERPRINT_CHUNK = 1024 * 1024;
+    private static final int FLUSH_THRESHOLD = 64;  // pending thumbnails per document before a write
+
+    private static final ThumbnailDiskCache INSTANCE = new ThumbnailDiskCache(defaultCacheDirectory());
+
+    private final Path directory;
+    private volatile long sizeCap = DEFAULT_SIZE_CAP;
+    private volatile boolean enabled = true;
+
+    // Fingerprints memoized by path, size and modification time
+    private final Map<String, String> fingerprints = new ConcurrentHashMap<>();
+    // Parsed indexes of containers on disk, by fingerprint
+    private final Map<String, Container> containers = new ConcurrentHashMap<>();
+    // Encoded thumbnails not yet written, by fingerprint
+    private final Map<String, Map<EntryKey, byte[]>> pending = new HashMap<>();
+
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "thumbnail-cache-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private ThumbnailDiskCache(Path directory) {
+        this.directory = directory;
+    }
+
+    public static ThumbnailDiskCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Platform cache directory: %LOCALAPPDATA% on Windows, ~/Library/Caches on
+     * macOS, $XDG_CACHE_HOME or ~/.cache elsewhere.
+     */
+    static Path defaultCacheDirectory() {
+        String os = System.getProperty("os.name").toLowerCase();
+        String home = System.getProperty("user.home");
+        Path base;
+        if (os.contains("win")) {
+            String localAppData = System.getenv("LOCALAPPDATA");
+            base = localAppData != null ? Paths.get(localAppData) : Paths.get(home, "AppData", "Local");
+        } else if (os.contains("mac")) {
+            base = Paths.get(home, "Library", "Caches");
+        } else {
+            String xdg = System.getenv("XDG_CACHE_HOME");
+            base = xdg != null && !xdg.isEmpty() ? Paths.get(xdg) : Paths.get(home, ".cache");
+        }
+        return base.resolve("pdf-tools").resolve("thumbnails");
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Set the maximum total size of all containers in bytes.
+     */
+    public void setSizeCap(long bytes) {
+        this.sizeCap = Math.max(0, bytes);
+    }
+
+    public long getSizeCap() {
+        return sizeCap;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Look up a thumbnail.
+     *
+     * @param file      The source PDF
+     * @param pageIndex 0-based page index
+     * @param dpi       Resolution the thumbnail was rendered at
+     * @param mode      Colour mode the thumbnail was requested in
+     * @return The thumbnail, or null if it is not cached
+     */
+    public PackedImage get(File file, int pageIndex, float dpi, ColorMode mode) {
+        if (!enabled) {
+            return null;
+        }
+        try {
+            String fingerprint = fingerprint(file);
+            EntryKey key = new EntryKey(pageIndex, dpi, mode);
+
+            byte[] bytes;
+            synchronized (pending) {
+                Map<EntryKey, byte[]> docPending = pending.get(fingerprint);
+                bytes = docPending != null ? docPending.get(key) : null;
+            }
+            if (bytes == null) {
+                Container container = container(fingerprint);
+                bytes = container != null ? container.read(key) : null;
+            }
+            if (bytes == null) {
+                return null;
+            }
+            BufferedImage image = ImageIO.read(new ByteArrayInputStream(bytes));
+            return image == null ? null : PackedImage.of(image);
+        } catch (IOException e) {
+            logger.debug("Thumbnail cache read failed for {} page {}: {}", file.getName(), pageIndex, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Store a thumbnail. It is buffered and written with the next batch for its document.
+     *
+     * @param mode  Colour mode the thumbnail was requested in (the lookup key)
+     * @param image The thumbnail, packed in its resolved mode
+     */
+    public void put(File file, int pageIndex, float dpi, ColorMode mode, PackedImage image) {
+        if (!enabled) {
+            return;
+        }
+        try {
+            String fingerprint = fingerprint(file);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            if (!ImageIO.write(image.toBufferedImage(), "png", out)) {
+                return;
+            }
+            boolean flush;
+            synchronized (pending) {
+                Map<EntryKey, byte[]> docPending = pending.computeIfAbsent(fingerprint, k -> new HashMap<>());
+                docPending.put(new EntryKey(pageIndex, dpi, mode), out.toByteArray());
+                flush = docPending.size() >= FLUSH_THRESHOLD;
+            }
+            if (flush) {
+                writer.submit(() -> write(fingerprint));
+            }
+        } catch (IOException e) {
+            logger.debug("Thumbnail cache write failed for {} page {}: {}", file.getName(), pageIndex, e.getMessage());
+        }
+    }
+
+    /**
+     * Write all buffered thumbnails and wait for the writes to finish.
+     */
+    public void flushAll() {
+        List<String> documents;
+        synchronized (pending) {
+            documents = new ArrayList<>(pending.keySet());
+        }
+        List<Future<?>> writes = new ArrayList<>();
+        for (String fingerprint : documents) {
+            writes.add(writer.submit(() -> write(fingerprint)));
+        }
+        for (Future<?> write : writes) {
+            try {
+                write.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                logger.warn("Thumbnail cache flush failed: {}", e.getCause().getMessage());
+            }
+        }
+    }
+
+    /**
+     * Compute (or recall) the content fingerprint of a file.
+     */
+    String fingerprint(File file) throws IOException {
+        String stampKey = file.getCanonicalPath() + '|' + file.length() + '|' + file.lastModified();
+        String cached = fingerprints.get(stampKey);
+        if (cached != null) {
+            return cached;
+        }
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("SHA-256 not available", e);
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            long length = raf.length();
+            digest.update(Long.toString(length).getBytes());
+            byte[] buffer = new byte[(int) Math.min(FINGERPRINT_CHUNK, length)];
+            raf.readFully(buffer);
+            digest.update(buffer);
+            if (length > FINGERPRINT_CHUNK) {
+                buffer = new byte[(int) Math.min(FINGERPRINT_CHUNK, length - FINGERPRINT_CHUNK)];
+                raf.seek(length - buffer.length);
+                raf.readFully(buffer);
+                digest.update(buffer);
+            }
+        }
+        String fingerprint = HexFormat.of().formatHex(digest.digest(), 0, 16);
+        fingerprints.put(stampKey, fingerprint);
+        return fingerprint;
+    }
+
+    private Container container(String fingerprint) throws IOException {
+        Container container = containers.get(fingerprint);
+        if (container != null) {
+            return container;
+        }
+        Path path = directory.resolve(fingerprint + CONTAINER_SUFFIX);
+        if (!Files.exists(path)) {
+            return null;
+        }
+        container = Container.open(path);
+        containers.put(fingerprint, container);
+        // Mark as recently used for LRU cleanup
+        Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+        return container;
+    }
+
+    /**
+     * Merge buffered thumbnails into the document's container. Runs on the writer thread.
+     */
+    private void write(String fingerprint) {
+        Map<EntryKey, byte[]> docPending;
+        synchronized (pending) {
+            docPending = pending.remove(fingerprint);
+        }
+        if (docPending == null || docPending.isEmpty()) {
+            return;
+        }
+
+        Path target = directory.resolve(fingerprint + CONTAINER_SUFFIX);
+        Path temp = directory.resolve(fingerprint + CONTAINER_SUFFIX + ".tmp");
+        try {
+            Files.createDirectories(directory);
+
+            // Existing entries first, then new ones (new entries win)
+            Map<EntryKey, byte[]> entries = new LinkedHashMap<>();
+            try {
+                Container existing = container(fingerprint);
+                if (existing != null) {
+                    entries.putAll(existing.readAll());
+                }
+            } catch (IOException e) {
+                // Unreadable or foreign container: start over
+                logger.debug("Replacing unreadable thumbnail container {}: {}", target.getFileName(), e.getMessage());
+            }
+            entries.putAll(docPending);
+
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp))) {
+                writeContainer(out, entries);
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            containers.put(fingerprint, Container.open(target));
+            logger.debug("Wrote {} thumbnails to cache container {}", entries.size(), target.getFileName());
+
+            enforceSizeCap(target);
+        } catch (IOException e) {
+            logger.warn("Failed to write thumbnail cache container {}: {}", target.getFileName(), e.getMessage());
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException ignored) {
+                // Best effort
+            }
+        }
+    }
+
+    private static void writeContainer(OutputStream stream, Map<EntryKey, byte[]> entries) throws IOException {
+        DataOutputStream out = new DataOutputStream(stream);
+        int headerSize = 4 + 2 + 4;
+        int indexEntrySize = 4 + 4 + 1 + 8 + 4;
+        long offset = headerSize + (long) indexEntrySize * entries.size();
+
+        out.writeInt(MAGIC);
+        out.writeShort(FORMAT_VERSION);
+        out.writeInt(entries.size());
+        for (Map.Entry<EntryKey, byte[]> entry : entries.entrySet()) {
+            out.writeInt(entry.getKey().pageIndex());
+            out.writeFloat(entry.getKey().dpi());
+            out.writeByte(entry.getKey().mode().ordinal());
+            out.writeLong(offset);
+            out.writeInt(entry.getValue().length);
+            offset += entry.getValue().length;
+        }
+        for (byte[] bytes : entries.values()) {
+            out.write(bytes);
+        }
+        out.flush();
+    }
+
+    /**
+     * Delete least recently used containers until the directory fits the size cap.
+     */
+    private void enforceSizeCap(Path keep) throws IOException {
+        List<Path> files;
+        try (Stream<Path> stream = Files.list(directory)) {
+            files = stream.filter(p -> p.getFileName().toString().endsWith(CONTAINER_SUFFIX)).toList();
+        }
+        long total = 0;
+        Map<Path, Long> sizes = new HashMap<>();
+        Map<Path, Long> modified = new HashMap<>();
+        for (Path path : files) {
+            long size = Files.size(path);
+            sizes.put(path, size);
+            modified.put(path, Files.getLastModifiedTime(path).toMillis());
+            total += size;
+        }
+        if (total <= sizeCap) {
+            return;
+        }
+        List<Path> oldestFirst = new ArrayList<>(files);
+        oldestFirst.sort(Comparator.comparing(modified::get));
+        for (Path path : oldestFirst) {
+            if (total <= sizeCap) {
+                break;
+            }
+            if (path.equals(keep)) {
+                continue;
+            }
+            Files.deleteIfExists(path);
+            total -= sizes.get(path);
+            String name = path.getFileName().toString();
+            containers.remove(name.substring(0, name.length() - CONTAINER_SUFFIX.length()));
+            logger.debug("Evicted thumbnail cache container {}", name);
+        }
+    }
+
+    private record EntryKey(int pageIndex, float dpi, ColorMode mode) {
+    }
+
+    /**
+     * Parsed index of a container file. Blobs are read on demand.
+     */
+    private record Container(Path path, Map<EntryKey, long[]> index) {
+
+        static Container open(Path path) throws IOException {
+            try (InputStream in = Files.newInputStream(path);
+                 DataInputStream data = new DataInputStream(new BufferedInputStream(in))) {
+                if (data.readInt() != MAGIC || data.readShort() != FORMAT_VERSION) {
+                    throw new IOException("Unsupported thumbnail container " + path.getFileName());
+                }
+                int count = data.readInt();
+                Map<EntryKey, long[]> index = new LinkedHashMap<>();
+                for (int i = 0; i < count; i++) {
+                    int pageIndex = data.readInt();
+                    float dpi = data.readFloat();
+                    int mode = data.readUnsignedByte();
+                    if (mode >= ColorMode.values().length) {
+                        throw new IOException("Unknown colour mode in " + path.getFileName());
+                    }
+                    EntryKey key = new EntryKey(pageIndex, dpi, ColorMode.values()[mode]);
+                    index.put(key, new long[]{data.readLong(), data.readInt()});
+                }
+                return new Container(path, index);
+            }
+        }
+
+        byte[] read(EntryKey key) throws IOException {
+            long[] location = index.get(key);
+            if (location == null) {
+                return null;
+            }
+            try (RandomAccessFile raf = new RandomAccessFile(path.toFile(), "r")) {
+                byte[] bytes = new byte[(int) location[1]];
+                raf.seek(location[0]);
+                raf.readFully(bytes);
+                return bytes;
+            }
+        }
+
+        Map<EntryKey, byte[]> readAll() throws IOException {
+            Map<EntryKey, byte[]> all = new LinkedHashMap<>();
+            try (RandomAccessFile raf = new RandomAccessFile(path.toFile(), "r")) {
+                for (Map.Entry<EntryKey, long[]> entry : index.entrySet()) {
+                    byte[] bytes = new byte[(int) entry.getValue()[1]];
+                    raf.seek(entry.getValue()[0]);
+                    raf.readFully(bytes);
+                    all.put(entry.getKey(), bytes);
+                }
+            }
+            return all;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.datmt.pdftools.service.image;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+/**
+ * Colour mode in which rendered pages are kept.
+ * <p>
+ * Most pages are black text on white, so storing them as 8-bit grey or packed
+ * 1-bit instead of 24/32-bit colour cuts memory and cache size by 3-32x.
+ * {@link #AUTO} picks the smallest mode that keeps the page's look, from a
+ * sample of its rendered pixels.
+ */
+public enum ColorMode {
+    /**
+     * Detect per page: BINARY for pure black and white, GRAY for monochrome, else RGB.
+     */
+    AUTO,
+    RGB,
+    GRAY,
+    BINARY;
+
+    // Max difference between channels of a pixel that still counts as grey (JPEG scans are noisy)
+    private static final int CHROMA_TOLERANCE = 12;
+    // Max distance from black or white for a pixel to count as 1-bit
+    private static final int BINARY_TOLERANCE = 24;
+    // Detection looks at roughly this many pixels, whatever the image size
+    private static final int DETECTION_SAMPLES = 64 * 1024;
+
+    /**
+     * Bytes needed to store an image of the given size in this mode (RGB for AUTO).
+     */
+    public long sizeOf(int width, int height) {
+        return switch (this) {
+            case GRAY -> (long) width * height;
+            case BINARY -> (long) ((width + 7) / 8) * height;
+            default -> (long) width * height * 3;
+        };
+    }
+
+    /**
+     * Resolve AUTO for the given pixels; other modes are returned as is.
+     */
+    public ColorMode resolve(int[] argb, int length) {
+        return this == AUTO ? detect(argb, length) : this;
+    }
+
+    /**
+     * Pick the smallest mode that represents the pixels, checking an evenly
+     * spaced sample of them.
+     *
+     * @param argb   Opaque pixels, 0xAARRGGBB (premultiplied or not)
+     * @param length Number of pixels to consider
+     */
+    public static ColorMode detect(int[] argb, int length) {
+        int step = Math.max(1, length / DETECTION_SAMPLES);
+        boolean binary = true;
+        for (int i = 0; i < length; i += step) {
+            int pixel = argb[i];
+            int r = (pixel >> 16) & 0xff;
+            int g = (pixel >> 8) & 0xff;
+            int b = pixel & 0xff;
+            if (Math.abs(r - g) > CHROMA_TOLERANCE || Math.abs(g - b) > CHROMA_TOLERANCE
+                    || Math.abs(r - b) > CHROMA_TOLERANCE) {
+                return RGB;
+            }
+            if (binary && g > BINARY_TOLERANCE && g < 255 - BINARY_TOLERANCE) {
+                binary = false;
+            }
+        }
+        return binary ? BINARY : GRAY;
+    }
+
+    /**
+     * Luminance of an opaque pixel, 0-255.
+     */
+    public static int luminance(int argb) {
+        return (((argb >> 16) & 0xff) * 77 + ((argb >> 8) & 0xff) * 150 + (argb & 0xff) * 29) >> 8;
+    }
+
+    /**
+     * Convert an opaque image to this mode, detecting it first for AUTO.
+     * RGB returns the image unchanged.
+     */
+    public BufferedImage convert(BufferedImage image) {
+        ColorMode mode = this;
+        if (mode == AUTO) {
+            int[] pixels = image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+            mode = detect(pixels, pixels.length);
+        }
+        int type = switch (mode) {
+            case GRAY -> BufferedImage.TYPE_BYTE_GRAY;
+            case BINARY -> BufferedImage.TYPE_BYTE_BINARY;
+            default -> image.getType();
+        };
+        if (type == image.getType()) {
+            return image;
+        }
+        BufferedImage converted = new BufferedImage(image.getWidth(), image.getHeight(), type);
+        Graphics2D graphics = converted.createGraphics();
+        try {
+            graphics.drawImage(image, 0, 0, null);
+        } finally {
+            graphics.dispose();
+        }
+        return converted;
+    }
+}
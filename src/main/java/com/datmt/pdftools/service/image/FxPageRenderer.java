@@ -0,0 +1,190 @@
+package com.datmt.pdftools.service.image;
+
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelBuffer;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.apache.pdfbox.rendering.RenderDestination;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.color.ColorSpace;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.lang.ref.Cleaner;
+import java.nio.IntBuffer;
+
+/**
+ * Renders PDF pages straight into memory shared with a JavaFX image.
+ * <p>
+ * The page is drawn into an INT_ARGB_PRE {@link BufferedImage} whose pixel
+ * array is also wrapped by a {@link PixelBuffer}, so no second full-size copy
+ * is made as with {@code SwingFXUtils.toFXImage}. Pixel arrays come from
+ * {@link IntBufferPool} and go back to it once the JavaFX image is garbage collected.
+ */
+public final class FxPageRenderer {
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private static final DirectColorModel ARGB_PRE = new DirectColorModel(
+            ColorSpace.getInstance(ColorSpace.CS_sRGB), 32,
+            0x00ff0000, 0x0000ff00, 0x000000ff, 0xff000000, true, DataBuffer.TYPE_INT);
+
+    private FxPageRenderer() {
+    }
+
+    /**
+     * Render a page on a white background.
+     *
+     * @param renderer  Renderer for the document (confined to the calling thread)
+     * @param document  The document the renderer belongs to
+     * @param pageIndex 0-based page index
+     * @param dpi       Resolution in dots per inch
+     * @return JavaFX image sharing the rendered pixels
+     * @throws IOException If rendering fails
+     */
+    public static Image render(PDFRenderer renderer, PDDocument document, int pageIndex, float dpi) throws IOException {
+        int[] size = PageGeometry.pixelSize(document.getPage(pageIndex), dpi);
+        return renderRegion(renderer, pageIndex, dpi, 0, 0, size[0], size[1]);
+    }
+
+    /**
+     * Render a page with the hints and image subsampling of a quality tier.
+     * The renderer's settings are restored afterwards.
+     */
+    public static Image render(PDFRenderer renderer, PDDocument document, int pageIndex, float dpi,
+                               RenderQuality quality) throws IOException {
+        RenderingHints previousHints = renderer.getRenderingHints();
+        boolean previousSubsampling = renderer.isSubsamplingAllowed();
+        renderer.setRenderingHints(quality.getHints());
+        renderer.setSubsamplingAllowed(quality.isSubsamplingAllowed());
+        try {
+            return render(renderer, document, pageIndex, dpi);
+        } finally {
+            renderer.setRenderingHints(previousHints);
+            renderer.setSubsamplingAllowed(previousSubsampling);
+        }
+    }
+
+    /**
+     * Render a quick, low-quality version of a page for progressive display.
+     * Antialiasing is switched off and embedded images may be subsampled.
+     */
+    public static Image renderDraft(PDFRenderer renderer, PDDocument document, int pageIndex, float dpi) throws IOException {
+        return render(renderer, document, pageIndex, dpi, RenderQuality.DRAFT);
+    }
+
+    /**
+     * Render a rectangle of a page, e.g. one tile of a high-zoom view.
+     * Coordinates are in pixels of the full page rendered at the given DPI.
+     *
+     * @param renderer  Renderer for the document (confined to the calling thread)
+     * @param pageIndex 0-based page index
+     * @param dpi       Resolution in dots per inch
+     * @param x         Left edge of the region
+     * @param y         Top edge of the region
+     * @param width     Region width in pixels
+     * @param height    Region height in pixels
+     * @return JavaFX image of the region
+     * @throws IOException If rendering fails
+     */
+    public static Image renderRegion(PDFRenderer renderer, int pageIndex, float dpi,
+                                     int x, int y, int width, int height) throws IOException {
+        if ((long) width * height > Integer.MAX_VALUE) {
+            throw new IOException("Page " + pageIndex + " is too large to render at " + dpi + " DPI");
+        }
+        float scale = dpi / 72f;
+
+        IntBufferPool pool = IntBufferPool.getInstance();
+        int[] pixels = pool.acquire(width * height);
+        try {
+            BufferedImage target = wrap(pixels, width, height);
+            Graphics2D graphics = target.createGraphics();
+            try {
+                // Pooled pixels hold a previous image, and renderPageToGraphics only
+                // clears the truncated page size, which can miss the last row and column
+                graphics.setBackground(Color.WHITE);
+                graphics.clearRect(0, 0, width, height);
+                graphics.translate(-x, -y);
+                graphics.clipRect(x, y, width, height);
+                renderer.renderPageToGraphics(pageIndex, graphics, scale, scale, RenderDestination.EXPORT);
+            } finally {
+                graphics.dispose();
+            }
+        } catch (IOException | RuntimeException e) {
+            pool.release(pixels);
+            throw e;
+        }
+
+        return toImage(pixels, width, height);
+    }
+
+    /**
+     * Draw an image scaled to the given size on a white background, turned
+     * clockwise by a page's /Rotate, e.g. an embedded page image or thumbnail.
+     *
+     * @param source   Image in unrotated page orientation
+     * @param width    Target width in pixels (display orientation)
+     * @param height   Target height in pixels (display orientation)
+     * @param rotation Page rotation in degrees (0, 90, 180 or 270)
+     * @return JavaFX image of the drawn pixels
+     */
+    public static Image drawImage(BufferedImage source, int width, int height, int rotation) {
+        boolean quarterTurn = rotation == 90 || rotation == 270;
+        double scaleX = (double) (quarterTurn ? height : width) / source.getWidth();
+        double scaleY = (double) (quarterTurn ? width : height) / source.getHeight();
+        AffineTransform transform = switch (rotation) {
+            case 90 -> new AffineTransform(0, scaleX, -scaleY, 0, width, 0);
+            case 180 -> new AffineTransform(-scaleX, 0, 0, -scaleY, width, height);
+            case 270 -> new AffineTransform(0, -scaleX, scaleY, 0, 0, height);
+            default -> AffineTransform.getScaleInstance(scaleX, scaleY);
+        };
+
+        IntBufferPool pool = IntBufferPool.getInstance();
+        int[] pixels = pool.acquire(width * height);
+        BufferedImage target = wrap(pixels, width, height);
+        Graphics2D graphics = target.createGraphics();
+        try {
+            graphics.setBackground(Color.WHITE);
+            graphics.clearRect(0, 0, width, height);
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(source, transform, null);
+        } finally {
+            graphics.dispose();
+        }
+
+        return toImage(pixels, width, height);
+    }
+
+    /**
+     * Share pooled INT_ARGB_PRE pixels with a JavaFX image. The array goes back
+     * to {@link IntBufferPool} once the image is garbage collected.
+     */
+    static Image toImage(int[] pixels, int width, int height) {
+        PixelBuffer<IntBuffer> buffer = new PixelBuffer<>(width, height, IntBuffer.wrap(pixels),
+                PixelFormat.getIntArgbPreInstance());
+        WritableImage image = new WritableImage(buffer);
+        IntBufferPool pool = IntBufferPool.getInstance();
+        CLEANER.register(image, () -> pool.release(pixels));
+        return image;
+    }
+
+    /**
+     * Wrap a pixel array of {@code width * height} pixels as an INT_ARGB_PRE image.
+     */
+    static BufferedImage wrap(int[] pixels, int width, int height) {
+        DataBufferInt dataBuffer = new DataBufferInt(pixels, width * height);
+        WritableRaster raster = Raster.createPackedRaster(dataBuffer, width, height, width,
+                new int[]{0x00ff0000, 0x0000ff00, 0x000000ff, 0xff000000}, null);
+        return new BufferedImage(ARGB_PRE, raster, true, null);
+    }
+}
@@ -0,0 +1,146 @@
+package com.datmt.pdftools.service.image;
+
+import org.apache.pdfbox.contentstream.PDFStreamEngine;
+import org.apache.pdfbox.contentstream.operator.DrawObject;
+import org.apache.pdfbox.contentstream.operator.Operator;
+import org.apache.pdfbox.contentstream.operator.state.Concatenate;
+import org.apache.pdfbox.contentstream.operator.state.Restore;
+import org.apache.pdfbox.contentstream.operator.state.Save;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotation;
+import org.apache.pdfbox.util.Matrix;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Where the images of a document are drawn and at what resolution they are
+ * shown. Page and annotation content is run through a {@link PDFStreamEngine}
+ * that follows the current transformation matrix into forms; at each image
+ * {@code Do} the matrix gives the size the image's unit square is drawn at.
+ * Results are kept per image stream, merged over all the places it is drawn.
+ * <p>
+ * Images drawn only by patterns or Type 3 glyphs are not seen and have no placement.
+ */
+public final class ImagePlacements {
+    private static final Logger logger = LoggerFactory.getLogger(ImagePlacements.class);
+
+    /**
+     * How an image is shown, over all the places it is drawn.
+     *
+     * @param effectiveDpi Lowest resolution it is shown at, over both axes and all uses
+     * @param width        Displayed width in points where it is shown at that resolution
+     * @param height       Displayed height in points where it is shown at that resolution
+     * @param uses         Number of times the image is drawn
+     */
+    public record Placement(float effectiveDpi, float width, float height, int uses) {
+
+        /**
+         * Combined placement of an image drawn in both places.
+         */
+        public Placement merge(Placement other) {
+            Placement sharpest = other.effectiveDpi < effectiveDpi ? other : this;
+            return new Placement(sharpest.effectiveDpi, sharpest.width, sharpest.height, uses + other.uses);
+        }
+    }
+
+    private final Map<COSStream, Placement> placements = new IdentityHashMap<>();
+    private final Engine engine = new Engine();
+
+    /**
+     * Analyse every page of a document. Pages that cannot be parsed are skipped.
+     */
+    public static ImagePlacements analyze(PDDocument document) {
+        ImagePlacements placements = new ImagePlacements();
+        int pageIndex = 0;
+        for (PDPage page : document.getPages()) {
+            try {
+                placements.analyze(page);
+            } catch (IOException | RuntimeException e) {
+                logger.debug("Could not analyse images on page {}: {}", pageIndex, e.getMessage());
+            }
+            pageIndex++;
+        }
+        logger.debug("Found placements for {} images on {} pages", placements.placements.size(), pageIndex);
+        return placements;
+    }
+
+    /**
+     * Add the images drawn by a page and its annotation appearances.
+     */
+    public void analyze(PDPage page) throws IOException {
+        engine.processPage(page);
+        for (PDAnnotation annotation : page.getAnnotations()) {
+            engine.showAnnotation(annotation);
+        }
+    }
+
+    /**
+     * Placement of an image stream, or null if it is not drawn by any analysed page.
+     */
+    public Placement get(COSStream image) {
+        return placements.get(image);
+    }
+
+    public int size() {
+        return placements.size();
+    }
+
+    private void record(COSStream image, Matrix ctm) {
+        int pixelWidth = image.getInt(COSName.WIDTH);
+        int pixelHeight = image.getInt(COSName.HEIGHT);
+        // The image's unit square is drawn as the parallelogram spanned by the matrix's axes
+        float width = (float) Math.hypot(ctm.getValue(0, 0), ctm.getValue(0, 1));
+        float height = (float) Math.hypot(ctm.getValue(1, 0), ctm.getValue(1, 1));
+        if (pixelWidth <= 0 || pixelHeight <= 0 || width <= 0 || height <= 0) {
+            return;
+        }
+        float dpi = Math.min(pixelWidth * 72f / width, pixelHeight * 72f / height);
+        placements.merge(image, new Placement(dpi, width, height, 1), Placement::merge);
+    }
+
+    private final class Engine extends PDFStreamEngine {
+
+        Engine() {
+            addOperator(new Save(this));
+            addOperator(new Restore(this));
+            addOperator(new Concatenate(this));
+            addOperator(new DrawImage(this));
+        }
+    }
+
+    /**
+     * Records image draws; forms are entered as by the standard {@code Do}.
+     */
+    private final class DrawImage extends DrawObject {
+
+        DrawImage(PDFStreamEngine context) {
+            super(context);
+        }
+
+        @Override
+        public void process(Operator operator, List<COSBase> operands) throws IOException {
+            if (!operands.isEmpty() && operands.get(0) instanceof COSName name) {
+                PDResources resources = getContext().getResources();
+                COSDictionary xobjects = resources != null
+                        ? resources.getCOSObject().getCOSDictionary(COSName.XOBJECT) : null;
+                if (xobjects != null && xobjects.getDictionaryObject(name) instanceof COSStream stream
+                        && COSName.IMAGE.equals(stream.getCOSName(COSName.SUBTYPE))) {
+                    record(stream, getContext().getGraphicsState().getCurrentTransformationMatrix());
+                    return;
+                }
+            }
+            super.process(operator, operands);
+        }
+    }
+}
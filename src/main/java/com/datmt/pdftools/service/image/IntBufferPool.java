@@ -0,0 +1,131 @@
+package com.datmt.pdftools.service.image;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of pixel arrays for rendered pages.
+ * Arrays are pooled by exact length: they end up as the pixels of cached and
+ * displayed images, so an array any larger than its image would be held for
+ * the image's lifetime. Pages of one document rendered at one resolution,
+ * tiles and thumbnails mostly share a few sizes, so exact lengths reuse well.
+ * The pool retains at most {@link #getMaxRetainedBytes()} bytes, dropping the
+ * sizes released longest ago first; anything beyond that is left to the GC.
+ */
+public final class IntBufferPool {
+    private static final Logger logger = LoggerFactory.getLogger(IntBufferPool.class);
+
+    public static final long DEFAULT_MAX_RETAINED_BYTES = 128L * 1024 * 1024;
+    private static final int MAX_PER_SIZE = 8;
+
+    private static final IntBufferPool INSTANCE = new IntBufferPool();
+
+    // Access-ordered by length: iteration starts at the size released longest ago
+    private final LinkedHashMap<Integer, ArrayDeque<int[]>> bySize = new LinkedHashMap<>(16, 0.75f, true);
+    private long maxRetainedBytes = DEFAULT_MAX_RETAINED_BYTES;
+    private long retainedBytes;
+
+    private final AtomicLong reused = new AtomicLong();
+    private final AtomicLong allocated = new AtomicLong();
+
+    private IntBufferPool() {
+    }
+
+    public static IntBufferPool getInstance() {
+        return INSTANCE;
+    }
+
+    public synchronized void setMaxRetainedBytes(long bytes) {
+        maxRetainedBytes = Math.max(0, bytes);
+        trim();
+    }
+
+    public synchronized long getMaxRetainedBytes() {
+        return maxRetainedBytes;
+    }
+
+    /**
+     * Get an array of exactly the given number of pixels. Contents are undefined.
+     */
+    public int[] acquire(int pixels) {
+        synchronized (this) {
+            ArrayDeque<int[]> pooled = bySize.get(pixels);
+            if (pooled != null) {
+                int[] array = pooled.pollFirst();
+                if (pooled.isEmpty()) {
+                    bySize.remove(pixels);
+                }
+                retainedBytes -= (long) array.length * 4;
+                reused.incrementAndGet();
+                return array;
+            }
+        }
+        allocated.incrementAndGet();
+        return new int[pixels];
+    }
+
+    /**
+     * Return an array to the pool. The caller must not use it afterwards.
+     */
+    public void release(int[] array) {
+        if (array == null || array.length == 0) {
+            return;
+        }
+        long bytes = (long) array.length * 4;
+        synchronized (this) {
+            if (bytes > maxRetainedBytes) {
+                return;
+            }
+            ArrayDeque<int[]> pooled = bySize.computeIfAbsent(array.length, k -> new ArrayDeque<>());
+            if (pooled.size() >= MAX_PER_SIZE) {
+                return;
+            }
+            pooled.addFirst(array);
+            retainedBytes += bytes;
+            trim();
+        }
+    }
+
+    /**
+     * Drop all pooled arrays.
+     */
+    public synchronized void clear() {
+        bySize.clear();
+        retainedBytes = 0;
+    }
+
+    public long getReusedCount() {
+        return reused.get();
+    }
+
+    public long getAllocatedCount() {
+        return allocated.get();
+    }
+
+    public synchronized long getRetainedBytes() {
+        return retainedBytes;
+    }
+
+    private void trim() {
+        if (retainedBytes <= maxRetainedBytes) {
+            return;
+        }
+        Iterator<Map.Entry<Integer, ArrayDeque<int[]>>> it = bySize.entrySet().iterator();
+        while (it.hasNext() && retainedBytes > maxRetainedBytes) {
+            ArrayDeque<int[]> pooled = it.next().getValue();
+            while (!pooled.isEmpty() && retainedBytes > maxRetainedBytes) {
+                retainedBytes -= (long) pooled.pollLast().length * 4;
+            }
+            if (pooled.isEmpty()) {
+                it.remove();
+            }
+        }
+        logger.trace("Pixel pool trimmed to {} bytes", retainedBytes);
+    }
+}
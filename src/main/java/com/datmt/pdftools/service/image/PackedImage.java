@@ -0,0 +1,186 @@
+package com.datmt.pdftools.service.image;
+
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.PixelReader;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+
+/**
+ * An opaque page image stored compactly in a {@link ColorMode}: 3 bytes per
+ * pixel for RGB, 1 byte for GRAY, 1 bit for BINARY (rows padded to a byte,
+ * most significant bit first, set for white).
+ * <p>
+ * Used where many images are kept resident but only a few are on screen; a
+ * JavaFX image is expanded from it when needed.
+ */
+public final class PackedImage {
+    private static final int BINARY_THRESHOLD = 128;
+
+    private final ColorMode mode;
+    private final int width;
+    private final int height;
+    private final byte[] data;
+
+    private PackedImage(ColorMode mode, int width, int height, byte[] data) {
+        this.mode = mode;
+        this.width = width;
+        this.height = height;
+        this.data = data;
+    }
+
+    /**
+     * Pack a JavaFX image.
+     *
+     * @param image Opaque image, e.g. a page render
+     * @param mode  Target mode; AUTO picks one from the pixels
+     */
+    public static PackedImage pack(Image image, ColorMode mode) {
+        int width = (int) image.getWidth();
+        int height = (int) image.getHeight();
+        PixelReader reader = image.getPixelReader();
+        if (reader == null) {
+            throw new IllegalArgumentException("Image pixels are not readable");
+        }
+        int[] argb = new int[width * height];
+        reader.getPixels(0, 0, width, height, PixelFormat.getIntArgbPreInstance(), argb, 0, width);
+        return pack(argb, width, height, mode);
+    }
+
+    /**
+     * Pack an image read back from PNG. Grey and 1-bit images keep their mode;
+     * anything else is RGB.
+     */
+    public static PackedImage of(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        if (image.getType() == BufferedImage.TYPE_BYTE_GRAY) {
+            // Copied as is: getRGB would convert the linear grey colour space to sRGB and brighten it
+            byte[] levels = (byte[]) image.getRaster().getDataElements(0, 0, width, height, new byte[width * height]);
+            return new PackedImage(ColorMode.GRAY, width, height, levels);
+        }
+        ColorMode mode = image.getColorModel().getPixelSize() == 1 ? ColorMode.BINARY : ColorMode.RGB;
+        return pack(image.getRGB(0, 0, width, height, null, 0, width), width, height, mode);
+    }
+
+    /**
+     * Pack opaque 0xAARRGGBB pixels.
+     */
+    public static PackedImage pack(int[] argb, int width, int height, ColorMode mode) {
+        int pixels = width * height;
+        ColorMode resolved = mode.resolve(argb, pixels);
+        byte[] data = new byte[(int) resolved.sizeOf(width, height)];
+        switch (resolved) {
+            case GRAY -> {
+                for (int i = 0; i < pixels; i++) {
+                    data[i] = (byte) ColorMode.luminance(argb[i]);
+                }
+            }
+            case BINARY -> {
+                int stride = (width + 7) / 8;
+                for (int y = 0; y < height; y++) {
+                    int row = y * width;
+                    int out = y * stride;
+                    for (int x = 0; x < width; x++) {
+                        if (ColorMode.luminance(argb[row + x]) >= BINARY_THRESHOLD) {
+                            data[out + (x >> 3)] |= (byte) (0x80 >> (x & 7));
+                        }
+                    }
+                }
+            }
+            default -> {
+                for (int i = 0, out = 0; i < pixels; i++) {
+                    int pixel = argb[i];
+                    data[out++] = (byte) (pixel >> 16);
+                    data[out++] = (byte) (pixel >> 8);
+                    data[out++] = (byte) pixel;
+                }
+            }
+        }
+        return new PackedImage(resolved, width, height, data);
+    }
+
+    /**
+     * Expand to a JavaFX image backed by a pooled pixel array.
+     */
+    public Image toImage() {
+        int[] pixels = IntBufferPool.getInstance().acquire(width * height);
+        expand(pixels);
+        return FxPageRenderer.toImage(pixels, width, height);
+    }
+
+    /**
+     * Copy into a BufferedImage of the matching type (TYPE_3BYTE_BGR,
+     * TYPE_BYTE_GRAY or TYPE_BYTE_BINARY), e.g. for PNG encoding.
+     */
+    public BufferedImage toBufferedImage() {
+        int type = switch (mode) {
+            case GRAY -> BufferedImage.TYPE_BYTE_GRAY;
+            case BINARY -> BufferedImage.TYPE_BYTE_BINARY;
+            default -> BufferedImage.TYPE_3BYTE_BGR;
+        };
+        BufferedImage image = new BufferedImage(width, height, type);
+        byte[] target = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        if (mode == ColorMode.RGB) {
+            for (int i = 0; i < data.length; i += 3) {
+                target[i] = data[i + 2];
+                target[i + 1] = data[i + 1];
+                target[i + 2] = data[i];
+            }
+        } else {
+            // Same layouts: one byte per grey pixel, MSB-first rows with 1 = white
+            System.arraycopy(data, 0, target, 0, data.length);
+        }
+        return image;
+    }
+
+    private void expand(int[] pixels) {
+        switch (mode) {
+            case GRAY -> {
+                for (int i = 0; i < width * height; i++) {
+                    int v = data[i] & 0xff;
+                    pixels[i] = 0xff000000 | v << 16 | v << 8 | v;
+                }
+            }
+            case BINARY -> {
+                int stride = (width + 7) / 8;
+                for (int y = 0; y < height; y++) {
+                    int row = y * width;
+                    int in = y * stride;
+                    for (int x = 0; x < width; x++) {
+                        boolean white = (data[in + (x >> 3)] & (0x80 >> (x & 7))) != 0;
+                        pixels[row + x] = white ? 0xffffffff : 0xff000000;
+                    }
+                }
+            }
+            default -> {
+                for (int i = 0, in = 0; i < width * height; i++) {
+                    pixels[i] = 0xff000000 | (data[in++] & 0xff) << 16 | (data[in++] & 0xff) << 8 | (data[in++] & 0xff);
+                }
+            }
+        }
+    }
+
+    /**
+     * The resolved mode (never AUTO).
+     */
+    public ColorMode getMode() {
+        return mode;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Bytes of pixel data held.
+     */
+    public long getSizeInBytes() {
+        return data.length;
+    }
+}
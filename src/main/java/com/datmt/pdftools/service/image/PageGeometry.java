@@ -0,0 +1,52 @@
+package com.datmt.pdftools.service.image;
+
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+
+/**
+ * Pixel geometry of rendered pages. Free of JavaFX so headless services can use it.
+ */
+public final class PageGeometry {
+
+    private PageGeometry() {
+    }
+
+    /**
+     * Pixel size of a page rendered at the given DPI, as {width, height}.
+     * Matches the size PDFRenderer.renderImageWithDPI produces, including /Rotate.
+     */
+    public static int[] pixelSize(PDPage page, float dpi) {
+        PDRectangle cropBox = page.getCropBox();
+        float scale = dpi / 72f;
+        int width = Math.max((int) Math.floor(cropBox.getWidth() * scale), 1);
+        int height = Math.max((int) Math.floor(cropBox.getHeight() * scale), 1);
+        int rotation = page.getRotation();
+        if (rotation == 90 || rotation == 270) {
+            return new int[]{height, width};
+        }
+        return new int[]{width, height};
+    }
+
+    /**
+     * Largest resolution at which a page fits in a box of the given pixel size,
+     * taking /Rotate into account. The result depends only on the box, not on
+     * the physical page size.
+     */
+    public static float fitDpi(PDPage page, int maxWidth, int maxHeight) {
+        PDRectangle cropBox = page.getCropBox();
+        float width = cropBox.getWidth();
+        float height = cropBox.getHeight();
+        int rotation = page.getRotation();
+        if (rotation == 90 || rotation == 270) {
+            float swap = width;
+            width = height;
+            height = swap;
+        }
+        if (width <= 0 || height <= 0) {
+            return 72f;
+        }
+        // Nudge up so flooring the pixel size does not lose a pixel to float rounding
+        float scale = Math.min(maxWidth / width, maxHeight / height) * (1 + 1e-5f);
+        return scale * 72f;
+    }
+}
@@ -0,0 +1,280 @@
+package com.datmt.pdftools.service.image;
+
+import javafx.scene.image.Image;
+import org.apache.pdfbox.contentstream.operator.Operator;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSNumber;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdfparser.PDFStreamParser;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+import org.apache.pdfbox.pdmodel.graphics.PDXObject;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotation;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.apache.pdfbox.util.Matrix;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Page thumbnails with fast paths that avoid running the content stream.
+ * <p>
+ * In order: the page's embedded /Thumb image; the page's only image when the
+ * content stream does nothing but draw one opaque image over the whole page
+ * (typical scanner output), decoded with subsampling close to the target
+ * size; otherwise a normal render. Pages with annotations that draw
+ * something, e.g. stamps, notes or filled form fields, are always rendered:
+ * neither fast path would show them. Counts per path are kept so the hit
+ * rate of the fast paths can be measured.
+ */
+public final class PageThumbnails {
+    private static final Logger logger = LoggerFactory.getLogger(PageThumbnails.class);
+
+    // Scanned pages have a few dozen bytes of content; anything longer draws more than one image
+    private static final long MAX_SCANNED_CONTENT_LENGTH = 1024;
+    // How far the image may be off the page box, as a fraction of the page size
+    private static final float COVER_TOLERANCE = 0.01f;
+
+    /**
+     * How a thumbnail was produced.
+     */
+    public enum Source {
+        CACHED,
+        EMBEDDED_THUMBNAIL,
+        PAGE_IMAGE,
+        RENDERED
+    }
+
+    /**
+     * A thumbnail and the path that produced it.
+     */
+    public record Result(Image image, Source source) {
+    }
+
+    private static final Map<Source, LongAdder> COUNTS = new EnumMap<>(Source.class);
+
+    static {
+        for (Source source : Source.values()) {
+            COUNTS.put(source, new LongAdder());
+        }
+    }
+
+    private PageThumbnails() {
+    }
+
+    /**
+     * Produce a page thumbnail at the given resolution, taking a fast path when possible.
+     * The image has the same size as a render at that resolution.
+     *
+     * @param renderer  Renderer for the document (confined to the calling thread)
+     * @param document  The document the renderer belongs to
+     * @param pageIndex 0-based page index
+     * @param dpi       Thumbnail resolution, e.g. from {@link PageGeometry#fitDpi}
+     * @return The thumbnail and how it was produced
+     * @throws IOException If rendering fails
+     */
+    public static Result create(PDFRenderer renderer, PDDocument document, int pageIndex, float dpi) throws IOException {
+        PDPage page = document.getPage(pageIndex);
+        int[] size = PageGeometry.pixelSize(page, dpi);
+        int rotation = page.getRotation();
+
+        if (!hasAnnotationAppearances(page)) {
+            try {
+                BufferedImage thumb = readEmbeddedThumbnail(page);
+                if (thumb != null) {
+                    return record(new Result(FxPageRenderer.drawImage(thumb, size[0], size[1], rotation),
+                            Source.EMBEDDED_THUMBNAIL));
+                }
+                PDImageXObject pageImage = findFullPageImage(page);
+                if (pageImage != null) {
+                    boolean quarterTurn = rotation == 90 || rotation == 270;
+                    int targetWidth = quarterTurn ? size[1] : size[0];
+                    int targetHeight = quarterTurn ? size[0] : size[1];
+                    int subsampling = Math.max(1, Math.min(pageImage.getWidth() / targetWidth,
+                            pageImage.getHeight() / targetHeight));
+                    BufferedImage decoded = pageImage.getImage(null, subsampling);
+                    return record(new Result(FxPageRenderer.drawImage(decoded, size[0], size[1], rotation),
+                            Source.PAGE_IMAGE));
+                }
+            } catch (IOException | RuntimeException e) {
+                logger.debug("Thumbnail fast path failed for page {}, rendering instead: {}", pageIndex, e.getMessage());
+            }
+        }
+
+        Image image = FxPageRenderer.render(renderer, document, pageIndex, dpi, RenderQuality.THUMBNAIL);
+        return record(new Result(image, Source.RENDERED));
+    }
+
+    /**
+     * Count a thumbnail served from a cache.
+     */
+    public static Result cached(Image image) {
+        return record(new Result(image, Source.CACHED));
+    }
+
+    /**
+     * Number of thumbnails produced by each path since startup.
+     */
+    public static Map<Source, Long> getSourceCounts() {
+        Map<Source, Long> counts = new EnumMap<>(Source.class);
+        COUNTS.forEach((source, count) -> counts.put(source, count.sum()));
+        return counts;
+    }
+
+    private static Result record(Result result) {
+        COUNTS.get(result.source()).increment();
+        return result;
+    }
+
+    /**
+     * Whether any annotation on the page has an appearance stream a render would draw.
+     */
+    private static boolean hasAnnotationAppearances(PDPage page) {
+        try {
+            for (PDAnnotation annotation : page.getAnnotations()) {
+                if (!annotation.isHidden() && !annotation.isNoView()
+                        && annotation.getNormalAppearanceStream() != null) {
+                    return true;
+                }
+            }
+            return false;
+        } catch (IOException | RuntimeException e) {
+            // Unreadable annotations: let the renderer deal with them
+            return true;
+        }
+    }
+
+    /**
+     * Decode the page's /Thumb image, or return null if it has none.
+     */
+    private static BufferedImage readEmbeddedThumbnail(PDPage page) throws IOException {
+        COSBase thumb = page.getCOSObject().getDictionaryObject(COSName.THUMB);
+        if (!(thumb instanceof COSStream stream)) {
+            return null;
+        }
+        // /Thumb is an image XObject dictionary without /Type and /Subtype
+        PDImageXObject image = new PDImageXObject(new PDStream(stream), null);
+        return image.getImage();
+    }
+
+    /**
+     * Find the image if the page content only draws one opaque, upright image
+     * covering the crop box. Returns null for any other content.
+     */
+    private static PDImageXObject findFullPageImage(PDPage page) throws IOException {
+        PDResources resources = page.getResources();
+        if (resources == null || contentLength(page) > MAX_SCANNED_CONTENT_LENGTH) {
+            return null;
+        }
+
+        Matrix ctm = new Matrix();
+        Deque<Matrix> stack = new ArrayDeque<>();
+        List<COSBase> operands = new ArrayList<>();
+        PDImageXObject found = null;
+        Matrix foundCtm = null;
+        for (Object token : new PDFStreamParser(page).parse()) {
+            if (token instanceof COSBase operand) {
+                operands.add(operand);
+                continue;
+            }
+            if (!(token instanceof Operator operator)) {
+                return null;
+            }
+            switch (operator.getName()) {
+                case "q" -> stack.push(ctm.clone());
+                case "Q" -> {
+                    if (stack.isEmpty()) {
+                        return null;
+                    }
+                    ctm = stack.pop();
+                }
+                case "cm" -> {
+                    if (operands.size() != 6) {
+                        return null;
+                    }
+                    float[] values = new float[6];
+                    for (int i = 0; i < 6; i++) {
+                        if (!(operands.get(i) instanceof COSNumber number)) {
+                            return null;
+                        }
+                        values[i] = number.floatValue();
+                    }
+                    ctm = new Matrix(values[0], values[1], values[2], values[3], values[4], values[5]).multiply(ctm);
+                }
+                case "Do" -> {
+                    if (found != null || operands.size() != 1 || !(operands.get(0) instanceof COSName name)) {
+                        return null;
+                    }
+                    PDXObject xObject = resources.getXObject(name);
+                    if (!(xObject instanceof PDImageXObject image)) {
+                        return null;
+                    }
+                    found = image;
+                    foundCtm = ctm.clone();
+                }
+                default -> {
+                    return null;
+                }
+            }
+            operands.clear();
+        }
+
+        if (found == null || found.isStencil()
+                || found.getCOSObject().containsKey(COSName.SMASK) || found.getCOSObject().containsKey(COSName.MASK)) {
+            return null;
+        }
+        return coversPage(foundCtm, page.getCropBox()) ? found : null;
+    }
+
+    /**
+     * Whether the unit square drawn with the CTM is upright and matches the page box.
+     */
+    private static boolean coversPage(Matrix ctm, PDRectangle box) {
+        float a = ctm.getValue(0, 0);
+        float b = ctm.getValue(0, 1);
+        float c = ctm.getValue(1, 0);
+        float d = ctm.getValue(1, 1);
+        if (a <= 0 || d <= 0 || Math.abs(b) > 1e-3f || Math.abs(c) > 1e-3f) {
+            return false;
+        }
+        float toleranceX = box.getWidth() * COVER_TOLERANCE + 1;
+        float toleranceY = box.getHeight() * COVER_TOLERANCE + 1;
+        float left = ctm.getTranslateX();
+        float bottom = ctm.getTranslateY();
+        return Math.abs(left - box.getLowerLeftX()) <= toleranceX
+                && Math.abs(bottom - box.getLowerLeftY()) <= toleranceY
+                && Math.abs(left + a - box.getUpperRightX()) <= toleranceX
+                && Math.abs(bottom + d - box.getUpperRightY()) <= toleranceY;
+    }
+
+    private static long contentLength(PDPage page) throws IOException {
+        long length = 0;
+        Iterator<PDStream> streams = page.getContentStreams();
+        while (streams.hasNext()) {
+            length += streams.next().getCOSObject().getLength();
+        }
+        if (length == 0 && page.hasContents()) {
+            // Length unknown: measure the decoded content instead
+            try (InputStream in = page.getContents()) {
+                length = in.skip(MAX_SCANNED_CONTENT_LENGTH + 1);
+            }
+        }
+        return length;
+    }
+}
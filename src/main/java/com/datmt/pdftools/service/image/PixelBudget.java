@@ -0,0 +1,90 @@
+package com.datmt.pdftools.service.image;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * Bounds the memory held by decoded images. Work that decodes an image first
+ * reserves the bytes its pixels will take and releases them when the pixels
+ * are no longer needed; reserving blocks while the budget is used up, so
+ * producers slow down to the rate memory is freed.
+ * <p>
+ * A reservation larger than the whole budget is reduced to the budget: it
+ * waits until nothing else is reserved and then runs alone.
+ */
+public final class PixelBudget {
+    private static final int UNIT_SHIFT = 10;   // Permits are counted in KB
+
+    private final long budgetBytes;
+    private final int permits;
+    private final Semaphore semaphore;
+
+    /**
+     * @param budgetBytes Bytes of decoded pixels that may be held at once
+     */
+    public PixelBudget(long budgetBytes) {
+        if (budgetBytes <= 0) {
+            throw new IllegalArgumentException("Pixel budget must be positive: " + budgetBytes);
+        }
+        this.budgetBytes = budgetBytes;
+        this.permits = (int) Math.min(Integer.MAX_VALUE, Math.max(1, budgetBytes >> UNIT_SHIFT));
+        this.semaphore = new Semaphore(permits, true);
+    }
+
+    /**
+     * Bytes of decoded pixels for an image, counted by sample bands: one byte
+     * per sample, with colour held as packed 4-byte pixels.
+     *
+     * @param bands Samples per pixel, including alpha
+     */
+    public static long bytesFor(long width, long height, int bands) {
+        return width * height * (bands == 1 ? 1 : 4);
+    }
+
+    /**
+     * Reserve bytes, waiting until they are available.
+     *
+     * @return The reservation, to pass to {@link #release}
+     */
+    public Reservation acquire(long bytes) throws InterruptedException {
+        int count = permitsFor(bytes);
+        semaphore.acquire(count);
+        return new Reservation(count);
+    }
+
+    public void release(Reservation reservation) {
+        if (reservation != null) {
+            semaphore.release(reservation.permits);
+        }
+    }
+
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    /**
+     * Bytes not currently reserved.
+     */
+    public long getAvailableBytes() {
+        return (long) semaphore.availablePermits() << UNIT_SHIFT;
+    }
+
+    private int permitsFor(long bytes) {
+        long count = (bytes + (1 << UNIT_SHIFT) - 1) >> UNIT_SHIFT;
+        return (int) Math.max(1, Math.min(permits, count));
+    }
+
+    /**
+     * Bytes held under a budget.
+     */
+    public static final class Reservation {
+        private final int permits;
+
+        private Reservation(int permits) {
+            this.permits = permits;
+        }
+
+        public long getBytes() {
+            return (long) permits << UNIT_SHIFT;
+        }
+    }
+}
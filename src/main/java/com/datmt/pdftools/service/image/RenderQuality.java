@@ -0,0 +1,52 @@
+package com.datmt.pdftools.service.image;
+
+import java.awt.RenderingHints;
+import java.util.Map;
+
+/**
+ * Rendering quality tiers, trading output quality for speed and memory.
+ */
+public enum RenderQuality {
+    /**
+     * Fast first pass for progressive preview: no antialiasing, nearest-neighbour
+     * image scaling, embedded images subsampled.
+     */
+    DRAFT(new RenderingHints(Map.of(
+            RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF,
+            RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_OFF,
+            RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_SPEED,
+            RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR)), true),
+
+    /**
+     * Small images: antialiased, but with bilinear image scaling and embedded images subsampled.
+     */
+    THUMBNAIL(new RenderingHints(Map.of(
+            RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON,
+            RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON,
+            RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_SPEED,
+            RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR)), true),
+
+    /**
+     * PDFBox default hints, images at full resolution.
+     */
+    FULL(null, false);
+
+    private final RenderingHints hints;
+    private final boolean subsamplingAllowed;
+
+    RenderQuality(RenderingHints hints, boolean subsamplingAllowed) {
+        this.hints = hints;
+        this.subsamplingAllowed = subsamplingAllowed;
+    }
+
+    /**
+     * Rendering hints for this tier, or null for the renderer defaults.
+     */
+    public RenderingHints getHints() {
+        return hints == null ? null : (RenderingHints) hints.clone();
+    }
+
+    public boolean isSubsamplingAllowed() {
+        return subsamplingAllowed;
+    }
+}
@@ -0,0 +1,263 @@
+package com.datmt.pdftools.service.io;
+
+import org.apache.pdfbox.io.RandomAccessRead;
+import org.apache.pdfbox.io.RandomAccessReadView;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Read-only {@link RandomAccessRead} backed by memory-mapped segments of a file.
+ * A single MappedByteBuffer is limited to 2 GB, so larger files are split into
+ * several fixed-size segments and reads that cross a boundary are stitched together.
+ * <p>
+ * Reads use absolute buffer access only, so {@link #duplicate()} can hand out
+ * independent readers over the same mapping to other threads.
+ * <p>
+ * The mapping is released as soon as the original reader and all its
+ * duplicates are closed, so the file can be deleted or replaced right away,
+ * which Windows does not allow while it is mapped. This needs
+ * {@code sun.misc.Unsafe.invokeCleaner}; where it is not available (see
+ * {@link #canUnmap()}) the mapping is left to the GC.
+ */
+public class MappedFileRandomAccessRead implements RandomAccessRead {
+    private static final Logger logger = LoggerFactory.getLogger(MappedFileRandomAccessRead.class);
+
+    /**
+     * Default segment size (1 GB). Must be a power of two.
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 1 << 30;
+
+    private static final MethodHandle INVOKE_CLEANER = findCleaner();
+
+    private final Mapping mapping;
+    private final MappedByteBuffer[] segments;
+    private final int segmentShift;
+    private final int segmentMask;
+    private final long length;
+    private long position;
+    private boolean closed;
+
+    public MappedFileRandomAccessRead(File file) throws IOException {
+        this(file, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Map a file using the given segment size.
+     *
+     * @param file        The file to map
+     * @param segmentSize Size of each mapped segment in bytes, must be a power of two
+     * @throws IOException If the file cannot be opened or mapped
+     */
+    public MappedFileRandomAccessRead(File file, int segmentSize) throws IOException {
+        if (segmentSize <= 0 || Integer.bitCount(segmentSize) != 1) {
+            throw new IllegalArgumentException("Segment size must be a power of two: " + segmentSize);
+        }
+        this.segmentShift = Integer.numberOfTrailingZeros(segmentSize);
+        this.segmentMask = segmentSize - 1;
+
+        // The mapping stays valid after the channel is closed
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            this.length = channel.size();
+            int count = (int) ((length + segmentSize - 1) >>> segmentShift);
+            this.segments = new MappedByteBuffer[count];
+            try {
+                for (int i = 0; i < count; i++) {
+                    long start = (long) i << segmentShift;
+                    long size = Math.min(segmentSize, length - start);
+                    segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+                }
+            } catch (IOException | RuntimeException e) {
+                unmap(segments);
+                throw e;
+            }
+        }
+        this.mapping = new Mapping(segments);
+    }
+
+    private MappedFileRandomAccessRead(MappedFileRandomAccessRead original) {
+        this.mapping = original.mapping;
+        this.segments = original.segments;
+        this.segmentShift = original.segmentShift;
+        this.segmentMask = original.segmentMask;
+        this.length = original.length;
+    }
+
+    /**
+     * Create a reader over the same mapped bytes with its own position.
+     * Closing either reader does not affect the other.
+     */
+    public MappedFileRandomAccessRead duplicate() throws IOException {
+        checkClosed();
+        if (!mapping.retain()) {
+            throw new EOFException("MappedFileRandomAccessRead already closed");
+        }
+        return new MappedFileRandomAccessRead(this);
+    }
+
+    /**
+     * Whether mappings are released on close rather than by the GC.
+     */
+    public static boolean canUnmap() {
+        return INVOKE_CLEANER != null;
+    }
+
+    @Override
+    public int read() throws IOException {
+        checkClosed();
+        if (position >= length) {
+            return -1;
+        }
+        int value = segments[(int) (position >>> segmentShift)].get((int) (position & segmentMask)) & 0xff;
+        position++;
+        return value;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        checkClosed();
+        if (len == 0) {
+            return 0;
+        }
+        if (position >= length) {
+            return -1;
+        }
+        int remaining = (int) Math.min(len, length - position);
+        int total = 0;
+        while (total < remaining) {
+            MappedByteBuffer segment = segments[(int) (position >>> segmentShift)];
+            int offsetInSegment = (int) (position & segmentMask);
+            int chunk = Math.min(remaining - total, segment.limit() - offsetInSegment);
+            segment.get(offsetInSegment, b, off + total, chunk);
+            total += chunk;
+            position += chunk;
+        }
+        return total;
+    }
+
+    @Override
+    public long getPosition() throws IOException {
+        checkClosed();
+        return position;
+    }
+
+    @Override
+    public void seek(long newPosition) throws IOException {
+        checkClosed();
+        if (newPosition < 0) {
+            throw new IOException("Invalid position " + newPosition);
+        }
+        // Seeking past the end is allowed, subsequent reads return EOF
+        position = Math.min(newPosition, length);
+    }
+
+    @Override
+    public long length() throws IOException {
+        checkClosed();
+        return length;
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public boolean isEOF() throws IOException {
+        checkClosed();
+        return position >= length;
+    }
+
+    @Override
+    public RandomAccessReadView createView(long startPosition, long streamLength) throws IOException {
+        checkClosed();
+        return new RandomAccessReadView(this, startPosition, streamLength);
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            mapping.release();
+        }
+    }
+
+    private void checkClosed() throws IOException {
+        if (closed) {
+            throw new EOFException("MappedFileRandomAccessRead already closed");
+        }
+    }
+
+    /**
+     * Release mapped buffers now. They must not be read afterwards: the
+     * memory is gone and a read would crash the JVM, not throw.
+     */
+    private static void unmap(MappedByteBuffer[] buffers) {
+        if (INVOKE_CLEANER == null) {
+            return; // Released by the GC once unreachable
+        }
+        for (MappedByteBuffer buffer : buffers) {
+            if (buffer != null) {
+                try {
+                    INVOKE_CLEANER.invokeExact((ByteBuffer) buffer);
+                } catch (Throwable e) {
+                    logger.warn("Could not unmap file segment: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    private static MethodHandle findCleaner() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            return MethodHandles.lookup()
+                    .findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+                    .bindTo(field.get(null));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            logger.debug("Mapped files are released by the GC: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Mapped segments shared by a reader and its duplicates, unmapped when the last one closes.
+     */
+    private static final class Mapping {
+        private final MappedByteBuffer[] segments;
+        private int references = 1;  // Guarded by this
+
+        Mapping(MappedByteBuffer[] segments) {
+            this.segments = segments;
+        }
+
+        synchronized boolean retain() {
+            if (references == 0) {
+                return false; // Already unmapped
+            }
+            references++;
+            return true;
+        }
+
+        void release() {
+            synchronized (this) {
+                if (--references > 0) {
+                    return;
+                }
+            }
+            unmap(segments);
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package com.datmt.pdftools.service.io;
+
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSDocument;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSObjectKey;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The dictionaries, streams and arrays reachable from a document trailer,
+ * with who refers to each, for fixing up a document just before it is
+ * written. Objects can be swapped for others without modifying objects the
+ * document may share with other documents, e.g. the sources of imported pages.
+ */
+final class ObjectGraph {
+    private final COSDictionary trailer;
+    private final List<COSBase> containers = new ArrayList<>();
+    private final Map<COSBase, List<COSBase>> referrers = new IdentityHashMap<>();
+    // Indirect references by target, for targets reached through one
+    private final Map<COSBase, List<COSObject>> references = new IdentityHashMap<>();
+
+    // Depth of direct containers below a page searched for imported references
+    private static final int IMPORT_SEARCH_DEPTH = 3;
+
+    private ObjectGraph(COSDictionary trailer) {
+        this.trailer = trailer;
+    }
+
+    static ObjectGraph walk(COSDictionary trailer) {
+        ObjectGraph graph = new ObjectGraph(trailer);
+        Set<COSBase> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<COSBase> pending = new ArrayDeque<>();
+        visited.add(trailer);
+        pending.push(trailer);
+        while (!pending.isEmpty()) {
+            COSBase container = pending.pop();
+            graph.containers.add(container);
+            for (COSBase child : children(container)) {
+                COSBase target = resolve(child);
+                if (!(target instanceof COSDictionary) && !(target instanceof COSArray)) {
+                    continue;
+                }
+                graph.referrers.computeIfAbsent(target, k -> new ArrayList<>()).add(container);
+                if (child instanceof COSObject reference) {
+                    graph.references.computeIfAbsent(target, k -> new ArrayList<>()).add(reference);
+                }
+                if (visited.add(target)) {
+                    pending.push(target);
+                }
+            }
+        }
+        return graph;
+    }
+
+    /**
+     * Whether any page refers to an object numbered by another document, as
+     * pages imported from other files do. Only the pages and the direct
+     * containers just below them are looked at, and nothing is loaded.
+     */
+    static boolean hasImportedObjects(PDDocument document) {
+        COSDocument owner = document.getDocument();
+        Map<COSObjectKey, Long> xref = owner.getXrefTable();
+        for (PDPage page : document.getPages()) {
+            COSDictionary dict = page.getCOSObject();
+            if (dict.getKey() != null && !xref.containsKey(dict.getKey())) {
+                return true;
+            }
+            if (hasImportedReference(owner, xref, dict, IMPORT_SEARCH_DEPTH)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasImportedReference(COSDocument owner, Map<COSObjectKey, Long> xref,
+                                                COSBase container, int depth) {
+        for (COSBase child : children(container)) {
+            // Parents lead back up to the page tree, which is reached from every page
+            if (container instanceof COSDictionary dict && child == dict.getItem(COSName.PARENT)) {
+                continue;
+            }
+            if (child instanceof COSObject reference) {
+                COSObjectKey key = reference.getKey();
+                // References parsed from one file share the instance in its pool
+                if (key != null && (!xref.containsKey(key) || owner.getObjectFromPool(key) != reference)) {
+                    return true;
+                }
+            } else if (depth > 1 && (child instanceof COSDictionary || child instanceof COSArray)
+                    && hasImportedReference(owner, xref, child, depth - 1)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reachable containers, the trailer first.
+     */
+    List<COSBase> containers() {
+        return containers;
+    }
+
+    /**
+     * Give a fresh object number to every object that has the same number as
+     * another reachable object, e.g. objects of pages imported from two files.
+     * Without this, PDFBox writes one of the two and points both references at
+     * it. The second object is replaced by a copy without a number, as are the
+     * containers on its paths from the trailer; the objects themselves keep
+     * their numbers, as they may belong to the source documents.
+     *
+     * @return Number of objects renumbered
+     */
+    int separateNumberCollisions() throws IOException {
+        Map<COSObjectKey, COSBase> owners = new HashMap<>();
+        Map<COSBase, COSBase> copies = new IdentityHashMap<>();
+        for (COSBase container : containers) {
+            List<COSObject> refs = references.getOrDefault(container, List.of());
+            List<COSObjectKey> keys = new ArrayList<>(refs.size() + 1);
+            if (container.getKey() != null) {
+                keys.add(container.getKey());
+            }
+            for (COSObject reference : refs) {
+                if (reference.getKey() != null) {
+                    keys.add(reference.getKey());
+                }
+            }
+            boolean collides = false;
+            for (COSObjectKey key : keys) {
+                COSBase owner = owners.get(key);
+                collides |= owner != null && owner != container;
+            }
+            if (collides) {
+                copies.put(container, shallowCopy(container));
+            } else {
+                for (COSObjectKey key : keys) {
+                    owners.put(key, container);
+                }
+            }
+        }
+        int separated = copies.size();
+        if (separated > 0) {
+            copyPaths(Map.of(), copies);
+        }
+        return separated;
+    }
+
+    List<COSBase> referrersOf(COSBase object) {
+        return referrers.getOrDefault(object, List.of());
+    }
+
+    /**
+     * Make every reference to a key of {@code replacements} point at its value
+     * instead. The trailer is updated in place; every other container on a
+     * path from the trailer to a replaced object is replaced by a shallow copy.
+     * Values must be reachable objects.
+     *
+     * @return Number of containers copied
+     */
+    int replace(Map<COSBase, COSBase> replacements) throws IOException {
+        return copyPaths(replacements, new IdentityHashMap<>());
+    }
+
+    /**
+     * Copy every container on a path from the trailer to a key of
+     * {@code replacements} or {@code copies}, adding the copies to
+     * {@code copies}, and relink the trailer and the copies.
+     */
+    private int copyPaths(Map<COSBase, COSBase> replacements, Map<COSBase, COSBase> copies) throws IOException {
+        Set<COSBase> affected = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<COSBase> pending = new ArrayDeque<>(replacements.keySet());
+        pending.addAll(copies.keySet());
+        while (!pending.isEmpty()) {
+            for (COSBase referrer : referrersOf(pending.pop())) {
+                if (affected.add(referrer)) {
+                    pending.push(referrer);
+                }
+            }
+        }
+
+        for (COSBase container : affected) {
+            if (container != trailer && !replacements.containsKey(container) && !copies.containsKey(container)) {
+                copies.put(container, shallowCopy(container));
+            }
+        }
+
+        relink(trailer, replacements, copies);
+        for (COSBase copy : copies.values()) {
+            relink(copy, replacements, copies);
+        }
+        return copies.size();
+    }
+
+    private static void relink(COSBase container, Map<COSBase, COSBase> replacements, Map<COSBase, COSBase> copies) {
+        if (container instanceof COSDictionary dict) {
+            for (COSName key : new ArrayList<>(dict.keySet())) {
+                COSBase value = dict.getItem(key);
+                COSBase replacement = replacement(value, replacements, copies);
+                if (replacement != value) {
+                    dict.setItem(key, replacement);
+                }
+            }
+        } else if (container instanceof COSArray array) {
+            for (int i = 0; i < array.size(); i++) {
+                COSBase value = array.get(i);
+                COSBase replacement = replacement(value, replacements, copies);
+                if (replacement != value) {
+                    array.set(i, replacement);
+                }
+            }
+        }
+    }
+
+    private static COSBase replacement(COSBase value, Map<COSBase, COSBase> replacements,
+                                       Map<COSBase, COSBase> copies) {
+        COSBase target = resolve(value);
+        if (target == null) {
+            return value;
+        }
+        COSBase kept = replacements.getOrDefault(target, target);
+        kept = copies.getOrDefault(kept, kept);
+        return kept == target ? value : kept;
+    }
+
+    /**
+     * A new container with the same entries (and, for streams, the same stored
+     * bytes) and no object number.
+     */
+    private static COSBase shallowCopy(COSBase container) throws IOException {
+        if (container instanceof COSStream stream) {
+            COSStream copy = new COSStream();
+            for (Map.Entry<COSName, COSBase> entry : stream.entrySet()) {
+                copy.setItem(entry.getKey(), entry.getValue());
+            }
+            try (InputStream in = stream.createRawInputStream();
+                 OutputStream out = copy.createRawOutputStream()) {
+                in.transferTo(out);
+            }
+            return copy;
+        }
+        if (container instanceof COSDictionary dict) {
+            COSDictionary copy = new COSDictionary(dict);
+            copy.setDirect(dict.isDirect());
+            return copy;
+        }
+        COSArray array = (COSArray) container;
+        COSArray copy = new COSArray();
+        for (int i = 0; i < array.size(); i++) {
+            copy.add(array.get(i));
+        }
+        copy.setDirect(array.isDirect());
+        return copy;
+    }
+
+    static COSBase resolve(COSBase value) {
+        return value instanceof COSObject reference ? reference.getObject() : value;
+    }
+
+    private static List<COSBase> children(COSBase container) {
+        if (container instanceof COSDictionary dict) {
+            return new ArrayList<>(dict.getValues());
+        }
+        COSArray array = (COSArray) container;
+        List<COSBase> items = new ArrayList<>(array.size());
+        for (int i = 0; i < array.size(); i++) {
+            items.add(array.get(i));
+        }
+        return items;
+    }
+}
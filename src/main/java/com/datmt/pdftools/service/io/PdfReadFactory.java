@@ -0,0 +1,129 @@
+package com.datmt.pdftools.service.io;
+
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.io.RandomAccessRead;
+import org.apache.pdfbox.io.RandomAccessReadBufferedFile;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Single entry point for opening PDF files from disk.
+ * Picks a read backend per file size: small files use the buffered reader,
+ * large files are memory-mapped so seek-heavy xref/object parsing avoids re-reading.
+ * On Windows a mapped file cannot be deleted or replaced, so files are only
+ * mapped there when the mapping can be released on close
+ * (see {@link MappedFileRandomAccessRead#canUnmap()}).
+ */
+public final class PdfReadFactory {
+    private static final Logger logger = LoggerFactory.getLogger(PdfReadFactory.class);
+
+    /**
+     * Files at or above this size are memory-mapped (32 MB).
+     */
+    public static final long DEFAULT_MAPPED_THRESHOLD = 32L * 1024 * 1024;
+
+    // Windows refuses to delete or replace a file while any part of it is mapped
+    private static final boolean MAPPING_LOCKS_FILE =
+            System.getProperty("os.name", "").toLowerCase().startsWith("windows");
+
+    private static volatile long mappedThreshold = DEFAULT_MAPPED_THRESHOLD;
+    private static volatile ReadBackend forcedBackend = null;
+
+    private PdfReadFactory() {
+    }
+
+    /**
+     * Set the file size at which the memory-mapped backend is used.
+     */
+    public static void setMappedThreshold(long bytes) {
+        mappedThreshold = Math.max(0, bytes);
+    }
+
+    public static long getMappedThreshold() {
+        return mappedThreshold;
+    }
+
+    /**
+     * Force a backend for all files regardless of size (null restores size-based selection).
+     */
+    public static void setForcedBackend(ReadBackend backend) {
+        forcedBackend = backend;
+    }
+
+    /**
+     * Choose the backend for a file of the given size.
+     */
+    public static ReadBackend selectBackend(long fileSize) {
+        ReadBackend forced = forcedBackend;
+        if (forced != null) {
+            return forced;
+        }
+        return fileSize >= mappedThreshold ? ReadBackend.MEMORY_MAPPED : ReadBackend.BUFFERED;
+    }
+
+    /**
+     * Open a file for reading using the backend chosen for its size.
+     */
+    public static RandomAccessRead openRead(File file) throws IOException {
+        return openRead(file, selectBackend(file.length()));
+    }
+
+    /**
+     * Open a file for reading using a specific backend.
+     * Falls back to the buffered reader if the file cannot be mapped, or
+     * could not be replaced while a mapping waits for the GC.
+     */
+    public static RandomAccessRead openRead(File file, ReadBackend backend) throws IOException {
+        if (backend == ReadBackend.MEMORY_MAPPED && MAPPING_LOCKS_FILE && !MappedFileRandomAccessRead.canUnmap()) {
+            logger.trace("Not mapping {}: the mapping could not be released on close", file.getName());
+            backend = ReadBackend.BUFFERED;
+        }
+        if (backend == ReadBackend.MEMORY_MAPPED) {
+            try {
+                logger.trace("Opening {} with memory-mapped backend", file.getName());
+                return new MappedFileRandomAccessRead(file);
+            } catch (IOException | UnsupportedOperationException e) {
+                logger.warn("Could not memory-map {}, falling back to buffered read: {}", file.getName(), e.getMessage());
+            }
+        }
+        logger.trace("Opening {} with buffered backend", file.getName());
+        return new RandomAccessReadBufferedFile(file);
+    }
+
+    /**
+     * Load a PDF document.
+     */
+    public static PDDocument load(File file) throws IOException {
+        return load(file, null, selectBackend(file.length()));
+    }
+
+    /**
+     * Load a PDF document with a password (null or empty for no password).
+     */
+    public static PDDocument load(File file, String password) throws IOException {
+        return load(file, password, selectBackend(file.length()));
+    }
+
+    /**
+     * Load a PDF document using a specific backend.
+     */
+    public static PDDocument load(File file, String password, ReadBackend backend) throws IOException {
+        RandomAccessRead source = openRead(file, backend);
+        try {
+            if (password == null || password.isEmpty()) {
+                return Loader.loadPDF(source);
+            }
+            return Loader.loadPDF(source, password);
+        } catch (IOException e) {
+            // The document owns the source only once loading succeeds
+            if (!source.isClosed()) {
+                source.close();
+            }
+            throw e;
+        }
+    }
+}
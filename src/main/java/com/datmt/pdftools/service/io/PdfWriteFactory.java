@@ -0,0 +1,244 @@
+package com.datmt.pdftools.service.io;
+
+import org.apache.pdfbox.pdfwriter.compress.CompressParameters;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.encryption.PDEncryption;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Single entry point for saving PDF files to disk, with a selectable {@link SaveProfile}.
+ * Only objects reachable from the document trailer are written, in every profile,
+ * and objects of pages imported from several files are numbered apart.
+ */
+public final class PdfWriteFactory {
+    private static final Logger logger = LoggerFactory.getLogger(PdfWriteFactory.class);
+
+    private static volatile SaveProfile defaultProfile = SaveProfile.STANDARD;
+
+    private PdfWriteFactory() {
+    }
+
+    /**
+     * Set the profile used when a tool does not ask for one.
+     */
+    public static void setDefaultProfile(SaveProfile profile) {
+        defaultProfile = profile != null ? profile : SaveProfile.STANDARD;
+    }
+
+    public static SaveProfile getDefaultProfile() {
+        return defaultProfile;
+    }
+
+    /**
+     * Save a document with the default profile.
+     */
+    public static void save(PDDocument document, File file) throws IOException {
+        save(document, file, null);
+    }
+
+    /**
+     * Save a document.
+     * <p>
+     * OPTIMIZED rewires the document's object graph before writing (see
+     * {@link StreamDeduplicator}); objects shared with other documents are left
+     * as they are, but the document itself should not be used after saving.
+     *
+     * @param profile Save profile, or null for the default
+     */
+    public static void save(PDDocument document, File file, SaveProfile profile) throws IOException {
+        SaveProfile selected = profile != null ? profile : defaultProfile;
+        logger.trace("Saving {} with {} profile", file.getName(), selected);
+        if (ObjectGraph.hasImportedObjects(document)) {
+            int renumbered = ObjectGraph.walk(document.getDocument().getTrailer()).separateNumberCollisions();
+            if (renumbered > 0) {
+                logger.debug("Renumbered {} objects sharing an object number in {}", renumbered, file.getName());
+            }
+        }
+        switch (selected) {
+            case COMPATIBLE -> document.save(file, CompressParameters.NO_COMPRESSION);
+            case OPTIMIZED -> {
+                int merged = StreamDeduplicator.deduplicate(document);
+                if (merged > 0) {
+                    logger.debug("Merged {} duplicate streams in {}", merged, file.getName());
+                }
+                document.save(file, CompressParameters.DEFAULT_COMPRESSION);
+            }
+            default -> document.save(file, CompressParameters.DEFAULT_COMPRESSION);
+        }
+    }
+
+    /**
+     * Save the changes made to a document since it was loaded as an incremental
+     * update: the bytes of the source file are kept and a short section with the
+     * changed objects is appended, in place when the target is the source file.
+     * When an update cannot be appended (see {@link #checkIncremental}) the
+     * document is saved in full with the given profile instead.
+     *
+     * @param document Document loaded from {@code source}
+     * @param source   File the document was loaded from
+     * @param target   File to write; may be {@code source}
+     * @param profile  Profile for a full save, or null for the default
+     * @return true if an update was appended, false if the document was saved in full
+     * @throws IOException If writing fails, or an encrypted document can only be saved in full
+     */
+    public static boolean saveIncremental(PDDocument document, File source, File target, SaveProfile profile)
+            throws IOException {
+        boolean inPlace = target.getCanonicalFile().equals(source.getCanonicalFile());
+        String blocker = checkIncremental(document, source);
+        if (blocker != null) {
+            if (document.isEncrypted() && !document.isAllSecurityToBeRemoved()) {
+                throw new IOException("Cannot save encrypted document " + source.getName() + ": " + blocker);
+            }
+            logger.info("Saving {} in full: {}", target.getName(), blocker);
+            if (inPlace) {
+                replace(document, target, profile);
+            } else {
+                save(document, target, profile);
+            }
+            return false;
+        }
+
+        long sourceLength = source.length();
+        byte[] update = incrementOf(document, sourceLength);
+        if (inPlace) {
+            append(target.toPath(), sourceLength, update);
+        } else {
+            Path temp = Files.createTempFile(target.getAbsoluteFile().getParentFile().toPath(), ".save-", ".tmp");
+            try {
+                Files.copy(source.toPath(), temp, StandardCopyOption.REPLACE_EXISTING);
+                append(temp, sourceLength, update);
+                moveIntoPlace(temp, target.toPath());
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(temp);
+                throw e;
+            }
+        }
+        logger.debug("Appended {} byte update to {}", update.length, target.getName());
+        return true;
+    }
+
+    /**
+     * Why the changes to a document cannot be appended to the file it was
+     * loaded from as an incremental update, or null if they can.
+     * An update must leave the encryption as it is and refer back to the
+     * file's own cross-reference section, so it is not valid when security is
+     * added, changed or removed, or when the file had to be repaired on loading.
+     */
+    public static String checkIncremental(PDDocument document, File source) throws IOException {
+        if (!source.isFile()) {
+            return "source file is missing";
+        }
+        if (document.isAllSecurityToBeRemoved()) {
+            return "security is being removed";
+        }
+        PDEncryption encryption = document.getEncryption();
+        if (encryption != null && encryption.getSecurityHandler() != null
+                && encryption.getSecurityHandler().hasProtectionPolicy()) {
+            return "security is being changed";
+        }
+        long startXref = document.getDocument().getStartXref();
+        if (startXref <= 0 || startXref >= source.length()) {
+            return "cross-reference section was rebuilt on loading";
+        }
+        return null;
+    }
+
+    /**
+     * The update section PDFBox writes after a copy of the source file.
+     */
+    private static byte[] incrementOf(PDDocument document, long sourceLength) throws IOException {
+        ByteArrayOutputStream update = new ByteArrayOutputStream();
+        document.saveIncremental(new TailOutputStream(sourceLength, update));
+        return update.toByteArray();
+    }
+
+    /**
+     * Append an update to a file, or leave the file as it was if that fails.
+     */
+    private static void append(Path file, long expectedLength, byte[] update) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            long length = channel.size();
+            if (length != expectedLength) {
+                throw new IOException(file.getFileName() + " changed while it was being edited");
+            }
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(update);
+                long position = length;
+                while (buffer.hasRemaining()) {
+                    position += channel.write(buffer, position);
+                }
+                channel.force(false);
+            } catch (IOException e) {
+                channel.truncate(length);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Save in full over the file the document is still reading from.
+     */
+    private static void replace(PDDocument document, File target, SaveProfile profile) throws IOException {
+        Path temp = Files.createTempFile(target.getAbsoluteFile().getParentFile().toPath(), ".save-", ".tmp");
+        try {
+            save(document, temp.toFile(), profile);
+            moveIntoPlace(temp, target.toPath());
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+    }
+
+    private static void moveIntoPlace(Path temp, Path target) throws IOException {
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Drops the first bytes written to it, i.e. the copy of the source file
+     * an incremental save starts with, and keeps the rest.
+     */
+    private static final class TailOutputStream extends OutputStream {
+        private final OutputStream tail;
+        private long skip;
+
+        TailOutputStream(long skip, OutputStream tail) {
+            this.skip = skip;
+            this.tail = tail;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (skip > 0) {
+                skip--;
+            } else {
+                tail.write(b);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            int skipped = (int) Math.min(skip, len);
+            skip -= skipped;
+            if (len > skipped) {
+                tail.write(b, off + skipped, len - skipped);
+            }
+        }
+    }
+}
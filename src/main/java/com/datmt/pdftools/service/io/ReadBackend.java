@@ -0,0 +1,9 @@
+package com.datmt.pdftools.service.io;
+
+/**
+ * Strategy used to read PDF bytes from disk.
+ */
+public enum ReadBackend {
+    BUFFERED,       // RandomAccessReadBufferedFile - small heap buffer, re-reads on seek
+    MEMORY_MAPPED   // MappedFileRandomAccessRead - file mapped into virtual memory
+}
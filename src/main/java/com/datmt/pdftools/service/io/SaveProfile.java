@@ -0,0 +1,10 @@
+package com.datmt.pdftools.service.io;
+
+/**
+ * How a PDF is written to disk.
+ */
+public enum SaveProfile {
+    COMPATIBLE, // Classic xref table, every object written on its own, for old readers
+    STANDARD,   // Non-stream objects packed into compressed object streams with an xref stream
+    OPTIMIZED   // STANDARD, plus byte-identical streams written once
+}
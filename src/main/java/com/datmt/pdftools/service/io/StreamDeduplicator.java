@@ -0,0 +1,191 @@
+package com.datmt.pdftools.service.io;
+
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.cos.COSString;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Points every reference to a byte-identical stream at a single copy of it,
+ * so that images, fonts and forms repeated in a document are written once.
+ * <p>
+ * Two streams are identical when their stored bytes (SHA-256) and their
+ * dictionaries match; references in the dictionaries compare by target, so
+ * e.g. two images become identical once their duplicate ICC profiles are
+ * merged. Objects are not modified in place, apart from the trailer: each
+ * container on a path from the trailer to a duplicate is replaced by a
+ * shallow copy with its references rewired. Documents that share objects
+ * with this one, such as the source of extracted pages, are left unchanged.
+ */
+public final class StreamDeduplicator {
+    private static final Logger logger = LoggerFactory.getLogger(StreamDeduplicator.class);
+
+    // Merging streams can make streams that refer to them identical; stop after this many rounds
+    private static final int MAX_PASSES = 4;
+    // Direct dictionaries and arrays deeper than this compare by identity
+    private static final int MAX_SIGNATURE_DEPTH = 8;
+
+    private StreamDeduplicator() {
+    }
+
+    /**
+     * Merge duplicate streams of a document before it is saved.
+     *
+     * @return Number of streams that are no longer written
+     */
+    public static int deduplicate(PDDocument document) throws IOException {
+        if (document.isEncrypted() || document.getEncryption() != null) {
+            logger.debug("Skipping stream deduplication of an encrypted document");
+            return 0;
+        }
+        ObjectGraph graph = ObjectGraph.walk(document.getDocument().getTrailer());
+        Map<COSBase, COSBase> duplicates = findDuplicates(graph);
+        if (!duplicates.isEmpty()) {
+            int copied = graph.replace(duplicates);
+            logger.trace("Copied {} containers to drop {} duplicate streams", copied, duplicates.size());
+        }
+        return duplicates.size();
+    }
+
+    /**
+     * Map each duplicate stream to the stream kept in its place.
+     */
+    private static Map<COSBase, COSBase> findDuplicates(ObjectGraph graph) {
+        List<COSStream> streams = new ArrayList<>();
+        for (COSBase container : graph.containers()) {
+            if (container instanceof COSStream stream) {
+                streams.add(stream);
+            }
+        }
+        Map<COSBase, COSBase> duplicates = new IdentityHashMap<>();
+        Map<COSBase, Integer> ids = new IdentityHashMap<>();
+        Map<COSStream, String> digests = new IdentityHashMap<>();
+        MessageDigest sha256 = sha256();
+
+        for (int pass = 0; pass < MAX_PASSES; pass++) {
+            // Cheap grouping first; only streams that could match are hashed
+            Map<String, List<COSStream>> candidates = new HashMap<>();
+            for (COSStream stream : streams) {
+                if (!duplicates.containsKey(stream)) {
+                    String key = stream.getLength() + signature(stream, 0, duplicates, ids);
+                    candidates.computeIfAbsent(key, k -> new ArrayList<>()).add(stream);
+                }
+            }
+            int found = 0;
+            for (List<COSStream> group : candidates.values()) {
+                if (group.size() < 2) {
+                    continue;
+                }
+                Map<String, COSStream> kept = new HashMap<>();
+                for (COSStream stream : group) {
+                    String digest;
+                    try {
+                        digest = digests.computeIfAbsent(stream, s -> digest(s, sha256));
+                    } catch (UncheckedIOException e) {
+                        logger.debug("Not merging unreadable stream: {}", e.getCause().getMessage());
+                        continue;
+                    }
+                    COSStream original = kept.putIfAbsent(digest, stream);
+                    if (original != null) {
+                        duplicates.put(stream, original);
+                        found++;
+                    }
+                }
+            }
+            if (found == 0) {
+                break;
+            }
+        }
+        return duplicates;
+    }
+
+    /**
+     * Text form of a dictionary, with /Length left out and references replaced
+     * by an id of their (merged) target.
+     */
+    private static String signature(COSDictionary dict, int depth, Map<COSBase, COSBase> duplicates,
+                                    Map<COSBase, Integer> ids) {
+        List<Map.Entry<COSName, COSBase>> entries = new ArrayList<>(dict.entrySet());
+        entries.sort(Comparator.comparing(entry -> entry.getKey().getName()));
+        StringBuilder text = new StringBuilder("<<");
+        for (Map.Entry<COSName, COSBase> entry : entries) {
+            if (depth == 0 && COSName.LENGTH.equals(entry.getKey())) {
+                continue;
+            }
+            text.append('/').append(entry.getKey().getName()).append(' ')
+                    .append(signature(entry.getValue(), depth, duplicates, ids)).append(' ');
+        }
+        return text.append(">>").toString();
+    }
+
+    private static String signature(COSBase value, int depth, Map<COSBase, COSBase> duplicates,
+                                    Map<COSBase, Integer> ids) {
+        if (value instanceof COSName name) {
+            return "/" + name.getName();
+        }
+        if (value instanceof COSString string) {
+            return "<" + string.toHexString() + ">";
+        }
+        boolean nested = depth < MAX_SIGNATURE_DEPTH;
+        if (value instanceof COSStream || value instanceof COSObject || !nested) {
+            COSBase target = ObjectGraph.resolve(value);
+            if (target instanceof COSDictionary || target instanceof COSArray) {
+                target = duplicates.getOrDefault(target, target);
+                return "@" + ids.computeIfAbsent(target, k -> ids.size());
+            }
+            return target == null ? "null" : target.toString();
+        }
+        if (value instanceof COSDictionary dict) {
+            return signature(dict, depth + 1, duplicates, ids);
+        }
+        if (value instanceof COSArray array) {
+            StringBuilder text = new StringBuilder("[");
+            for (int i = 0; i < array.size(); i++) {
+                text.append(signature(array.get(i), depth + 1, duplicates, ids)).append(' ');
+            }
+            return text.append(']').toString();
+        }
+        return String.valueOf(value);
+    }
+
+    private static String digest(COSStream stream, MessageDigest sha256) {
+        sha256.reset();
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = stream.createRawInputStream()) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                sha256.update(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return HexFormat.of().formatHex(sha256.digest());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
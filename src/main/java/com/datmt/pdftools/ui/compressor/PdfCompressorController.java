@@ -1,5 +1,6 @@
 package com.datmt.pdftools.ui.compressor;
 
+import com.datmt.pdftools.service.DocumentPool;
 import com.datmt.pdftools.service.PdfCompressor;
 import com.datmt.pdftools.service.PdfCompressor.CompressResult;
 import com.datmt.pdftools.service.PdfCompressor.CompressionLevel;
@@ -20,6 +21,8 @@ import com.datmt.pdftools.util.CreditLinkHandler;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -221,52 +224,52 @@ public class PdfCompressorController {
         }
 
         int totalFiles = filesToCompress.size();
+        progressLabel.setText("Compressing " + totalFiles + " files");
 
-        // Process files sequentially (page-level parallelism is inside PdfCompressor)
+        // Files are scheduled by PdfCompressor, two at a time on its shared pool
         compressionExecutor.submit(() -> {
-            List<CompressResult> allResults = new ArrayList<>();
+            Map<File, CompressResult> replaced = new ConcurrentHashMap<>();
+
+            PdfCompressor.BatchResult batch = compressor.compressAll(filesToCompress, inputFile -> overwrite
+                            ? new File(inputFile.getParent(), inputFile.getName().replace(".pdf", "_temp_compress.pdf"))
+                            : new File(inputFile.getParent(), inputFile.getName().replace(".pdf", "_compressed.pdf")),
+                    options, new PdfCompressor.BatchCallback() {
+                        @Override
+                        public void onProgress(File file, int current, int total, String status) {
+                            Platform.runLater(() -> progressDetailLabel.setText(
+                                    file.getName() + ": " + status + " - " + current + "/" + total));
+                        }
 
-            for (int i = 0; i < totalFiles; i++) {
-                File inputFile = filesToCompress.get(i);
-                final int fileIndex = i;
-
-                Platform.runLater(() -> {
-                    progressLabel.setText("Compressing: " + inputFile.getName() +
-                            " (" + (fileIndex + 1) + "/" + totalFiles + ")");
-                    progressBar.setProgress((double) fileIndex / totalFiles);
-                });
-
-                logger.info("Starting compression of: {}", inputFile.getName());
-
-                // Determine output file
-                File outputFile;
-                if (overwrite) {
-                    outputFile = new File(inputFile.getParent(),
-                            inputFile.getName().replace(".pdf", "_temp_compress.pdf"));
-                } else {
-                    outputFile = new File(inputFile.getParent(),
-                            inputFile.getName().replace(".pdf", "_compressed.pdf"));
-                }
-
-                // Compress with progress callback
-                CompressResult result = compressor.compress(inputFile, outputFile, options,
-                        (page, total, status) -> Platform.runLater(() ->
-                                progressDetailLabel.setText(status + " - page " + page + "/" + total)));
-
-                // If overwrite mode and successful, replace original
-                if (overwrite && result.isSuccess()) {
-                    try {
-                        if (inputFile.delete() && outputFile.renameTo(inputFile)) {
-                            result = new CompressResult(inputFile, inputFile,
-                                    result.getOriginalSize(), result.getCompressedSize());
+                        @Override
+                        public void onFileComplete(PdfCompressor.BatchItem item, int completedFiles, int total) {
+                            CompressResult result = item.result();
+                            File inputFile = result.getInputFile();
+                            // If overwrite mode and successful, replace original
+                            if (overwrite && result.isSuccess()) {
+                                try {
+                                    DocumentPool.getInstance().invalidate(inputFile);
+                                    if (inputFile.delete() && result.getOutputFile().renameTo(inputFile)) {
+                                        replaced.put(inputFile, new CompressResult(inputFile, inputFile,
+                                                result.getOriginalSize(), result.getCompressedSize(),
+                                                result.getCompressedImages(), result.getDeduplicatedImages(),
+                                                result.getImageReports()));
+                                    }
+                                } catch (Exception e) {
+                                    logger.error("Failed to replace original file: {}", e.getMessage());
+                                }
+                            }
+                            logger.info("Finished compression of: {} (success={})",
+                                    inputFile.getName(), result.isSuccess());
+                            Platform.runLater(() -> {
+                                progressLabel.setText("Compressed " + completedFiles + "/" + total + " files");
+                                progressBar.setProgress((double) completedFiles / total);
+                            });
                         }
-                    } catch (Exception e) {
-                        logger.error("Failed to replace original file: {}", e.getMessage());
-                    }
-                }
+                    });
 
-                allResults.add(result);
-                logger.info("Finished compression of: {} (success={})", inputFile.getName(), result.isSuccess());
+            List<CompressResult> allResults = new ArrayList<>();
+            for (PdfCompressor.BatchItem item : batch.items()) {
+                allResults.add(replaced.getOrDefault(item.result().getInputFile(), item.result()));
             }
 
             Platform.runLater(() -> {
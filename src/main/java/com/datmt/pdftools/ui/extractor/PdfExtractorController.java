@@ -2,7 +2,14 @@ package com.datmt.pdftools.ui.extractor;
 
 import com.datmt.pdftools.model.PdfBookmark;
 import com.datmt.pdftools.model.PdfDocument;
+import com.datmt.pdftools.service.PageImageCache;
+import com.datmt.pdftools.service.RenderScheduler;
+import com.datmt.pdftools.service.PdfRenderService;
 import com.datmt.pdftools.service.PdfService;
+import com.datmt.pdftools.service.ThumbnailDiskCache;
+import com.datmt.pdftools.service.image.ColorMode;
+import com.datmt.pdftools.service.image.PackedImage;
+import com.datmt.pdftools.service.image.PageThumbnails;
 import com.datmt.pdftools.ui.extractor.components.PageThumbnailPanel;
 import javafx.animation.KeyFrame;
 import javafx.animation.Timeline;
@@ -12,6 +19,7 @@ import javafx.fxml.FXML;
 import javafx.scene.control.*;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
+import javafx.scene.Group;
 import javafx.scene.layout.Pane;
 import javafx.scene.layout.StackPane;
 import javafx.scene.layout.VBox;
@@ -32,11 +40,14 @@ import javafx.scene.text.TextAlignment;
 import com.datmt.pdftools.util.CreditLinkHandler;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
@@ -47,6 +58,10 @@ import java.util.stream.Collectors;
 public class PdfExtractorController {
     private static final Logger logger = LoggerFactory.getLogger(PdfExtractorController.class);
     private static final int MAX_RENDERED_THUMBNAILS = 100;
+    // Memory of MAX_RENDERED_THUMBNAILS full-colour thumbnails; grey and 1-bit ones fit 4-32x more
+    private static final long THUMBNAIL_MEMORY_BUDGET = (long) MAX_RENDERED_THUMBNAILS
+            * PdfRenderService.THUMBNAIL_MAX_SIZE * PdfRenderService.THUMBNAIL_MAX_SIZE * 4;
+    private static final ColorMode THUMBNAIL_COLOR_MODE = ColorMode.AUTO;
     private static final int BUFFER_SIZE = 5; // Extra panels above/below viewport to preload
     private static final int PANEL_HEIGHT = 130; // Approximate height of each thumbnail panel
 
@@ -70,6 +85,10 @@ public class PdfExtractorController {
     @FXML
     private Button prevButton, nextButton;
     @FXML
+    private Button zoomInButton, zoomOutButton, zoomFitButton;
+    @FXML
+    private Label zoomLabel;
+    @FXML
     private VBox selectedPagesList;
     @FXML
     private ScrollPane selectedPagesScrollPane;
@@ -84,6 +103,8 @@ public class PdfExtractorController {
     @FXML
     private TextField outputFileField;
     @FXML
+    private CheckBox incrementalExportCheck;
+    @FXML
     private Button browseButton, exportButton;
     @FXML
     private Button selectAllButton, deselectAllButton;
@@ -116,14 +137,38 @@ public class PdfExtractorController {
     private ImageView currentImageView;
     private PageThumbnailPanel currentSelectedPanel;
     private List<PdfBookmark> currentBookmarks;
-    private final ExecutorService renderExecutor = Executors.newFixedThreadPool(4); // Limit threads to save RAM
+    private final RenderScheduler renderScheduler = new RenderScheduler("extractor-render", 4); // Limit threads to save RAM
     private final AtomicReference<Object> currentSessionId = new AtomicReference<>(); // Token to track active request
+    private final ThumbnailDiskCache thumbnailCache = ThumbnailDiskCache.getInstance();
 
     // Lazy loading state
     private Image placeholderImage;
-    private Set<Integer> renderedThumbnails = new HashSet<>();
+    private Set<Integer> renderedThumbnails = new HashSet<>(); // Shown or pending
+    private final Map<Integer, CompletableFuture<PackedImage>> pendingThumbnails = new HashMap<>();
+    // Packed thumbnails kept in memory, least recently used first. Only panels near
+    // the viewport hold a full-colour image; the others are refilled from here.
+    private final LinkedHashMap<Integer, PackedImage> residentThumbnails = new LinkedHashMap<>(64, 0.75f, true);
+    private long residentBytes;
+    private RenderScheduler.Generation thumbnailGeneration = renderScheduler.newGeneration();
     private Timeline scrollDebounceTimeline;
 
+    // Zoomed preview: the page is split into tiles rendered at the zoom DPI on top of a low-res base layer
+    private static final int[] ZOOM_DPI_STEPS = {72, 108, 144, 216, 288, 432, 576, 720};
+    private static final int TILE_SIZE = 512;
+    private int zoomStep = -1; // -1 = fit to width
+    private Pane tileLayer;
+    private int tileLayerDpi;
+    private final Map<Long, ImageView> tileViews = new HashMap<>();
+    private final Set<Long> requestedTiles = ConcurrentHashMap.newKeySet();
+    private RenderScheduler.Generation tileGeneration = renderScheduler.newGeneration();
+
+    // Progressive preview: drafts and full renders run on their own threads so
+    // neither waits behind thumbnails; stale generations are skipped
+    private final ExecutorService draftExecutor = Executors.newSingleThreadExecutor();
+    private final ExecutorService previewExecutor = Executors.newSingleThreadExecutor();
+    private final AtomicInteger previewGeneration = new AtomicInteger();
+    private int shownGeneration = -1; // Generation whose first image is on screen (FX thread only)
+
     // Page rotation tracking (pageIndex -> rotation in degrees: 0, 90, 180, 270)
     private Map<Integer, Integer> pageRotations = new HashMap<>();
 
@@ -143,6 +188,7 @@ public class PdfExtractorController {
         setupEventHandlers();
         setupBookmarkTreeView();
         setupLazyLoading();
+        setupTiledPreview();
         setupWindowCloseHandler();
         logger.debug("Controller initialization complete");
     }
@@ -162,17 +208,25 @@ public class PdfExtractorController {
     public void cleanup() {
         logger.info("Cleaning up PdfExtractorController resources");
 
-        // Shut down the executor service
-        renderExecutor.shutdownNow();
+        // Shut down the executor services
+        logger.info("Render scheduler: {}", renderScheduler.getMetrics());
+        logger.info("Thumbnail sources: {}", PageThumbnails.getSourceCounts());
+        renderScheduler.shutdown();
+        draftExecutor.shutdownNow();
+        previewExecutor.shutdownNow();
 
-        // Close the PDF document
+        // Close the PDF document and persist pending thumbnails
         pdfService.closeDocument();
+        thumbnailCache.flushAll();
 
         // Clear thumbnail panels and caches
         thumbnailPanels.clear();
         renderedThumbnails.clear();
+        pendingThumbnails.clear();
+        clearResidentThumbnails();
         pagesListContainer.getChildren().clear();
         previewContainer.getChildren().clear();
+        clearTiledPreview();
 
         // Stop any pending debounce
         if (scrollDebounceTimeline != null) {
@@ -383,18 +437,20 @@ public class PdfExtractorController {
 
         // 4. Create a list of Future tasks
         List<CompletableFuture<Void>> futures = new ArrayList<>();
+        RenderScheduler.Generation generation = renderScheduler.newGeneration();
 
         for (int i = 0; i < document.getPageCount(); i++) {
             final int pageIndex = i;
 
             // Create an async task for each page
-            CompletableFuture<Void> future = CompletableFuture.runAsync(() -> {
+            CompletableFuture<Void> future = renderScheduler.submit(thumbnailKey(document, pageIndex),
+                    RenderScheduler.Priority.PREFETCH, generation, () -> {
                 // A. Check for cancellation (Race Condition Check)
-                if (currentSessionId.get() != mySessionId) return;
+                if (currentSessionId.get() != mySessionId) return null;
 
                 try {
                     // B. Heavy Lifting (Render)
-                    Image thumbnail = pdfService.renderPageThumbnail(pageIndex);
+                    Image thumbnail = loadThumbnailImage(pageIndex).toImage();
 
                     // C. Create Panel (Lightweight, unattached node)
                     PageThumbnailPanel panel = new PageThumbnailPanel(
@@ -410,9 +466,10 @@ public class PdfExtractorController {
                 } catch (Exception e) {
                     logger.error("Failed to render page {}", pageIndex, e);
                 }
-            }, renderExecutor);
+                return null;
+            });
 
-            futures.add(future);
+            futures.add(future.exceptionally(e -> null));
         }
 
         // 5. When ALL tasks are finished...
@@ -448,7 +505,11 @@ public class PdfExtractorController {
         // Clear previous state
         container.getChildren().clear();
         if (trackerList != null) trackerList.clear();
+        renderScheduler.cancel(thumbnailGeneration);
+        thumbnailGeneration = renderScheduler.newGeneration();
         renderedThumbnails.clear();
+        pendingThumbnails.clear();
+        clearResidentThumbnails();
 
         logger.debug("Creating {} placeholder panels for lazy loading", document.getPageCount());
 
@@ -481,30 +542,49 @@ public class PdfExtractorController {
         }
 
         int[] visibleRange = getVisiblePanelRange();
+        int lastPanel = thumbnailPanels.size() - 1;
         int firstVisible = visibleRange[0];
         int lastVisible = visibleRange[1];
+        // Prefetch the buffer around the viewport, then speculatively one more buffer beyond it
+        int firstBuffered = Math.max(0, firstVisible - BUFFER_SIZE);
+        int lastBuffered = Math.min(lastPanel, lastVisible + BUFFER_SIZE);
+        int firstSpeculative = Math.max(0, firstBuffered - BUFFER_SIZE);
+        int lastSpeculative = Math.min(lastPanel, lastBuffered + BUFFER_SIZE);
 
-        logger.trace("Visible range: {} to {}, currently rendered: {}", firstVisible, lastVisible, renderedThumbnails.size());
+        logger.trace("Visible range: {} to {}, currently shown: {}, resident: {} ({} KB), queued renders: {}",
+                firstVisible, lastVisible, renderedThumbnails.size(), residentThumbnails.size(),
+                residentBytes / 1024, renderScheduler.getQueueDepth());
+
+        // Panels that left the window give their image back; the packed copy stays resident
+        releaseThumbnailsOutside(firstSpeculative, lastSpeculative);
 
         // Determine which panels need to be loaded
         Set<Integer> toLoad = new HashSet<>();
-        for (int i = firstVisible; i <= lastVisible; i++) {
-            if (i >= 0 && i < thumbnailPanels.size() && !renderedThumbnails.contains(i)) {
+        for (int i = firstSpeculative; i <= lastSpeculative; i++) {
+            if (!renderedThumbnails.contains(i)) {
                 toLoad.add(i);
             }
         }
 
-        // If we would exceed the limit, unload furthest non-visible thumbnails first
-        int willBeRendered = renderedThumbnails.size() + toLoad.size();
-        if (willBeRendered > MAX_RENDERED_THUMBNAILS) {
-            int toUnload = willBeRendered - MAX_RENDERED_THUMBNAILS;
-            unloadFurthestThumbnails(firstVisible, lastVisible, toUnload);
-        }
-
-        // Load visible thumbnails
-        for (int pageIndex : toLoad) {
-            loadThumbnailForPage(pageIndex);
+        // Requests still queued for the old viewport are resubmitted under the new
+        // generation (the scheduler merges them); whatever is left behind is cancelled
+        RenderScheduler.Generation previous = thumbnailGeneration;
+        thumbnailGeneration = renderScheduler.newGeneration();
+        for (int i = firstSpeculative; i <= lastSpeculative; i++) {
+            if (!toLoad.contains(i) && !pendingThumbnails.containsKey(i)) {
+                continue;
+            }
+            RenderScheduler.Priority priority;
+            if (i >= firstVisible && i <= lastVisible) {
+                priority = RenderScheduler.Priority.VISIBLE;
+            } else if (i >= firstBuffered && i <= lastBuffered) {
+                priority = RenderScheduler.Priority.PREFETCH;
+            } else {
+                priority = RenderScheduler.Priority.SPECULATIVE;
+            }
+            loadThumbnailForPage(i, priority);
         }
+        renderScheduler.cancel(previous);
     }
 
     private int[] getVisiblePanelRange() {
@@ -556,62 +636,121 @@ public class PdfExtractorController {
             lastVisible = Math.min(BUFFER_SIZE * 2, thumbnailPanels.size() - 1);
         }
 
-        // Add buffer
-        firstVisible = Math.max(0, firstVisible - BUFFER_SIZE);
-        lastVisible = Math.min(thumbnailPanels.size() - 1, lastVisible + BUFFER_SIZE);
-
         return new int[]{firstVisible, lastVisible};
     }
 
-    private void loadThumbnailForPage(int pageIndex) {
-        if (renderedThumbnails.contains(pageIndex) || pageIndex < 0 || pageIndex >= thumbnailPanels.size()) {
+    private void loadThumbnailForPage(int pageIndex, RenderScheduler.Priority priority) {
+        if (pageIndex < 0 || pageIndex >= thumbnailPanels.size()) {
+            return;
+        }
+        PdfDocument document = pdfService.getCurrentDocument();
+        Object key = thumbnailKey(document, pageIndex);
+        if (pendingThumbnails.containsKey(pageIndex)) {
+            // Already queued: move it to the current generation and priority
+            renderScheduler.promote(key, priority, thumbnailGeneration);
+            return;
+        }
+        if (renderedThumbnails.contains(pageIndex)) {
+            return;
+        }
+        PackedImage resident = residentThumbnails.get(pageIndex);
+        if (resident != null) {
+            renderedThumbnails.add(pageIndex);
+            thumbnailPanels.get(pageIndex).setThumbnail(resident.toImage());
             return;
         }
 
         // Mark as pending to avoid duplicate loads
         renderedThumbnails.add(pageIndex);
+        CompletableFuture<PackedImage> future = renderScheduler.submit(key, priority, thumbnailGeneration,
+                () -> loadThumbnailImage(pageIndex));
+        pendingThumbnails.put(pageIndex, future);
 
-        CompletableFuture.runAsync(() -> {
-            try {
-                Image thumbnail = pdfService.renderPageThumbnail(pageIndex);
-                Platform.runLater(() -> {
-                    if (pageIndex < thumbnailPanels.size()) {
-                        thumbnailPanels.get(pageIndex).setThumbnail(thumbnail);
-                        logger.trace("Loaded thumbnail for page {}", pageIndex);
-                    }
-                });
-            } catch (Exception e) {
-                logger.error("Failed to load thumbnail for page {}", pageIndex, e);
+        future.whenComplete((thumbnail, error) -> Platform.runLater(() -> {
+            // Ignore results superseded by a newer request or document
+            if (!pendingThumbnails.remove(pageIndex, future)) {
+                return;
+            }
+            if (error != null) {
+                if (!(error instanceof CancellationException)) {
+                    logger.error("Failed to load thumbnail for page {}", pageIndex, error);
+                }
                 // Remove from rendered set so it can be retried
                 renderedThumbnails.remove(pageIndex);
+            } else if (pageIndex < thumbnailPanels.size() && renderedThumbnails.contains(pageIndex)) {
+                keepResident(pageIndex, thumbnail);
+                thumbnailPanels.get(pageIndex).setThumbnail(thumbnail.toImage());
+                logger.trace("Loaded thumbnail for page {}", pageIndex);
             }
-        }, renderExecutor);
+        }));
     }
 
-    private void unloadFurthestThumbnails(int firstVisible, int lastVisible, int count) {
-        // Find rendered thumbnails that are furthest from the visible range
-        List<Integer> candidates = new ArrayList<>(renderedThumbnails);
+    /**
+     * Scheduler key of a page thumbnail.
+     */
+    private static Object thumbnailKey(PdfDocument document, int pageIndex) {
+        return new ThumbnailKey(document.getPdfDocument(), pageIndex);
+    }
 
-        // Sort by distance from visible range (furthest first)
-        int center = (firstVisible + lastVisible) / 2;
-        candidates.sort((a, b) -> {
-            int distA = Math.min(Math.abs(a - firstVisible), Math.abs(a - lastVisible));
-            int distB = Math.min(Math.abs(b - firstVisible), Math.abs(b - lastVisible));
-            return Integer.compare(distB, distA); // Descending order (furthest first)
-        });
+    private record ThumbnailKey(Object document, int pageIndex) {
+    }
 
-        // Unload the furthest ones (but not those in visible range)
-        int unloaded = 0;
-        for (int pageIndex : candidates) {
-            if (unloaded >= count) break;
-            if (pageIndex < firstVisible || pageIndex > lastVisible) {
-                if (pageIndex >= 0 && pageIndex < thumbnailPanels.size()) {
-                    thumbnailPanels.get(pageIndex).clearThumbnail(placeholderImage);
-                    renderedThumbnails.remove(pageIndex);
-                    unloaded++;
-                    logger.trace("Unloaded thumbnail for page {}", pageIndex);
-                }
+    /**
+     * Get a page thumbnail from the disk cache, rendering and storing it on a miss.
+     */
+    private PackedImage loadThumbnailImage(int pageIndex) throws IOException {
+        PdfDocument document = pdfService.getCurrentDocument();
+        File file = document.getSourceFile();
+        float dpi = pdfService.getThumbnailDpi(pageIndex);
+        PackedImage thumbnail = thumbnailCache.get(file, pageIndex, dpi, THUMBNAIL_COLOR_MODE);
+        if (thumbnail != null) {
+            return thumbnail;
+        }
+        thumbnail = pdfService.renderPageThumbnail(pageIndex, THUMBNAIL_COLOR_MODE);
+        // Only store it if the document was not replaced while rendering
+        if (pdfService.getCurrentDocument() == document) {
+            thumbnailCache.put(file, pageIndex, dpi, THUMBNAIL_COLOR_MODE, thumbnail);
+        }
+        return thumbnail;
+    }
+
+    /**
+     * Keep a packed thumbnail in memory, dropping the least recently used ones over the budget.
+     */
+    private void keepResident(int pageIndex, PackedImage thumbnail) {
+        PackedImage previous = residentThumbnails.put(pageIndex, thumbnail);
+        if (previous != null) {
+            residentBytes -= previous.getSizeInBytes();
+        }
+        residentBytes += thumbnail.getSizeInBytes();
+        Iterator<PackedImage> it = residentThumbnails.values().iterator();
+        while (residentBytes > THUMBNAIL_MEMORY_BUDGET && it.hasNext()) {
+            residentBytes -= it.next().getSizeInBytes();
+            it.remove();
+        }
+    }
+
+    private void clearResidentThumbnails() {
+        residentThumbnails.clear();
+        residentBytes = 0;
+    }
+
+    /**
+     * Put the placeholder back on shown panels outside the given range.
+     * Pending loads are left to the scheduler's generation cancellation.
+     */
+    private void releaseThumbnailsOutside(int first, int last) {
+        Iterator<Integer> it = renderedThumbnails.iterator();
+        while (it.hasNext()) {
+            int pageIndex = it.next();
+            if ((pageIndex >= first && pageIndex <= last) || pendingThumbnails.containsKey(pageIndex)) {
+                continue;
+            }
+            it.remove();
+            if (pageIndex < thumbnailPanels.size()) {
+                thumbnailPanels.get(pageIndex).clearThumbnail(placeholderImage);
             }
+            logger.trace("Released thumbnail for page {}", pageIndex);
         }
     }
 
@@ -654,49 +793,273 @@ public class PdfExtractorController {
         prevButton.setDisable(pageIndex == 0);
         nextButton.setDisable(pageIndex >= pdfService.getCurrentDocument().getPageCount() - 1);
 
-        Task<Image> renderTask = new Task<>() {
-            @Override
-            protected Image call() throws Exception {
-                logger.trace("Background task: rendering page {} for preview", pageIndex);
-                return pdfService.renderPage(pageIndex);
-            }
-        };
+        // Progressive preview: show a cached or draft image at once, then swap in the full render
+        int generation = previewGeneration.incrementAndGet();
+        Image cached = pdfService.getCachedPage(pageIndex);
+        if (cached != null) {
+            displayPreview(pageIndex, cached, generation);
+            return;
+        }
+
+        Image thumbnail = null;
+        if (pageIndex >= 0 && pageIndex < thumbnailPanels.size()) {
+            thumbnail = thumbnailPanels.get(pageIndex).getThumbnail();
+        }
+        if (thumbnail != null) {
+            displayPreview(pageIndex, thumbnail, generation);
+        } else {
+            draftExecutor.submit(() -> {
+                if (previewGeneration.get() != generation) {
+                    return;
+                }
+                try {
+                    Image draft = pdfService.renderPageDraft(pageIndex);
+                    Platform.runLater(() -> {
+                        // The full render may have won the race
+                        if (previewGeneration.get() == generation && shownGeneration != generation) {
+                            displayPreview(pageIndex, draft, generation);
+                        }
+                    });
+                } catch (Exception e) {
+                    logger.debug("Draft render failed for page {}: {}", pageIndex, e.getMessage());
+                }
+            });
+        }
 
-        renderTask.setOnSucceeded(e -> {
-            Image image = renderTask.getValue();
-            if (image == null) {
-                logger.warn("Rendered image is null for page {}", pageIndex);
+        previewExecutor.submit(() -> {
+            // Skip refinements for pages the user has already moved past
+            if (previewGeneration.get() != generation) {
                 return;
             }
-            previewContainer.getChildren().clear();
-            currentImageView = new ImageView(image);
-            currentImageView.setPreserveRatio(true);
+            try {
+                logger.trace("Background task: rendering page {} for preview", pageIndex);
+                Image image = pdfService.renderPage(pageIndex);
+                Platform.runLater(() -> {
+                    if (previewGeneration.get() == generation) {
+                        displayPreview(pageIndex, image, generation);
+                    }
+                });
+            } catch (Exception e) {
+                logger.error("Failed to render page preview", e);
+                Platform.runLater(() -> {
+                    if (previewGeneration.get() == generation) {
+                        showError("Failed to render page preview");
+                    }
+                });
+            }
+        });
+    }
 
-            // Apply rotation if any
-            int rotation = pageRotations.getOrDefault(pageIndex, 0);
-            currentImageView.setRotate(rotation);
+    /**
+     * Show a preview image. A refinement of an image already shown for the same
+     * page only swaps the picture, so zoom tiles and scroll position are kept.
+     */
+    private void displayPreview(int pageIndex, Image image, int generation) {
+        if (shownGeneration == generation && currentImageView != null) {
+            currentImageView.setImage(image);
+            return;
+        }
+        shownGeneration = generation;
+        if (zoomStep >= 0) {
+            showTiledPreview(pageIndex, image);
+            return;
+        }
+        clearTiledPreview();
+        previewContainer.getChildren().clear();
+        currentImageView = new ImageView(image);
+        currentImageView.setPreserveRatio(true);
 
-            // Use container width if available, otherwise use image width
-            double containerWidth = previewContainer.getWidth();
-            if (containerWidth > 20) {
-                currentImageView.setFitWidth(containerWidth - 20);
-            } else {
-                // Fallback: bind to container width for when layout is calculated
-                currentImageView.fitWidthProperty().bind(
-                    previewContainer.widthProperty().subtract(20)
-                );
-            }
+        // Apply rotation if any
+        int rotation = pageRotations.getOrDefault(pageIndex, 0);
+        currentImageView.setRotate(rotation);
 
-            previewContainer.getChildren().add(currentImageView);
-            logger.trace("Page {} preview rendered and displayed with rotation {}", pageIndex, rotation);
-        });
+        // Use container width if available, otherwise use image width
+        double containerWidth = previewContainer.getWidth();
+        if (containerWidth > 20) {
+            currentImageView.setFitWidth(containerWidth - 20);
+        } else {
+            // Fallback: bind to container width for when layout is calculated
+            currentImageView.fitWidthProperty().bind(
+                previewContainer.widthProperty().subtract(20)
+            );
+        }
 
-        renderTask.setOnFailed(event -> {
-            logger.error("Failed to render page preview", renderTask.getException());
+        previewContainer.getChildren().add(currentImageView);
+        logger.trace("Page {} preview rendered and displayed with rotation {}", pageIndex, rotation);
+    }
+
+    private void setupTiledPreview() {
+        previewScrollPane.hvalueProperty().addListener((obs, oldVal, newVal) -> updateVisibleTiles());
+        previewScrollPane.vvalueProperty().addListener((obs, oldVal, newVal) -> updateVisibleTiles());
+        previewScrollPane.viewportBoundsProperty().addListener((obs, oldVal, newVal) -> updateVisibleTiles());
+        updateZoomControls();
+    }
+
+    @FXML
+    private void onZoomIn() {
+        zoomStep = Math.min(ZOOM_DPI_STEPS.length - 1, zoomStep + 1);
+        onZoomChanged();
+    }
+
+    @FXML
+    private void onZoomOut() {
+        // Zooming out past the smallest step returns to fit-to-width
+        zoomStep = Math.max(-1, zoomStep - 1);
+        onZoomChanged();
+    }
+
+    @FXML
+    private void onZoomFit() {
+        zoomStep = -1;
+        onZoomChanged();
+    }
+
+    private void onZoomChanged() {
+        updateZoomControls();
+        if (pdfService.isDocumentLoaded()) {
+            updatePreview(currentPreviewPage);
+        }
+    }
+
+    private void updateZoomControls() {
+        if (zoomStep < 0) {
+            zoomLabel.setText("Fit");
+        } else {
+            zoomLabel.setText(Math.round(ZOOM_DPI_STEPS[zoomStep] * 100 / 72.0) + "%");
+        }
+        zoomOutButton.setDisable(zoomStep < 0);
+        zoomInButton.setDisable(zoomStep >= ZOOM_DPI_STEPS.length - 1);
+    }
+
+    /**
+     * Show the page at the current zoom: the already rendered preview image is
+     * scaled up as a base layer and sharp tiles are rendered for the visible area.
+     */
+    private void showTiledPreview(int pageIndex, Image baseImage) {
+        clearTiledPreview();
+        int dpi = ZOOM_DPI_STEPS[zoomStep];
+        int[] size;
+        try {
+            size = pdfService.getPagePixelSize(pageIndex, dpi);
+        } catch (IOException e) {
+            logger.error("Failed to read size of page {}", pageIndex, e);
             showError("Failed to render page preview");
+            return;
+        }
+
+        ImageView baseView = new ImageView(baseImage);
+        baseView.setFitWidth(size[0]);
+        baseView.setFitHeight(size[1]);
+
+        tileLayer = new Pane(baseView);
+        tileLayer.setMinSize(size[0], size[1]);
+        tileLayer.setPrefSize(size[0], size[1]);
+        tileLayer.setMaxSize(size[0], size[1]);
+        tileLayer.setRotate(pageRotations.getOrDefault(pageIndex, 0));
+        tileLayerDpi = dpi;
+        currentImageView = baseView;
+
+        // Scroll instead of fitting the content to the viewport
+        previewScrollPane.setFitToWidth(false);
+        previewScrollPane.setFitToHeight(false);
+        previewContainer.getChildren().setAll(new Group(tileLayer));
+
+        Platform.runLater(this::updateVisibleTiles);
+        logger.trace("Page {} shown tiled at {}DPI ({}x{} px)", pageIndex, dpi, size[0], size[1]);
+    }
+
+    /**
+     * Leave tiled mode and cancel outstanding tile renders.
+     */
+    private void clearTiledPreview() {
+        renderScheduler.cancel(tileGeneration);
+        tileGeneration = renderScheduler.newGeneration();
+        requestedTiles.clear();
+        tileViews.clear();
+        tileLayer = null;
+        previewScrollPane.setFitToWidth(true);
+        previewScrollPane.setFitToHeight(true);
+    }
+
+    /**
+     * Request tiles intersecting the viewport and drop tiles that scrolled far away.
+     */
+    private void updateVisibleTiles() {
+        if (tileLayer == null || tileLayer.getScene() == null || !pdfService.isDocumentLoaded()) {
+            return;
+        }
+        Bounds visible = tileLayer.sceneToLocal(previewScrollPane.localToScene(previewScrollPane.getLayoutBounds()));
+        if (visible == null) {
+            return;
+        }
+        int columns = (int) Math.ceil(tileLayer.getPrefWidth() / TILE_SIZE);
+        int rows = (int) Math.ceil(tileLayer.getPrefHeight() / TILE_SIZE);
+        int firstColumn = Math.max(0, (int) Math.floor(visible.getMinX() / TILE_SIZE));
+        int lastColumn = Math.min(columns - 1, (int) Math.floor(visible.getMaxX() / TILE_SIZE));
+        int firstRow = Math.max(0, (int) Math.floor(visible.getMinY() / TILE_SIZE));
+        int lastRow = Math.min(rows - 1, (int) Math.floor(visible.getMaxY() / TILE_SIZE));
+
+        // Drop tiles more than one tile outside the viewport; they stay in the page image cache
+        tileViews.entrySet().removeIf(entry -> {
+            int tileX = (int) (entry.getKey() & 0xffffffffL);
+            int tileY = (int) (entry.getKey() >>> 32);
+            boolean far = tileX < firstColumn - 1 || tileX > lastColumn + 1
+                    || tileY < firstRow - 1 || tileY > lastRow + 1;
+            if (far) {
+                tileLayer.getChildren().remove(entry.getValue());
+                requestedTiles.remove(entry.getKey());
+            }
+            return far;
+        });
+        // Cancel queued tiles that scrolled out before they were rendered
+        requestedTiles.removeIf(id -> {
+            int tileX = (int) (id & 0xffffffffL);
+            int tileY = (int) (id >>> 32);
+            boolean far = tileX < firstColumn - 1 || tileX > lastColumn + 1
+                    || tileY < firstRow - 1 || tileY > lastRow + 1;
+            return far && !tileViews.containsKey(id)
+                    && renderScheduler.cancel(tileKey(currentPreviewPage, tileLayerDpi, tileX, tileY));
         });
 
-        new Thread(renderTask).start();
+        for (int tileY = firstRow; tileY <= lastRow; tileY++) {
+            for (int tileX = firstColumn; tileX <= lastColumn; tileX++) {
+                long id = ((long) tileY << 32) | tileX;
+                if (requestedTiles.add(id)) {
+                    loadTile(currentPreviewPage, tileLayerDpi, tileX, tileY, id);
+                }
+            }
+        }
+    }
+
+    private void loadTile(int pageIndex, int dpi, int tileX, int tileY, long id) {
+        RenderScheduler.Generation generation = tileGeneration;
+        Pane layer = tileLayer;
+        renderScheduler.submit(tileKey(pageIndex, dpi, tileX, tileY), RenderScheduler.Priority.VISIBLE, generation,
+                        () -> pdfService.renderPageTile(pageIndex, dpi, tileX, tileY, TILE_SIZE))
+                .whenComplete((tile, error) -> {
+                    if (error != null) {
+                        if (!(error instanceof CancellationException)) {
+                            logger.error("Failed to render tile {},{} of page {}", tileX, tileY, pageIndex, error);
+                            requestedTiles.remove(id);
+                        }
+                        return;
+                    }
+                    Platform.runLater(() -> {
+                        // Drop tiles for a page or zoom level that is no longer shown
+                        if (generation.isCancelled() || tileLayer != layer || !requestedTiles.contains(id)) {
+                            return;
+                        }
+                        ImageView view = new ImageView(tile);
+                        view.relocate(tileX * TILE_SIZE, tileY * TILE_SIZE);
+                        tileViews.put(id, view);
+                        tileLayer.getChildren().add(view);
+                    });
+                });
+    }
+
+    private Object tileKey(int pageIndex, int dpi, int tileX, int tileY) {
+        return new PageImageCache.Key(pdfService.getCurrentDocument().getPdfDocument(), pageIndex, dpi, 0,
+                ColorMode.RGB, tileX, tileY);
     }
 
     @FXML
@@ -967,6 +1330,8 @@ public class PdfExtractorController {
             }
         }
 
+        pdfService.setIncrementalExport(incrementalExportCheck.isSelected());
+
         Task<Void> exportTask = new Task<>() {
             @Override
             protected Void call() throws Exception {
@@ -119,6 +119,13 @@ public class PageThumbnailPanel extends VBox {
         return imageLoaded;
     }
 
+    /**
+     * The rendered thumbnail, or null while the placeholder is shown.
+     */
+    public Image getThumbnail() {
+        return imageLoaded ? imageView.getImage() : null;
+    }
+
     public void setThumbnail(Image thumbnail) {
         this.imageView.setImage(thumbnail);
         this.imageLoaded = (thumbnail != null);
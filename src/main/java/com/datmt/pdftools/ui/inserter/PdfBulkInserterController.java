@@ -1,6 +1,7 @@
 package com.datmt.pdftools.ui.inserter;
 
 import com.datmt.pdftools.model.JoinerSection;
+import com.datmt.pdftools.service.DocumentPool;
 import com.datmt.pdftools.service.PdfBulkInserterService;
 import com.datmt.pdftools.service.PdfBulkInserterService.InsertResult;
 import com.datmt.pdftools.service.PdfBulkInserterService.InsertionMode;
@@ -91,7 +92,7 @@ public class PdfBulkInserterController {
     // State
     private File sourceFile;
     private boolean sourceIsPdf;
-    private PDDocument sourceDocument;
+    private DocumentPool.Lease sourceLease;
     private final List<TargetFileItem> targetFileItems = new ArrayList<>();
     private TargetFileItem selectedTargetItem;
     private final PdfBulkInserterService inserterService = new PdfBulkInserterService();
@@ -171,9 +172,10 @@ public class PdfBulkInserterController {
                 int pageCount;
 
                 if (sourceIsPdf) {
-                    sourceDocument = inserterService.loadSourcePdf(file);
-                    pageCount = sourceDocument.getNumberOfPages();
-                    thumbnail = inserterService.renderThumbnailFromDocument(sourceDocument, 0);
+                    sourceLease = inserterService.loadSourcePdf(file);
+                    pageCount = sourceLease.withDocument(PDDocument::getNumberOfPages);
+                    thumbnail = sourceLease.withDocument(document ->
+                            inserterService.renderThumbnailFromDocument(document, 0));
                 } else {
                     // Image source - create PDF from it (we'll create fresh each insertion)
                     pageCount = 1;
@@ -202,13 +204,9 @@ public class PdfBulkInserterController {
     }
 
     private void closeSourceDocument() {
-        if (sourceDocument != null) {
-            try {
-                sourceDocument.close();
-            } catch (IOException e) {
-                logger.error("Error closing source document: {}", e.getMessage());
-            }
-            sourceDocument = null;
+        if (sourceLease != null) {
+            sourceLease.close();
+            sourceLease = null;
         }
     }
 
@@ -340,12 +338,14 @@ public class PdfBulkInserterController {
         executor.submit(() -> {
             List<InsertResult> allResults = new ArrayList<>();
             PDDocument sourceDoc = null;
+            DocumentPool.Lease operationLease = null;
 
             try {
                 // Load/create source document
                 if (sourceIsPdf) {
-                    // Reload the source PDF fresh for the operation
-                    sourceDoc = inserterService.loadSourcePdf(sourceFile);
+                    // Borrow the source PDF; reuses the preview's copy if the file is unchanged
+                    operationLease = inserterService.loadSourcePdf(sourceFile);
+                    sourceDoc = operationLease.getDocument();
                 } else {
                     sourceDoc = inserterService.createPdfFromImage(sourceFile, options);
                 }
@@ -382,8 +382,10 @@ public class PdfBulkInserterController {
                 logger.error("Error during insertion: {}", e.getMessage());
                 Platform.runLater(() -> showError("Insertion Error", e.getMessage()));
             } finally {
-                // Close the source doc used for this operation
-                if (sourceDoc != null && sourceDoc != sourceDocument) {
+                // Release the source doc used for this operation
+                if (operationLease != null) {
+                    operationLease.close();
+                } else if (sourceDoc != null) {
                     try {
                         sourceDoc.close();
                     } catch (IOException e) {
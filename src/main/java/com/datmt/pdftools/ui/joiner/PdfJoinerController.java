@@ -3,6 +3,11 @@ package com.datmt.pdftools.ui.joiner;
 import com.datmt.pdftools.model.JoinerFile;
 import com.datmt.pdftools.model.JoinerSection;
 import com.datmt.pdftools.service.PdfMergeService;
+import com.datmt.pdftools.service.RenderScheduler;
+import com.datmt.pdftools.service.ThumbnailDiskCache;
+import com.datmt.pdftools.service.image.ColorMode;
+import com.datmt.pdftools.service.image.PackedImage;
+import com.datmt.pdftools.service.image.PageThumbnails;
 import com.datmt.pdftools.ui.joiner.components.FileListItem;
 import com.datmt.pdftools.ui.joiner.components.SectionListItem;
 import javafx.animation.KeyFrame;
@@ -25,11 +30,12 @@ import org.slf4j.LoggerFactory;
 import com.datmt.pdftools.util.CreditLinkHandler;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Controller for the PDF Joiner tool.
@@ -38,6 +44,7 @@ import java.util.concurrent.Executors;
 public class PdfJoinerController {
     private static final Logger logger = LoggerFactory.getLogger(PdfJoinerController.class);
     private static final int THUMBNAIL_SIZE = 80;
+    private static final int GRID_VISIBLE_THUMBNAILS = 24; // Roughly the first screen of the grid preview
 
     // Toolbar
     @FXML private Button addFilesButton;
@@ -87,7 +94,15 @@ public class PdfJoinerController {
     private final List<JoinerSection> sections = new ArrayList<>();
     private final List<FileListItem> fileListItems = new ArrayList<>();
     private final List<SectionListItem> sectionListItems = new ArrayList<>();
-    private final ExecutorService renderExecutor = Executors.newFixedThreadPool(4);
+    private final RenderScheduler renderScheduler = new RenderScheduler("joiner-render", 4);
+    private RenderScheduler.Generation gridGeneration = renderScheduler.newGeneration();
+    private final ThumbnailDiskCache thumbnailCache = ThumbnailDiskCache.getInstance();
+
+    // Progressive single-page preview; stale generations are skipped
+    private final ExecutorService draftExecutor = Executors.newSingleThreadExecutor();
+    private final ExecutorService previewExecutor = Executors.newSingleThreadExecutor();
+    private final AtomicInteger previewGeneration = new AtomicInteger();
+    private int refinedGeneration = -1; // FX thread only
 
     private FileListItem selectedFileItem;
     private SectionListItem selectedSectionItem;
@@ -122,8 +137,12 @@ public class PdfJoinerController {
     public void cleanup() {
         logger.info("Cleaning up PdfJoinerController resources");
 
-        // Shut down the executor service
-        renderExecutor.shutdownNow();
+        // Shut down the executor services
+        logger.info("Render scheduler: {}", renderScheduler.getMetrics());
+        logger.info("Thumbnail sources: {}", PageThumbnails.getSourceCounts());
+        renderScheduler.shutdown();
+        draftExecutor.shutdownNow();
+        previewExecutor.shutdownNow();
 
         // Close all loaded PDF documents
         for (JoinerFile file : loadedFiles) {
@@ -134,6 +153,9 @@ public class PdfJoinerController {
             }
         }
 
+        // Persist pending thumbnails
+        thumbnailCache.flushAll();
+
         // Clear all lists and caches
         loadedFiles.clear();
         sections.clear();
@@ -247,11 +269,12 @@ public class PdfJoinerController {
     }
 
     private void loadFileThumbnail(FileListItem item, JoinerFile joinerFile) {
-        CompletableFuture.runAsync(() -> {
+        renderScheduler.submit(thumbnailKey(joinerFile, 0), RenderScheduler.Priority.VISIBLE,
+                renderScheduler.newGeneration(), () -> {
             try {
                 Image thumbnail;
                 if (joinerFile.isPdf()) {
-                    thumbnail = mergeService.renderPdfThumbnail(joinerFile, 0);
+                    thumbnail = loadPdfThumbnail(joinerFile, 0);
                 } else {
                     thumbnail = joinerFile.getImage();
                 }
@@ -259,7 +282,33 @@ public class PdfJoinerController {
             } catch (Exception e) {
                 logger.error("Failed to load thumbnail for: {}", joinerFile.getFileName(), e);
             }
-        }, renderExecutor);
+            return null;
+        });
+    }
+
+    /**
+     * Scheduler key of a page thumbnail; files are compared by identity.
+     */
+    private static Object thumbnailKey(JoinerFile joinerFile, int pageIndex) {
+        return new ThumbnailKey(joinerFile, pageIndex);
+    }
+
+    private record ThumbnailKey(JoinerFile file, int pageIndex) {
+    }
+
+    /**
+     * Get a PDF page thumbnail from the disk cache, rendering and storing it on a miss.
+     */
+    private Image loadPdfThumbnail(JoinerFile joinerFile, int pageIndex) throws IOException {
+        File file = joinerFile.getSourceFile();
+        float dpi = mergeService.getThumbnailDpi(joinerFile, pageIndex);
+        PackedImage cached = thumbnailCache.get(file, pageIndex, dpi, ColorMode.AUTO);
+        if (cached != null) {
+            return cached.toImage();
+        }
+        Image thumbnail = mergeService.renderPdfThumbnail(joinerFile, pageIndex);
+        thumbnailCache.put(file, pageIndex, dpi, ColorMode.AUTO, PackedImage.pack(thumbnail, ColorMode.AUTO));
+        return thumbnail;
     }
 
     private void onFileSelected(FileListItem item) {
@@ -565,6 +614,11 @@ public class PdfJoinerController {
         JoinerFile sourceFile = section.getSourceFile();
         int rotation = section.getRotation().getDegrees();
 
+        // Thumbnails still queued for the previously shown section are dropped
+        renderScheduler.cancel(gridGeneration);
+        RenderScheduler.Generation generation = renderScheduler.newGeneration();
+        gridGeneration = generation;
+
         for (int i = section.getStartPage(); i <= section.getEndPage(); i++) {
             final int pageIndex = i;
             ImageView thumb = new ImageView();
@@ -581,12 +635,14 @@ public class PdfJoinerController {
 
             gridPreviewContainer.getChildren().add(container);
 
-            // Load thumbnail async
-            CompletableFuture.runAsync(() -> {
+            // Load thumbnail async; the first rows are on screen, the rest are prefetched
+            RenderScheduler.Priority priority = pageIndex - section.getStartPage() < GRID_VISIBLE_THUMBNAILS
+                    ? RenderScheduler.Priority.VISIBLE : RenderScheduler.Priority.PREFETCH;
+            renderScheduler.submit(thumbnailKey(sourceFile, pageIndex), priority, generation, () -> {
                 try {
                     Image image;
                     if (sourceFile.isPdf()) {
-                        image = mergeService.renderPdfThumbnail(sourceFile, pageIndex);
+                        image = loadPdfThumbnail(sourceFile, pageIndex);
                     } else {
                         image = sourceFile.getImage();
                     }
@@ -594,7 +650,8 @@ public class PdfJoinerController {
                 } catch (Exception e) {
                     logger.error("Failed to load preview thumbnail", e);
                 }
-            }, renderExecutor);
+                return null;
+            });
         }
     }
 
@@ -610,30 +667,63 @@ public class PdfJoinerController {
         prevPageButton.setDisable(currentPreviewPage == 0);
         nextPageButton.setDisable(currentPreviewPage >= pageCount - 1);
 
-        // Load preview
-        Task<Image> previewTask = new Task<>() {
-            @Override
-            protected Image call() throws Exception {
-                if (sourceFile.isPdf()) {
-                    return mergeService.renderPdfPreview(sourceFile, actualPage);
-                } else {
-                    return sourceFile.getImage();
-                }
-            }
-        };
+        int rotation = section.getRotation().getDegrees();
+        int generation = previewGeneration.incrementAndGet();
+        if (!sourceFile.isPdf()) {
+            showSinglePreview(sourceFile.getImage(), rotation);
+            return;
+        }
+
+        // Progressive preview: cached or draft image first, then the full render
+        Image cached = mergeService.getCachedPdfPreview(sourceFile, actualPage);
+        if (cached != null) {
+            showSinglePreview(cached, rotation);
+            return;
+        }
 
-        previewTask.setOnSucceeded(e -> {
-            Image image = previewTask.getValue();
-            singlePreviewImage.setImage(image);
-            singlePreviewImage.setFitWidth(singlePreviewPane.getWidth() - 20);
-            singlePreviewImage.setRotate(section.getRotation().getDegrees());  // Apply section rotation
+        draftExecutor.submit(() -> {
+            if (previewGeneration.get() != generation) {
+                return;
+            }
+            try {
+                PackedImage thumbnail = thumbnailCache.get(sourceFile.getSourceFile(), actualPage,
+                        mergeService.getThumbnailDpi(sourceFile, actualPage), ColorMode.AUTO);
+                Image image = thumbnail != null
+                        ? thumbnail.toImage() : mergeService.renderPdfDraft(sourceFile, actualPage);
+                Platform.runLater(() -> {
+                    // The full render may have won the race
+                    if (previewGeneration.get() == generation && refinedGeneration != generation) {
+                        showSinglePreview(image, rotation);
+                    }
+                });
+            } catch (Exception e) {
+                logger.debug("Draft render failed for page {}: {}", actualPage, e.getMessage());
+            }
         });
 
-        previewTask.setOnFailed(e -> {
-            logger.error("Failed to render preview", previewTask.getException());
+        previewExecutor.submit(() -> {
+            // Skip refinements for pages the user has already moved past
+            if (previewGeneration.get() != generation) {
+                return;
+            }
+            try {
+                Image image = mergeService.renderPdfPreview(sourceFile, actualPage);
+                Platform.runLater(() -> {
+                    if (previewGeneration.get() == generation) {
+                        refinedGeneration = generation;
+                        showSinglePreview(image, rotation);
+                    }
+                });
+            } catch (Exception e) {
+                logger.error("Failed to render preview", e);
+            }
         });
+    }
 
-        new Thread(previewTask).start();
+    private void showSinglePreview(Image image, int rotation) {
+        singlePreviewImage.setImage(image);
+        singlePreviewImage.setFitWidth(singlePreviewPane.getWidth() - 20);
+        singlePreviewImage.setRotate(rotation);  // Apply section rotation
     }
 
     @FXML
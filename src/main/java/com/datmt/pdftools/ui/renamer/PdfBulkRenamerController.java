@@ -2,6 +2,7 @@ package com.datmt.pdftools.ui.renamer;
 
 import com.datmt.pdftools.model.RenameItem;
 import com.datmt.pdftools.model.RenameItem.RenameStatus;
+import com.datmt.pdftools.service.DocumentPool;
 import com.datmt.pdftools.service.PdfTitleExtractor;
 import com.datmt.pdftools.service.PdfTitleExtractor.NormalizationOptions;
 import com.datmt.pdftools.util.CreditLinkHandler;
@@ -421,6 +422,9 @@ public class PdfBulkRenamerController {
                         }
                     }
 
+                    // Release any pooled copy so the file is not held open
+                    DocumentPool.getInstance().invalidate(item.getOriginalFile());
+
                     // Perform rename
                     if (item.getOriginalFile().renameTo(targetFile)) {
                         item.setStatus(RenameStatus.SUCCESS);
@@ -1,5 +1,6 @@
 package com.datmt.pdftools.ui.security;
 
+import com.datmt.pdftools.service.DocumentPool;
 import com.datmt.pdftools.service.PdfSecurityService;
 import com.datmt.pdftools.service.PdfSecurityService.Permissions;
 import com.datmt.pdftools.service.PdfSecurityService.SecurityInfo;
@@ -233,6 +234,7 @@ public class PdfSecurityController {
 
                 // If overwrite mode, replace original
                 if (overwriteOriginalRadio.isSelected()) {
+                    DocumentPool.getInstance().invalidate(selectedFile);
                     if (selectedFile.delete() && outputFile.renameTo(selectedFile)) {
                         Platform.runLater(() -> showResult("PDF protected successfully (overwritten)", true));
                     } else {
@@ -275,6 +277,7 @@ public class PdfSecurityController {
 
                 // If overwrite mode, replace original
                 if (overwriteOriginalRadio.isSelected()) {
+                    DocumentPool.getInstance().invalidate(selectedFile);
                     if (selectedFile.delete() && outputFile.renameTo(selectedFile)) {
                         Platform.runLater(() -> showResult("Protection removed successfully (overwritten)", true));
                     } else {
@@ -0,0 +1,78 @@
+package com.datmt.pdftools.benchmark;
+
+import com.datmt.pdftools.service.io.PdfReadFactory;
+import com.datmt.pdftools.service.io.ReadBackend;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Compares PDF read backends on real files.
+ * Each run loads the document and touches every page's resources so the
+ * seek-heavy object parsing is included in the timing.
+ *
+ * Kept with the tests so it is not shipped in the application jar. After
+ * {@code mvn test-compile}, run it with the test classpath:
+ * Usage: java -cp target/test-classes:target/classes:<dependencies> com.datmt.pdftools.benchmark.ReadBackendBenchmark [-n iterations] file.pdf...
+ */
+public class ReadBackendBenchmark {
+    private static final Logger logger = LoggerFactory.getLogger(ReadBackendBenchmark.class);
+    private static final int DEFAULT_ITERATIONS = 3;
+
+    public static void main(String[] args) throws IOException {
+        int iterations = DEFAULT_ITERATIONS;
+        int firstFile = 0;
+        if (args.length >= 2 && args[0].equals("-n")) {
+            iterations = Integer.parseInt(args[1]);
+            firstFile = 2;
+        }
+        if (args.length <= firstFile) {
+            System.err.println("Usage: ReadBackendBenchmark [-n iterations] file.pdf...");
+            System.exit(1);
+        }
+
+        for (int i = firstFile; i < args.length; i++) {
+            File file = new File(args[i]);
+            logger.info("Benchmarking {} ({} MB)", file.getName(), file.length() / (1024 * 1024));
+            for (ReadBackend backend : ReadBackend.values()) {
+                // Warm up once so class loading and page cache are not counted
+                runOnce(file, backend);
+                long best = Long.MAX_VALUE;
+                long total = 0;
+                for (int n = 0; n < iterations; n++) {
+                    long elapsed = runOnce(file, backend);
+                    best = Math.min(best, elapsed);
+                    total += elapsed;
+                }
+                logger.info("  {}: best {} ms, mean {} ms over {} runs",
+                        backend, best / 1_000_000, total / iterations / 1_000_000, iterations);
+            }
+        }
+    }
+
+    private static long runOnce(File file, ReadBackend backend) throws IOException {
+        long start = System.nanoTime();
+        try (PDDocument document = PdfReadFactory.load(file, null, backend)) {
+            for (PDPage page : document.getPages()) {
+                PDResources resources = page.getResources();
+                if (resources == null) {
+                    continue;
+                }
+                for (COSName name : resources.getXObjectNames()) {
+                    COSBase base = resources.getCOSObject().getCOSDictionary(COSName.XOBJECT).getDictionaryObject(name);
+                    if (base == null) {
+                        logger.trace("Missing XObject {} on page", name.getName());
+                    }
+                }
+            }
+        }
+        return System.nanoTime() - start;
+    }
+}
@@ -0,0 +1,137 @@
+package com.datmt.pdftools.benchmark;
+
+import com.datmt.pdftools.service.PdfRendererRegistry;
+import com.datmt.pdftools.service.RenderFarm;
+import com.datmt.pdftools.service.io.PdfReadFactory;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Measures thumbnail throughput with a new PDFRenderer per page, renderers
+ * reused through {@link PdfRendererRegistry}, and per-thread document replicas
+ * from the {@link RenderFarm}.
+ * Pages are rendered at 72 DPI on a fixed pool of threads, like the extractor's render executor.
+ *
+ * Build it with {@code mvn test-compile}:
+ * Usage: java -cp target/test-classes:target/classes:<dependencies> com.datmt.pdftools.benchmark.ThumbnailRenderBenchmark [-t threads] [-p maxPages] file.pdf...
+ */
+public class ThumbnailRenderBenchmark {
+    private static final Logger logger = LoggerFactory.getLogger(ThumbnailRenderBenchmark.class);
+    private static final int THUMBNAIL_DPI = 72;
+    private static final int DEFAULT_THREADS = 4;
+    private static final int DEFAULT_MAX_PAGES = 500;
+
+    public static void main(String[] args) throws Exception {
+        int threads = DEFAULT_THREADS;
+        int maxPages = DEFAULT_MAX_PAGES;
+        int firstFile = 0;
+        while (args.length >= firstFile + 2 && args[firstFile].startsWith("-")) {
+            switch (args[firstFile]) {
+                case "-t" -> threads = Integer.parseInt(args[firstFile + 1]);
+                case "-p" -> maxPages = Integer.parseInt(args[firstFile + 1]);
+                default -> {
+                    System.err.println("Unknown option: " + args[firstFile]);
+                    System.exit(1);
+                }
+            }
+            firstFile += 2;
+        }
+        if (args.length <= firstFile) {
+            System.err.println("Usage: ThumbnailRenderBenchmark [-t threads] [-p maxPages] file.pdf...");
+            System.exit(1);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for (int i = firstFile; i < args.length; i++) {
+                File file = new File(args[i]);
+                try (PDDocument document = PdfReadFactory.load(file)) {
+                    int pages = Math.min(maxPages, document.getNumberOfPages());
+                    logger.info("Benchmarking {} ({} pages, {} threads)", file.getName(), pages, threads);
+
+                    // Warm up so class loading and font parsing are not counted
+                    run(executor, document, pages, null);
+
+                    double before = run(executor, document, pages, null);
+                    PdfRendererRegistry registry = new PdfRendererRegistry(document);
+                    double after = run(executor, document, pages, registry);
+
+                    // Replicas open on the first pass, so measure the second
+                    RenderFarm.Replicas replicas = RenderFarm.getInstance().open(file, document, registry);
+                    runReplicas(executor, replicas, pages);
+                    double replicated = runReplicas(executor, replicas, pages);
+                    replicas.close();
+                    registry.close();
+
+                    logger.info("  new renderer per page: {} thumbnails/sec", String.format("%.1f", before));
+                    logger.info("  reused renderers:      {} thumbnails/sec", String.format("%.1f", after));
+                    logger.info("  document replicas:     {} thumbnails/sec", String.format("%.1f", replicated));
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Render the first pages once and return thumbnails per second.
+     * A null registry creates a new renderer for every page.
+     */
+    private static double run(ExecutorService executor, PDDocument document, int pages,
+                              PdfRendererRegistry registry) throws Exception {
+        long start = System.nanoTime();
+        List<Future<?>> futures = new ArrayList<>(pages);
+        for (int page = 0; page < pages; page++) {
+            final int pageIndex = page;
+            futures.add(executor.submit(() -> {
+                PDFRenderer renderer = registry != null ? registry.get() : new PDFRenderer(document);
+                try {
+                    renderer.renderImageWithDPI(pageIndex, THUMBNAIL_DPI, ImageType.RGB);
+                } catch (IOException e) {
+                    logger.warn("Failed to render page {}: {}", pageIndex, e.getMessage());
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+        return pages / seconds;
+    }
+
+    /**
+     * Render the first pages once on per-thread replicas and return thumbnails per second.
+     */
+    private static double runReplicas(ExecutorService executor, RenderFarm.Replicas replicas, int pages)
+            throws Exception {
+        long start = System.nanoTime();
+        List<Future<?>> futures = new ArrayList<>(pages);
+        for (int page = 0; page < pages; page++) {
+            final int pageIndex = page;
+            futures.add(executor.submit(() -> {
+                try {
+                    replicas.render((renderer, document) ->
+                            renderer.renderImageWithDPI(pageIndex, THUMBNAIL_DPI, ImageType.RGB));
+                } catch (IOException e) {
+                    logger.warn("Failed to render page {}: {}", pageIndex, e.getMessage());
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+        return pages / seconds;
+    }
+}
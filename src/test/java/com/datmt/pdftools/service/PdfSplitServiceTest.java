@@ -0,0 +1,163 @@
+package com.datmt.pdftools.service;
+
+import com.datmt.pdftools.model.PdfBookmark;
+import com.datmt.pdftools.model.PdfDocument;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PdfSplitServiceTest {
+    private static final int PAGES = 10;
+    // Stored bytes of the image drawn on each page; random, so saving cannot shrink it
+    private static final int IMAGE_SIDE = 200;
+    private static final int IMAGE_BYTES = IMAGE_SIDE * IMAGE_SIDE * 3;
+
+    @TempDir
+    Path tempDir;
+
+    private final PdfSplitService splitter = new PdfSplitService();
+    private PdfDocument source;
+
+    @AfterEach
+    void closeSource() throws IOException {
+        if (source != null) {
+            source.close();
+        }
+    }
+
+    @Test
+    void maxSizePlanCoversEveryPageInOrderUnderTheLimit() throws IOException {
+        source = open(createDocument(false));
+        long maxBytes = 3L * IMAGE_BYTES + IMAGE_BYTES / 2;
+
+        List<PdfSplitService.SplitPart> parts = splitter.planByMaxSize(source, maxBytes);
+
+        assertEquals(List.of(0, 3, 6, 9), parts.stream().map(PdfSplitService.SplitPart::firstPage).toList());
+        int next = 0;
+        for (PdfSplitService.SplitPart part : parts) {
+            assertEquals(next, part.firstPage());
+            next = part.lastPage() + 1;
+        }
+        assertEquals(PAGES, next);
+
+        PdfSplitService.SplitResult result = splitter.split(source, parts, tempDir.resolve("out").toFile(),
+                new PdfSplitService.SplitOptions(), null);
+        assertTrue(result.isSuccess());
+        assertEquals(parts.size(), result.getOutputFiles().size());
+        int pages = 0;
+        for (File file : result.getOutputFiles()) {
+            assertTrue(file.length() <= maxBytes, file.getName() + " is " + file.length() + " bytes");
+            try (PDDocument written = Loader.loadPDF(file)) {
+                pages += written.getNumberOfPages();
+            }
+        }
+        assertEquals(PAGES, pages);
+    }
+
+    @Test
+    void maxSizePlanCountsSharedObjectsOncePerPart() throws IOException {
+        source = open(createDocument(true));
+
+        // Every page shows the same image, so all pages fit where two distinct images would not
+        List<PdfSplitService.SplitPart> parts = splitter.planByMaxSize(source, IMAGE_BYTES + IMAGE_BYTES / 2);
+
+        assertEquals(1, parts.size());
+        assertEquals(PAGES - 1, parts.get(0).lastPage());
+    }
+
+    @Test
+    void pageLargerThanTheLimitGetsAPartOfItsOwn() throws IOException {
+        source = open(createDocument(false));
+
+        List<PdfSplitService.SplitPart> parts = splitter.planByMaxSize(source, IMAGE_BYTES / 2);
+
+        assertEquals(PAGES, parts.size());
+        for (int i = 0; i < PAGES; i++) {
+            assertEquals(i, parts.get(i).firstPage());
+            assertEquals(i, parts.get(i).lastPage());
+        }
+    }
+
+    @Test
+    void bookmarkWithoutPagesFailsAloneAndTheOthersAreWritten() throws IOException {
+        source = open(createDocument(false));
+        PdfBookmark first = new PdfBookmark("First", 0, 0);
+        first.setEndPageIndex(4);
+        // A child placed after its parent's end, as outlines out of page order produce
+        PdfBookmark stray = new PdfBookmark("Stray", 7, 1);
+        stray.setEndPageIndex(4);
+        PdfBookmark second = new PdfBookmark("Second", 5, 0);
+        second.setEndPageIndex(PAGES - 1);
+
+        List<PdfSplitService.SplitPart> parts = splitter.planByBookmarks(source, List.of(first, stray, second));
+        PdfSplitService.SplitResult result = splitter.split(source, parts, tempDir.resolve("out").toFile(),
+                new PdfSplitService.SplitOptions(), null);
+
+        assertFalse(parts.get(1).hasPages());
+        assertEquals(List.of(parts.get(1).fileName()), List.copyOf(result.getFailures().keySet()));
+        assertEquals(2, result.getOutputFiles().size());
+        assertTrue(new File(tempDir.resolve("out").toFile(), parts.get(0).fileName()).isFile());
+        assertTrue(new File(tempDir.resolve("out").toFile(), parts.get(2).fileName()).isFile());
+    }
+
+    private PdfDocument open(File file) throws IOException {
+        return new PdfDocument(file, Loader.loadPDF(file));
+    }
+
+    /**
+     * A document whose pages each draw an unfiltered image of random pixels,
+     * distinct per page or one shared by all.
+     */
+    private File createDocument(boolean sharedImage) throws IOException {
+        File file = tempDir.resolve(sharedImage ? "shared.pdf" : "distinct.pdf").toFile();
+        Random random = new Random(42);
+        try (PDDocument document = new PDDocument()) {
+            PDImageXObject shared = sharedImage ? randomImage(document, random) : null;
+            for (int i = 0; i < PAGES; i++) {
+                PDPage page = new PDPage();
+                document.addPage(page);
+                PDImageXObject image = sharedImage ? shared : randomImage(document, random);
+                try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                    content.drawImage(image, 50, 50, IMAGE_SIDE, IMAGE_SIDE);
+                }
+            }
+            document.save(file);
+        }
+        return file;
+    }
+
+    private static PDImageXObject randomImage(PDDocument document, Random random) throws IOException {
+        byte[] samples = new byte[IMAGE_BYTES];
+        random.nextBytes(samples);
+        COSStream stream = document.getDocument().createCOSStream();
+        try (OutputStream out = stream.createRawOutputStream()) {
+            out.write(samples);
+        }
+        stream.setItem(COSName.TYPE, COSName.XOBJECT);
+        stream.setItem(COSName.SUBTYPE, COSName.IMAGE);
+        stream.setInt(COSName.WIDTH, IMAGE_SIDE);
+        stream.setInt(COSName.HEIGHT, IMAGE_SIDE);
+        stream.setInt(COSName.BITS_PER_COMPONENT, 8);
+        stream.setItem(COSName.COLORSPACE, COSName.DEVICERGB);
+        return new PDImageXObject(new PDStream(stream), null);
+    }
+}
@@ -0,0 +1,95 @@
+package com.datmt.pdftools.service.image;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PackedImageTest {
+    // Odd width, so BINARY rows end in a partly used byte
+    private static final int WIDTH = 13;
+    private static final int HEIGHT = 5;
+
+    @Test
+    void rgbRoundTripKeepsEveryPixel() {
+        int[] argb = new int[WIDTH * HEIGHT];
+        for (int i = 0; i < argb.length; i++) {
+            argb[i] = 0xff000000 | (i * 37 & 0xff) << 16 | (i * 11 & 0xff) << 8 | (255 - i & 0xff);
+        }
+        PackedImage packed = PackedImage.pack(argb, WIDTH, HEIGHT, ColorMode.RGB);
+
+        assertEquals(ColorMode.RGB, packed.getMode());
+        assertEquals((long) WIDTH * HEIGHT * 3, packed.getSizeInBytes());
+        BufferedImage image = packed.toBufferedImage();
+        assertArrayEquals(argb, image.getRGB(0, 0, WIDTH, HEIGHT, null, 0, WIDTH));
+        assertEquals(packed.getSizeInBytes(), PackedImage.of(image).getSizeInBytes());
+        assertArrayEquals(argb, PackedImage.of(image).toBufferedImage().getRGB(0, 0, WIDTH, HEIGHT, null, 0, WIDTH));
+    }
+
+    @Test
+    void grayRoundTripKeepsLevels() {
+        int[] argb = new int[WIDTH * HEIGHT];
+        byte[] levels = new byte[argb.length];
+        for (int i = 0; i < argb.length; i++) {
+            int v = i * 255 / (argb.length - 1);
+            argb[i] = 0xff000000 | v << 16 | v << 8 | v;
+            levels[i] = (byte) v;
+        }
+        PackedImage packed = PackedImage.pack(argb, WIDTH, HEIGHT, ColorMode.GRAY);
+
+        assertEquals(ColorMode.GRAY, packed.getMode());
+        assertEquals((long) WIDTH * HEIGHT, packed.getSizeInBytes());
+        BufferedImage image = packed.toBufferedImage();
+        assertEquals(BufferedImage.TYPE_BYTE_GRAY, image.getType());
+        assertArrayEquals(levels, bytesOf(image));
+
+        // As when read back from a PNG in the disk cache
+        PackedImage reread = PackedImage.of(image);
+        assertEquals(ColorMode.GRAY, reread.getMode());
+        assertArrayEquals(levels, bytesOf(reread.toBufferedImage()));
+    }
+
+    @Test
+    void binaryRoundTripThresholdsAndPadsRows() {
+        int[] argb = new int[WIDTH * HEIGHT];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                // Dark grey counts as black, light grey as white
+                argb[y * WIDTH + x] = (x + y) % 3 == 0 ? 0xff202020 : 0xffe0e0e0;
+            }
+        }
+        PackedImage packed = PackedImage.pack(argb, WIDTH, HEIGHT, ColorMode.BINARY);
+
+        assertEquals(ColorMode.BINARY, packed.getMode());
+        assertEquals((long) (WIDTH + 7) / 8 * HEIGHT, packed.getSizeInBytes());
+        int[] expected = new int[argb.length];
+        for (int i = 0; i < argb.length; i++) {
+            expected[i] = argb[i] == 0xff202020 ? 0xff000000 : 0xffffffff;
+        }
+        BufferedImage image = packed.toBufferedImage();
+        assertEquals(BufferedImage.TYPE_BYTE_BINARY, image.getType());
+        assertArrayEquals(expected, image.getRGB(0, 0, WIDTH, HEIGHT, null, 0, WIDTH));
+
+        PackedImage reread = PackedImage.of(image);
+        assertEquals(ColorMode.BINARY, reread.getMode());
+        assertArrayEquals(expected, reread.toBufferedImage().getRGB(0, 0, WIDTH, HEIGHT, null, 0, WIDTH));
+    }
+
+    @Test
+    void autoPicksTheSmallestFaithfulMode() {
+        int[] blackAndWhite = {0xff000000, 0xffffffff, 0xff000000, 0xffffffff};
+        int[] grey = {0xff000000, 0xff808080, 0xffffffff, 0xff404040};
+        int[] colour = {0xff000000, 0xffff0000, 0xffffffff, 0xff404040};
+
+        assertEquals(ColorMode.BINARY, PackedImage.pack(blackAndWhite, 2, 2, ColorMode.AUTO).getMode());
+        assertEquals(ColorMode.GRAY, PackedImage.pack(grey, 2, 2, ColorMode.AUTO).getMode());
+        assertEquals(ColorMode.RGB, PackedImage.pack(colour, 2, 2, ColorMode.AUTO).getMode());
+    }
+
+    private static byte[] bytesOf(BufferedImage image) {
+        return ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+    }
+}
@@ -0,0 +1,107 @@
+package com.datmt.pdftools.service.image;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PixelBudgetTest {
+    private static final long KB = 1024;
+
+    @Test
+    void rejectsEmptyBudget() {
+        assertThrows(IllegalArgumentException.class, () -> new PixelBudget(0));
+        assertThrows(IllegalArgumentException.class, () -> new PixelBudget(-1));
+    }
+
+    @Test
+    void countsGreyAsOneByteAndColourAsFour() {
+        assertEquals(200 * 100, PixelBudget.bytesFor(200, 100, 1));
+        assertEquals(200 * 100 * 4, PixelBudget.bytesFor(200, 100, 3));
+        assertEquals(200 * 100 * 4, PixelBudget.bytesFor(200, 100, 4));
+        // Beyond int range, as for very large scans
+        assertEquals(100_000L * 100_000L * 4, PixelBudget.bytesFor(100_000, 100_000, 3));
+    }
+
+    @Test
+    void reservationsAreRoundedUpToWholeKilobytes() throws InterruptedException {
+        PixelBudget budget = new PixelBudget(64 * KB);
+
+        PixelBudget.Reservation empty = budget.acquire(0);
+        PixelBudget.Reservation partial = budget.acquire(KB + 1);
+        PixelBudget.Reservation exact = budget.acquire(4 * KB);
+
+        assertEquals(KB, empty.getBytes());
+        assertEquals(2 * KB, partial.getBytes());
+        assertEquals(4 * KB, exact.getBytes());
+        assertEquals(57 * KB, budget.getAvailableBytes());
+    }
+
+    @Test
+    void releaseReturnsExactlyWhatWasReserved() throws InterruptedException {
+        PixelBudget budget = new PixelBudget(64 * KB);
+        PixelBudget.Reservation first = budget.acquire(10 * KB + 7);
+        PixelBudget.Reservation second = budget.acquire(3 * KB);
+
+        budget.release(first);
+        assertEquals(61 * KB, budget.getAvailableBytes());
+        budget.release(second);
+        budget.release(null);
+        assertEquals(64 * KB, budget.getAvailableBytes());
+    }
+
+    @Test
+    void oversizedReservationTakesTheWholeBudget() throws InterruptedException {
+        PixelBudget budget = new PixelBudget(16 * KB);
+
+        PixelBudget.Reservation reservation = budget.acquire(1024 * KB);
+
+        assertEquals(16 * KB, reservation.getBytes());
+        assertEquals(0, budget.getAvailableBytes());
+        budget.release(reservation);
+        assertEquals(16 * KB, budget.getAvailableBytes());
+    }
+
+    @Test
+    void budgetBelowOneKilobyteStillAdmitsWork() throws InterruptedException {
+        PixelBudget budget = new PixelBudget(100);
+
+        PixelBudget.Reservation reservation = budget.acquire(5000);
+
+        assertEquals(100, budget.getBudgetBytes());
+        assertEquals(KB, reservation.getBytes());
+        budget.release(reservation);
+    }
+
+    @Test
+    void acquireWaitsUntilEnoughIsReleased() throws InterruptedException {
+        PixelBudget budget = new PixelBudget(8 * KB);
+        PixelBudget.Reservation held = budget.acquire(6 * KB);
+        AtomicReference<PixelBudget.Reservation> waiting = new AtomicReference<>();
+        CountDownLatch acquired = new CountDownLatch(1);
+
+        Thread thread = new Thread(() -> {
+            try {
+                waiting.set(budget.acquire(4 * KB));
+                acquired.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        thread.start();
+
+        assertFalse(acquired.await(200, TimeUnit.MILLISECONDS));
+        budget.release(held);
+        assertTrue(acquired.await(5, TimeUnit.SECONDS));
+        thread.join();
+        assertEquals(4 * KB, budget.getAvailableBytes());
+        budget.release(waiting.get());
+        assertEquals(8 * KB, budget.getAvailableBytes());
+    }
+}
@@ -0,0 +1,100 @@
+package com.datmt.pdftools.service.io;
+
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSObjectKey;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.datmt.pdftools.service.io.StreamDeduplicatorTest.imageOf;
+import static com.datmt.pdftools.service.io.StreamDeduplicatorTest.rawBytes;
+import static com.datmt.pdftools.service.io.StreamDeduplicatorTest.samples;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ObjectGraphTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void loadedDocumentHoldsNoImportedObjects() throws IOException {
+        File file = onePage("single.pdf", samples(1));
+        try (PDDocument document = Loader.loadPDF(file)) {
+            assertFalse(ObjectGraph.hasImportedObjects(document));
+        }
+    }
+
+    @Test
+    void importedPagesAreDetected() throws IOException {
+        File target = onePage("target.pdf", samples(1));
+        File source = onePage("source.pdf", samples(2));
+        try (PDDocument document = Loader.loadPDF(target); PDDocument other = Loader.loadPDF(source)) {
+            document.importPage(other.getPage(0));
+            assertTrue(ObjectGraph.hasImportedObjects(document));
+        }
+    }
+
+    @Test
+    void pagesOfTwoFilesWithTheSameObjectNumbersAreWrittenApart() throws IOException {
+        byte[] firstSamples = samples(1);
+        byte[] secondSamples = samples(2);
+        // Written alike, so their objects have the same numbers
+        File first = onePage("first.pdf", firstSamples);
+        File second = onePage("second.pdf", secondSamples);
+        File merged = tempDir.resolve("merged.pdf").toFile();
+
+        try (PDDocument a = Loader.loadPDF(first); PDDocument b = Loader.loadPDF(second);
+             PDDocument output = new PDDocument()) {
+            List<COSObjectKey> keysOfA = keys(a);
+            List<COSObjectKey> keysOfB = keys(b);
+            output.importPage(a.getPage(0));
+            output.importPage(b.getPage(0));
+
+            int renumbered = ObjectGraph.walk(output.getDocument().getTrailer()).separateNumberCollisions();
+            PdfWriteFactory.save(output, merged, SaveProfile.STANDARD);
+
+            assertTrue(renumbered > 0);
+            assertEquals(keysOfA, keys(a));
+            assertEquals(keysOfB, keys(b));
+        }
+
+        try (PDDocument reloaded = Loader.loadPDF(merged)) {
+            assertEquals(2, reloaded.getNumberOfPages());
+            assertArrayEquals(firstSamples, rawBytes(imageOf(reloaded.getPage(0))));
+            assertArrayEquals(secondSamples, rawBytes(imageOf(reloaded.getPage(1))));
+        }
+    }
+
+    private File onePage(String name, byte[] samples) throws IOException {
+        File file = tempDir.resolve(name).toFile();
+        try (PDDocument document = new PDDocument()) {
+            PDPage page = new PDPage();
+            PDResources resources = new PDResources();
+            resources.put(COSName.getPDFName("Im1"), StreamDeduplicatorTest.image(document, samples));
+            page.setResources(resources);
+            document.addPage(page);
+            document.save(file);
+        }
+        return file;
+    }
+
+    private static List<COSObjectKey> keys(PDDocument document) {
+        List<COSObjectKey> keys = new ArrayList<>();
+        for (COSBase container : ObjectGraph.walk(document.getDocument().getTrailer()).containers()) {
+            keys.add(container.getKey());
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,145 @@
+package com.datmt.pdftools.service.io;
+
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StreamDeduplicatorTest {
+    private static final COSName IMAGE = COSName.getPDFName("Im1");
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void identicalImagesAreWrittenOnceAndSurviveReload() throws IOException {
+        byte[] samples = samples(1);
+        File plain = tempDir.resolve("plain.pdf").toFile();
+        File optimized = tempDir.resolve("optimized.pdf").toFile();
+        try (PDDocument document = twoPages(samples, samples)) {
+            PdfWriteFactory.save(document, plain, SaveProfile.STANDARD);
+        }
+        try (PDDocument document = twoPages(samples, samples)) {
+            assertEquals(1, StreamDeduplicator.deduplicate(document));
+            PdfWriteFactory.save(document, optimized, SaveProfile.STANDARD);
+        }
+
+        try (PDDocument reloaded = Loader.loadPDF(optimized)) {
+            COSStream first = imageOf(reloaded.getPage(0));
+            COSStream second = imageOf(reloaded.getPage(1));
+            assertSame(first, second);
+            assertArrayEquals(samples, rawBytes(first));
+        }
+        assertTrue(optimized.length() + samples.length / 2 < plain.length(),
+                optimized.length() + " bytes with one image, " + plain.length() + " with two");
+    }
+
+    @Test
+    void streamsWithDifferentBytesOrDictionariesAreKept() throws IOException {
+        try (PDDocument document = twoPages(samples(1), samples(2))) {
+            assertEquals(0, StreamDeduplicator.deduplicate(document));
+        }
+        try (PDDocument document = twoPages(samples(1), samples(1))) {
+            imageOf(document.getPage(1)).setItem(COSName.INTERPOLATE, COSName.getPDFName("true"));
+            assertEquals(0, StreamDeduplicator.deduplicate(document));
+        }
+    }
+
+    @Test
+    void mergingLeavesSharedObjectsUnchanged() throws IOException {
+        byte[] samples = samples(3);
+        try (PDDocument document = twoPages(samples, samples)) {
+            COSDictionary[] pages = new COSDictionary[2];
+            COSDictionary[] resources = new COSDictionary[2];
+            COSStream[] images = new COSStream[2];
+            for (int i = 0; i < 2; i++) {
+                pages[i] = document.getPage(i).getCOSObject();
+                resources[i] = document.getPage(i).getResources().getCOSObject();
+                images[i] = imageOf(document.getPage(i));
+            }
+
+            StreamDeduplicator.deduplicate(document);
+
+            // The written tree refers to one image through copies; the original objects are untouched
+            COSArray kids = document.getDocument().getTrailer().getCOSDictionary(COSName.ROOT)
+                    .getCOSDictionary(COSName.PAGES).getCOSArray(COSName.KIDS);
+            COSBase firstWritten = writtenImage((COSDictionary) kids.getObject(0));
+            COSBase secondWritten = writtenImage((COSDictionary) kids.getObject(1));
+            assertSame(firstWritten, secondWritten);
+            assertTrue(firstWritten == images[0] || firstWritten == images[1]);
+            for (int i = 0; i < 2; i++) {
+                assertSame(resources[i], new PDPage(pages[i]).getResources().getCOSObject());
+                assertSame(images[i], resources[i].getCOSDictionary(COSName.XOBJECT).getDictionaryObject(IMAGE));
+            }
+        }
+    }
+
+    private static COSBase writtenImage(COSDictionary page) {
+        return page.getCOSDictionary(COSName.RESOURCES).getCOSDictionary(COSName.XOBJECT).getDictionaryObject(IMAGE);
+    }
+
+    private static PDDocument twoPages(byte[] firstSamples, byte[] secondSamples) throws IOException {
+        PDDocument document = new PDDocument();
+        for (byte[] samples : new byte[][]{firstSamples, secondSamples}) {
+            PDPage page = new PDPage();
+            PDResources resources = new PDResources();
+            resources.put(IMAGE, image(document, samples));
+            page.setResources(resources);
+            document.addPage(page);
+        }
+        return document;
+    }
+
+    static PDImageXObject image(PDDocument document, byte[] samples) throws IOException {
+        COSStream stream = document.getDocument().createCOSStream();
+        try (OutputStream out = stream.createRawOutputStream()) {
+            out.write(samples);
+        }
+        stream.setItem(COSName.TYPE, COSName.XOBJECT);
+        stream.setItem(COSName.SUBTYPE, COSName.IMAGE);
+        stream.setInt(COSName.WIDTH, 64);
+        stream.setInt(COSName.HEIGHT, samples.length / 64);
+        stream.setInt(COSName.BITS_PER_COMPONENT, 8);
+        stream.setItem(COSName.COLORSPACE, COSName.DEVICEGRAY);
+        return new PDImageXObject(new PDStream(stream), null);
+    }
+
+    static byte[] samples(int seed) {
+        byte[] samples = new byte[64 * 64];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (byte) (i * 31 + seed * 17 + (i >> 6) * seed);
+        }
+        return samples;
+    }
+
+    static COSStream imageOf(PDPage page) {
+        return (COSStream) page.getResources().getCOSObject()
+                .getCOSDictionary(COSName.XOBJECT).getDictionaryObject(IMAGE);
+    }
+
+    static byte[] rawBytes(COSStream stream) throws IOException {
+        try (InputStream in = stream.createRawInputStream()) {
+            return in.readAllBytes();
+        }
+    }
+}